@@ -0,0 +1,632 @@
+/************************************************************************************
+ * @file BpTreeMap.java
+ *
+ * @author  John Miller
+ */
+
+import java.io.*;
+import java.util.*;
+
+import static java.lang.System.out;
+
+/************************************************************************************
+ * This class provides B+Tree maps.  B+Trees are used as multi-level index structures
+ * that provide efficient access for both point queries and range queries.  All the
+ * keys and values are kept in the leaf nodes, which are linked left to right (sibling
+ * links) so that range scans do not need to go back up the tree.  The fan-out (order)
+ * of the nodes is configurable and a tree may be bulk loaded from sorted input.
+ * Deletion is lazy: entries are removed from their leaf, but nodes are not merged.
+ */
+public class BpTreeMap <K extends Comparable <K>, V>
+       extends AbstractMap <K, V>
+       implements Serializable, Cloneable, SortedMap <K, V>
+{
+    /** The default maximum fan-out (number of children) for internal nodes.
+     */
+    private static final int DEFAULT_ORDER = 64;
+
+    /** The fraction of a leaf/internal node filled during bulk loading.
+     */
+    private static final double FILL = 0.75;
+
+    /** The class for type K.
+     */
+    private final Class <K> classK;
+
+    /** The class for type V.
+     */
+    private final Class <V> classV;
+
+    /** The maximum fan-out (number of children) for internal nodes, which is also the
+     *  maximum number of keys held by a leaf node.
+     */
+    private final int order;
+
+    /********************************************************************************
+     * This inner class defines the nodes (both internal and leaf) making up the tree.
+     * A leaf node holds up to order - 1 key-value pairs and a link to the next leaf;
+     * an internal node holds up to order - 1 keys and order child links, where child [i]
+     * covers the keys k with key [i-1] <= k < key [i].
+     */
+    private class Node implements Serializable
+    {
+        final boolean  isLeaf;
+        int            nKeys;
+        final Object [] key;
+        final Object [] ref;                                    // values (leaf) or children (internal)
+        Node           next;                                    // next leaf (sibling link)
+
+        Node (boolean _isLeaf)
+        {
+            isLeaf = _isLeaf;
+            nKeys  = 0;
+            key    = new Object [order];                          // one extra slot for overflow
+            ref    = new Object [order + 1];
+        } // constructor
+
+        @SuppressWarnings("unchecked")
+        K key (int i) { return (K) key [i]; }
+
+        @SuppressWarnings("unchecked")
+        V value (int i) { return (V) ref [i]; }
+
+        @SuppressWarnings("unchecked")
+        Node child (int i) { return (Node) ref [i]; }
+
+        /****************************************************************************
+         * Return the position of k in this leaf or (-insertion point - 1) if absent.
+         * @param k  the key to search for
+         */
+        int search (K k)
+        {
+            int lo = 0, hi = nKeys - 1;
+            while (lo <= hi) {
+                var mid = (lo + hi) >>> 1;
+                var c   = key (mid).compareTo (k);
+                if (c < 0) lo = mid + 1; else if (c > 0) hi = mid - 1; else return mid;
+            } // while
+            return -(lo + 1);
+        } // search
+
+        /****************************************************************************
+         * Return the index of the child of this internal node that covers key k.
+         * @param k  the key to route
+         */
+        int route (K k)
+        {
+            int lo = 0, hi = nKeys;                               // first i with key [i] > k
+            while (lo < hi) {
+                var mid = (lo + hi) >>> 1;
+                if (key (mid).compareTo (k) <= 0) lo = mid + 1; else hi = mid;
+            } // while
+            return lo;
+        } // route
+
+        void print ()
+        {
+            out.print ("[ . " );
+            for (var i = 0; i < nKeys; i++) out.print (key [i] + " . ");
+            out.println ("]" );
+        } // print
+
+    } // Node inner class
+
+    /** The root of the B+Tree.
+     */
+    private Node root;
+
+    /** The first (leftmost) leaf node.
+     */
+    private Node firstLeaf;
+
+    /** The number of key-value pairs in the tree.
+     */
+    private int keyCount = 0;
+
+    /** Counter for the number nodes accessed (for performance testing).
+     */
+    private int count = 0;
+
+    /********************************************************************************
+     * Construct an empty B+Tree map with the default order.
+     * @param _classK  the class for keys (K)
+     * @param _classV  the class for values (V)
+     */
+    public BpTreeMap (Class <K> _classK, Class <V> _classV)
+    {
+        this (_classK, _classV, DEFAULT_ORDER);
+    } // constructor
+
+    /********************************************************************************
+     * Construct an empty B+Tree map with the given order (maximum fan-out).
+     * @param _classK  the class for keys (K)
+     * @param _classV  the class for values (V)
+     * @param _order   the maximum number of children per internal node (at least 3)
+     */
+    public BpTreeMap (Class <K> _classK, Class <V> _classV, int _order)
+    {
+        if (_order < 3) throw new IllegalArgumentException ("BpTreeMap: order must be at least 3");
+        classK    = _classK;
+        classV    = _classV;
+        order     = _order;
+        root      = new Node (true);
+        firstLeaf = root;
+    } // constructor
+
+    /********************************************************************************
+     * Return a set containing all the entries as pairs of keys and values, in key order.
+     * The set is a view backed by the leaf level.
+     * @return  the set view of the map
+     */
+    public Set <Map.Entry <K, V>> entrySet ()
+    {
+        return new AbstractSet <> () {
+            public Iterator <Map.Entry <K, V>> iterator () { return scan (null, true, null, true); }
+            public int size () { return keyCount; }
+        };
+    } // entrySet
+
+    /********************************************************************************
+     * Return an iterator over the entries with lo <(=) key <(=) hi in key order.  The
+     * starting leaf is found by descending the tree once; the scan then follows the
+     * sibling links.  A null bound means unbounded on that side.
+     * @param lo     the lower bound (null for none)
+     * @param loInc  whether the lower bound is inclusive
+     * @param hi     the upper bound (null for none)
+     * @param hiInc  whether the upper bound is inclusive
+     * @return  an iterator over the qualifying entries
+     */
+    public Iterator <Map.Entry <K, V>> scan (K lo, boolean loInc, K hi, boolean hiInc)
+    {
+        var leaf = firstLeaf;
+        var pos  = 0;
+        if (lo != null) {
+            leaf = findLeaf (lo);
+            pos  = leaf.search (lo);
+            if (pos < 0) pos = -pos - 1; else if (! loInc) pos++;
+        } // if
+        var startLeaf = leaf;
+        var startPos  = pos;
+
+        return new Iterator <Map.Entry <K, V>> () {
+            Node n = startLeaf;
+            int  i = startPos;
+
+            { advance (); }
+
+            void advance ()
+            {
+                while (n != null && i >= n.nKeys) { n = n.next; i = 0; }
+                if (n != null && hi != null) {
+                    var c = n.key (i).compareTo (hi);
+                    if (c > 0 || c == 0 && ! hiInc) n = null;
+                } // if
+            } // advance
+
+            public boolean hasNext () { return n != null; }
+
+            public Map.Entry <K, V> next ()
+            {
+                if (n == null) throw new NoSuchElementException ();
+                var e = new AbstractMap.SimpleImmutableEntry <> (n.key (i), n.value (i));
+                i++;
+                advance ();
+                return e;
+            } // next
+        };
+    } // scan
+
+    /********************************************************************************
+     * Given the key, look up the value in the B+Tree map.
+     * @param key  the key used for look up
+     * @return  the value associated with the key or null if not found
+     */
+    @SuppressWarnings("unchecked")
+    public V get (Object key)
+    {
+        var leaf = findLeaf ((K) key);
+        var i    = leaf.search ((K) key);
+        return (i >= 0) ? leaf.value (i) : null;
+    } // get
+
+    /********************************************************************************
+     * Determine whether the B+Tree map contains the given key.
+     * @param key  the key to look for
+     * @return  whether the key is present
+     */
+    @SuppressWarnings("unchecked")
+    public boolean containsKey (Object key)
+    {
+        return findLeaf ((K) key).search ((K) key) >= 0;
+    } // containsKey
+
+    /********************************************************************************
+     * Put the key-value pair in the B+Tree map, splitting nodes that overflow.
+     * @param key    the key to insert
+     * @param value  the value to insert
+     * @return  the old/previous value, null if none
+     */
+    public V put (K key, V value)
+    {
+        if (key == null) throw new NullPointerException ("BpTreeMap does not allow null keys");
+        var old   = new Object [2];                                // old value, separator
+        var right = insert (root, key, value, old);
+        if (right != null) {                                     // root split => grow a level
+            var newRoot = new Node (false);
+            newRoot.key [0] = old [1];
+            newRoot.ref [0] = root;
+            newRoot.ref [1] = right;
+            newRoot.nKeys   = 1;
+            root = newRoot;
+        } // if
+        @SuppressWarnings("unchecked")
+        var oldV = (V) old [0];
+        return oldV;
+    } // put
+
+    /********************************************************************************
+     * Remove the key (and its value) from the B+Tree map.  Deletion is lazy: the entry
+     * is removed from its leaf, but under-full nodes are not merged.
+     * @param key  the key to remove
+     * @return  the value that was associated with the key, null if none
+     */
+    @SuppressWarnings("unchecked")
+    public V remove (Object key)
+    {
+        var leaf = findLeaf ((K) key);
+        var i    = leaf.search ((K) key);
+        if (i < 0) return null;
+        var oldV = leaf.value (i);
+        System.arraycopy (leaf.key, i + 1, leaf.key, i, leaf.nKeys - i - 1);
+        System.arraycopy (leaf.ref, i + 1, leaf.ref, i, leaf.nKeys - i - 1);
+        leaf.nKeys--;
+        leaf.key [leaf.nKeys] = null;
+        leaf.ref [leaf.nKeys] = null;
+        keyCount--;
+        return oldV;
+    } // remove
+
+    /********************************************************************************
+     * Remove all the entries from the B+Tree map.
+     */
+    public void clear ()
+    {
+        root      = new Node (true);
+        firstLeaf = root;
+        keyCount  = 0;
+    } // clear
+
+    /********************************************************************************
+     * Bulk load this (empty) B+Tree map from entries given in strictly increasing key
+     * order.  The leaves are packed left to right (FILL full) and linked, and then the
+     * internal levels are built bottom-up, so no splits occur.  The children of each
+     * level are spread evenly over its nodes, so no internal node has a lone child.
+     * @param sorted  the entries in strictly increasing key order
+     * @throws IllegalStateException     if the map is not empty
+     * @throws IllegalArgumentException  if the entries are not in increasing key order
+     */
+    public void bulkLoad (Iterable <? extends Map.Entry <K, V>> sorted)
+    {
+        if (keyCount > 0) throw new IllegalStateException ("bulkLoad: map is not empty");
+
+        var perLeaf = Math.max (1, (int) ((order - 1) * FILL));
+        var level   = new ArrayList <Node> ();
+        var leaf    = new Node (true);
+        K   prev    = null;
+
+        for (var e : sorted) {
+            var k = e.getKey ();
+            if (prev != null && prev.compareTo (k) >= 0) {
+                clear ();
+                throw new IllegalArgumentException ("bulkLoad: keys not in increasing order at " + k);
+            } // if
+            if (leaf.nKeys == perLeaf) {
+                level.add (leaf);
+                var nextLeaf = new Node (true);
+                leaf.next = nextLeaf;
+                leaf = nextLeaf;
+            } // if
+            leaf.key [leaf.nKeys] = k;
+            leaf.ref [leaf.nKeys] = e.getValue ();
+            leaf.nKeys++;
+            keyCount++;
+            prev = k;
+        } // for
+        level.add (leaf);
+        firstLeaf = level.get (0);
+
+        var perNode = Math.max (2, (int) (order * FILL));             // children per internal node
+        while (level.size () > 1) {
+            var n      = level.size ();
+            var groups = Math.max (1, Math.min ((n + perNode - 1) / perNode, n / 2));    // each gets 2 or more
+            var upper  = new ArrayList <Node> ();
+            for (int g = 0, i = 0; g < groups; g++) {
+                var end  = i + n / groups + ((g < n % groups) ? 1 : 0);              // spread the remainder evenly
+                var node = new Node (false);
+                node.ref [0] = level.get (i);
+                for (var j = i + 1; j < end; j++) {
+                    node.key [node.nKeys] = separator (level.get (j));
+                    node.nKeys++;
+                    node.ref [node.nKeys] = level.get (j);
+                } // for
+                upper.add (node);
+                i = end;
+            } // for
+            level = upper;
+        } // while
+        root = level.get (0);
+    } // bulkLoad
+
+    /********************************************************************************
+     * Return the number of key-value pairs in the B+Tree map.
+     * @return  the size of the map
+     */
+    public int size ()
+    {
+        return keyCount;
+    } // size
+
+    /********************************************************************************
+     * Return the order (maximum fan-out) of this B+Tree map.
+     * @return  the order
+     */
+    public int order ()
+    {
+        return order;
+    } // order
+
+    /********************************************************************************
+     * Return null since natural ordering is used.
+     * @return  null
+     */
+    public Comparator <? super K> comparator ()
+    {
+        return null;
+    } // comparator
+
+    /********************************************************************************
+     * Return the first (smallest) key in the B+Tree map.
+     * @return  the first key
+     */
+    public K firstKey ()
+    {
+        var it = scan (null, true, null, true);
+        if (! it.hasNext ()) throw new NoSuchElementException ("firstKey: map is empty");
+        return it.next ().getKey ();
+    } // firstKey
+
+    /********************************************************************************
+     * Return the last (largest) key in the B+Tree map.
+     * @return  the last key
+     */
+    public K lastKey ()
+    {
+        K last = null;
+        for (var n = firstLeaf; n != null; n = n.next) if (n.nKeys > 0) last = n.key (n.nKeys - 1);
+        if (last == null) throw new NoSuchElementException ("lastKey: map is empty");
+        return last;
+    } // lastKey
+
+    /********************************************************************************
+     * Return the portion of the B+Tree map where key < toKey.  The result is a new
+     * (bulk loaded) map, not a view.
+     * @param toKey  the upper bound (exclusive)
+     * @return  the submap with keys in the range
+     */
+    public SortedMap <K, V> headMap (K toKey)
+    {
+        return copyOf (scan (null, true, toKey, false));
+    } // headMap
+
+    /********************************************************************************
+     * Return the portion of the B+Tree map where fromKey <= key.  The result is a new
+     * (bulk loaded) map, not a view.
+     * @param fromKey  the lower bound (inclusive)
+     * @return  the submap with keys in the range
+     */
+    public SortedMap <K, V> tailMap (K fromKey)
+    {
+        return copyOf (scan (fromKey, true, null, true));
+    } // tailMap
+
+    /********************************************************************************
+     * Return the portion of the B+Tree map whose keys are between fromKey and toKey,
+     * i.e., fromKey <= key < toKey.  The result is a new (bulk loaded) map, not a view.
+     * @param fromKey  the lower bound (inclusive)
+     * @param toKey    the upper bound (exclusive)
+     * @return  the submap with keys in the range
+     */
+    public SortedMap <K, V> subMap (K fromKey, K toKey)
+    {
+        return copyOf (scan (fromKey, true, toKey, false));
+    } // subMap
+
+    /********************************************************************************
+     * Return the number of nodes accessed so far by look ups (for performance testing).
+     * @return  the count of nodes accessed
+     */
+    public int nodesAccessed ()
+    {
+        return count;
+    } // nodesAccessed
+
+    /********************************************************************************
+     * Print the B+Tree map, one level per line group (preorder with indentation).
+     */
+    public void print ()
+    {
+        out.println ("BpTreeMap");
+        out.println ("-------------------------------------------");
+        print (root, 0);
+        out.println ("-------------------------------------------");
+    } // print
+
+    /********************************************************************************
+     * Recursive helper for print.
+     * @param n      the current node
+     * @param level  the depth of the node
+     */
+    private void print (Node n, int level)
+    {
+        out.print ("\t".repeat (level));
+        n.print ();
+        if (! n.isLeaf) for (var i = 0; i <= n.nKeys; i++) print (n.child (i), level + 1);
+    } // print
+
+    /********************************************************************************
+     * Descend from the root to the leaf that covers key k.
+     * @param k  the key to look for
+     * @return  the leaf node covering k
+     */
+    private Node findLeaf (K k)
+    {
+        var n = root;
+        count++;
+        while (! n.isLeaf) {
+            n = n.child (n.route (k));
+            count++;
+        } // while
+        return n;
+    } // findLeaf
+
+    /********************************************************************************
+     * Recursively insert the key-value pair into the subtree rooted at node n.
+     * @param n      the root of the subtree
+     * @param k      the key to insert
+     * @param v      the value to insert
+     * @param old    holder for the old value (old [0]) and the separator key for
+     *               the parent when n was split (old [1])
+     * @return  the new right sibling if n was split, null otherwise
+     */
+    private Node insert (Node n, K k, V v, Object [] old)
+    {
+        if (n.isLeaf) {
+            var i = n.search (k);
+            if (i >= 0) { old [0] = n.ref [i]; n.ref [i] = v; return null; }
+            i = -i - 1;
+            System.arraycopy (n.key, i, n.key, i + 1, n.nKeys - i);
+            System.arraycopy (n.ref, i, n.ref, i + 1, n.nKeys - i);
+            n.key [i] = k;
+            n.ref [i] = v;
+            n.nKeys++;
+            keyCount++;
+            return (n.nKeys == order) ? splitLeaf (n, old) : null;
+        } // if
+
+        var i     = n.route (k);
+        var right = insert (n.child (i), k, v, old);
+        if (right == null) return null;
+
+        System.arraycopy (n.key, i, n.key, i + 1, n.nKeys - i);
+        System.arraycopy (n.ref, i + 1, n.ref, i + 2, n.nKeys - i);
+        n.key [i]     = old [1];
+        n.ref [i + 1] = right;
+        n.nKeys++;
+        return (n.nKeys == order) ? splitInternal (n, old) : null;
+    } // insert
+
+    /********************************************************************************
+     * Split an overflowing leaf node, moving its upper half to a new right sibling.
+     * The smallest key of the right sibling is copied up as the separator.
+     * @param n    the leaf node to split
+     * @param sep  holder for the separator key (sep [1])
+     * @return  the new right sibling
+     */
+    private Node splitLeaf (Node n, Object [] sep)
+    {
+        var right = new Node (true);
+        var mid   = n.nKeys / 2;
+        right.nKeys = n.nKeys - mid;
+        System.arraycopy (n.key, mid, right.key, 0, right.nKeys);
+        System.arraycopy (n.ref, mid, right.ref, 0, right.nKeys);
+        Arrays.fill (n.key, mid, n.nKeys, null);
+        Arrays.fill (n.ref, mid, n.nKeys, null);
+        n.nKeys    = mid;
+        right.next = n.next;
+        n.next     = right;
+        sep [1]    = right.key [0];
+        return right;
+    } // splitLeaf
+
+    /********************************************************************************
+     * Split an overflowing internal node.  The middle key moves up to the parent.
+     * @param n    the internal node to split
+     * @param sep  holder for the separator key (sep [1])
+     * @return  the new right sibling
+     */
+    private Node splitInternal (Node n, Object [] sep)
+    {
+        var right = new Node (false);
+        var mid   = n.nKeys / 2;                                  // key [mid] moves up
+        right.nKeys = n.nKeys - mid - 1;
+        System.arraycopy (n.key, mid + 1, right.key, 0, right.nKeys);
+        System.arraycopy (n.ref, mid + 1, right.ref, 0, right.nKeys + 1);
+        sep [1] = n.key [mid];
+        Arrays.fill (n.key, mid, n.nKeys, null);
+        Arrays.fill (n.ref, mid + 1, n.nKeys + 1, null);
+        n.nKeys = mid;
+        return right;
+    } // splitInternal
+
+    /********************************************************************************
+     * Return the separator key to place in the parent for the given node when bulk
+     * loading: the smallest key in its subtree.
+     * @param right  the right node
+     * @return  the separator key
+     */
+    private Object separator (Node right)
+    {
+        var n = right;
+        while (! n.isLeaf) n = n.child (0);
+        return n.key [0];
+    } // separator
+
+    /********************************************************************************
+     * Make a new B+Tree map (same order) bulk loaded with the remaining entries of it.
+     * @param it  an iterator over entries in increasing key order
+     * @return  the new map
+     */
+    private BpTreeMap <K, V> copyOf (Iterator <Map.Entry <K, V>> it)
+    {
+        var map = new BpTreeMap <K, V> (classK, classV, order);
+        map.bulkLoad (() -> it);
+        return map;
+    } // copyOf
+
+    /********************************************************************************
+     * The main method used for testing.
+     * @param  the command-line arguments (args [0] gives number of keys to insert)
+     */
+    public static void main (String [] args)
+    {
+        var totalKeys = 40;
+        var RANDOMLY  = false;
+
+        BpTreeMap <Integer, Integer> bpt = new BpTreeMap <> (Integer.class, Integer.class, 4);
+        if (args.length == 1) totalKeys = Integer.valueOf (args [0]);
+
+        if (RANDOMLY) {
+            var rng = new Random ();
+            for (var i = 1; i <= totalKeys; i += 2) bpt.put (rng.nextInt (2 * totalKeys), i * i);
+        } else {
+            for (var i = 1; i <= totalKeys; i += 2) bpt.put (i, i * i);
+        } // if
+
+        bpt.print ();
+        for (var i = 0; i <= totalKeys; i++) {
+            out.println ("key = " + i + " value = " + bpt.get (i));
+        } // for
+        out.println ("-------------------------------------------");
+        out.println ("Average number of nodes accessed = " + bpt.count / (double) totalKeys);
+        out.println ("subMap (10, 20) = " + bpt.subMap (10, 20));
+
+        var sorted = new TreeMap <Integer, Integer> ();
+        for (var i = 0; i < totalKeys; i++) sorted.put (i, -i);
+        var bulk = new BpTreeMap <Integer, Integer> (Integer.class, Integer.class, 5);
+        bulk.bulkLoad (sorted.entrySet ());
+        bulk.print ();
+        out.println ("bulk loaded get (17) = " + bulk.get (17) + ", size = " + bulk.size ());
+    } // main
+
+} // BpTreeMap class
+
@@ -0,0 +1,502 @@
+/************************************************************************************
+ * @file BufferPool.java
+ *
+ * @author  John Miller
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+import static java.lang.System.out;
+
+/************************************************************************************
+ * This class provides a buffer pool: a fixed number of page-sized frames through which
+ * the page-based files (table files, disk-resident indices and spill files) are read
+ * and written, so the memory they use stays bounded however large they grow.  A file
+ * is registered with the pool (giving a file id) and its pages are accessed by pinning
+ * them:
+ *
+ *   var f = pool.pin (fid, p);         // read page p into a frame (unless cached)
+ *   ... f.buffer () ...                // read or update the page
+ *   pool.unpin (f, dirty);             // release it, noting whether it was changed
+ *
+ * A pinned frame is never evicted.  When a page that is not cached is pinned, a victim
+ * frame is chosen by the clock algorithm (unpinned frames get a second chance when
+ * their reference bit is set) and written back first if dirty.  Hits, misses, evictions
+ * and write backs are counted in Metrics.  The pool's state is guarded by its lock,
+ * but a miss writes back the victim and reads the page outside it: the frame is marked
+ * in transit (mapped from both pages), so threads pinning either page wait for it while
+ * threads missing on other pages do their I/O in parallel.  Files may be read by
+ * several threads, but a page must not be updated by one thread while another is
+ * reading it.
+ */
+public class BufferPool
+{
+    /** The size of a page (and a frame) in bytes.
+     */
+    public static final int PAGE_SIZE = 8192;
+
+    /** The number of frames in the shared pool (set by -Ddb.bufferFrames, 1024 frames,
+     *  i.e., 8MB, by default).
+     */
+    private static final int SHARED_FRAMES = Integer.getInteger ("db.bufferFrames", 1024);
+
+    /** The metrics shared by all buffer pools.
+     */
+    private static final Metrics.Counter HITS       = Metrics.counter ("bufferpool.hits");
+    private static final Metrics.Counter MISSES     = Metrics.counter ("bufferpool.misses");
+    private static final Metrics.Counter EVICTIONS  = Metrics.counter ("bufferpool.evictions");
+    private static final Metrics.Counter WRITE_BACK = Metrics.counter ("bufferpool.writeBacks");
+
+    /** The key marking an empty slot in the table of cached pages.
+     */
+    private static final long EMPTY = -1;
+
+    /** The pool shared by the storage layer (made when first used).
+     */
+    private static BufferPool shared;
+
+    /********************************************************************************
+     * A frame holding one page of a file.
+     */
+    public static final class Frame
+    {
+        private final ByteBuffer buf = ByteBuffer.allocate (PAGE_SIZE);
+        private int     fid  = -1;
+        private long    page = -1;
+        private int     pins;
+        private boolean dirty;
+        private boolean ref;
+        private boolean transit;                                          // I/O outside the lock
+        private int     oldFid = -1;                                      // file of the page written back
+
+        /** Return the frame's page (position 0, limit PAGE_SIZE; a private view should
+         *  be used to read it when other threads may read the same page).
+         */
+        public ByteBuffer buffer ()       { return buf.clear (); }
+
+        /** Return the number of the page held in the frame.
+         */
+        public long page ()               { return page; }
+
+    } // Frame class
+
+    /** The frames of the pool.
+     */
+    private final Frame [] frame;
+
+    /** The frames holding each cached page: an open addressing (linear probing) table
+     *  keyed by file id and page number (see key), with room for at least twice as many
+     *  pages as frames, as a frame in transit is mapped from its old and its new page.
+     */
+    private final long [] keys;
+    private final Frame [] vals;
+    private final int mask;
+
+    /** The registered files (indexed by file id, null once unregistered) and the ids
+     *  free for reuse.
+     */
+    private final List <FileChannel> files = new ArrayList <> ();
+    private final Deque <Integer> freeIds = new ArrayDeque <> ();
+
+    /** The clock hand (the next frame to consider for eviction).
+     */
+    private int hand = 0;
+
+    /********************************************************************************
+     * Construct a buffer pool with the given number of frames.
+     * @param nFrames  the number of frames
+     */
+    public BufferPool (int nFrames)
+    {
+        if (nFrames < 1) throw new IllegalArgumentException ("BufferPool: need at least one frame");
+        frame = new Frame [nFrames];
+        for (var i = 0; i < nFrames; i++) frame [i] = new Frame ();
+        var cap = 4;
+        while (cap < 4L * nFrames) cap <<= 1;
+        keys = new long [cap];
+        vals = new Frame [cap];
+        mask = cap - 1;
+        Arrays.fill (keys, EMPTY);
+    } // constructor
+
+    /********************************************************************************
+     * Return the buffer pool shared by the storage layer.
+     * @return  the shared pool
+     */
+    public static synchronized BufferPool shared ()
+    {
+        if (shared == null) shared = new BufferPool (SHARED_FRAMES);
+        return shared;
+    } // shared
+
+    /********************************************************************************
+     * Return the number of frames in the pool.
+     * @return  the number of frames
+     */
+    public int frames ()
+    {
+        return frame.length;
+    } // frames
+
+    /********************************************************************************
+     * Register a file with the pool, so its pages can be pinned.  The id of a file
+     * that was unregistered is reused.
+     * @param ch  the channel for the (open) file
+     * @return  the file id
+     */
+    public synchronized int register (FileChannel ch)
+    {
+        var fid = freeIds.poll ();
+        if (fid != null) {
+            files.set (fid, ch);
+            return fid;
+        } // if
+        files.add (ch);
+        return files.size () - 1;
+    } // register
+
+    /********************************************************************************
+     * Unregister a file: write back its dirty pages (if asked) and drop its pages
+     * from the pool.  The channel is not closed.
+     * @param fid    the file id
+     * @param write  whether to write back the dirty pages (false for a file that is
+     *               about to be deleted)
+     */
+    public synchronized void unregister (int fid, boolean write)
+    {
+        if (write) flush (fid);
+        discard (fid, 0);
+        files.set (fid, null);
+        freeIds.push (fid);
+    } // unregister
+
+    /********************************************************************************
+     * Pin page p of the file, reading it into a frame unless it is already cached.
+     * A page past the end of the file reads as all zeros.
+     * @param fid  the file id
+     * @param p    the page number
+     * @return  the frame holding the page
+     * @throws IllegalStateException  if every frame is pinned
+     * @throws UncheckedIOException   if the page cannot be read
+     */
+    public Frame pin (int fid, long p)
+    {
+        return pin (fid, p, true);
+    } // pin
+
+    /********************************************************************************
+     * Pin page p of the file as a new (all zero) page, without reading it (e.g., a
+     * page being appended to the file).
+     * @param fid  the file id
+     * @param p    the page number
+     * @return  the frame holding the page
+     * @throws IllegalStateException  if every frame is pinned
+     */
+    public Frame pinNew (int fid, long p)
+    {
+        return pin (fid, p, false);
+    } // pinNew
+
+    /********************************************************************************
+     * Unpin a frame, noting whether its page was changed.
+     * @param f      the frame
+     * @param dirty  whether the page was changed (and so must be written back)
+     */
+    public synchronized void unpin (Frame f, boolean dirty)
+    {
+        if (f.pins == 0) throw new IllegalStateException ("unpin: page " + f.page + " is not pinned");
+        f.pins--;
+        f.dirty |= dirty;
+    } // unpin
+
+    /********************************************************************************
+     * Write back the dirty pages of the file.
+     * @param fid  the file id
+     * @throws UncheckedIOException  if a page cannot be written
+     */
+    public synchronized void flush (int fid)
+    {
+        awaitIo (fid);
+        for (var f : frame) if (f.fid == fid && f.dirty) writeBack (f);
+    } // flush
+
+    /********************************************************************************
+     * Drop the pages of the file numbered p0 or higher from the pool without writing
+     * them back (e.g., before the file is truncated).
+     * @param fid  the file id
+     * @param p0   the first page to drop
+     * @throws IllegalStateException  if one of those pages is pinned
+     */
+    public synchronized void discard (int fid, long p0)
+    {
+        awaitIo (fid);
+        for (var f : frame) {
+            if (f.fid != fid || f.page < p0) continue;
+            if (f.pins > 0) throw new IllegalStateException ("discard: page " + f.page + " is pinned");
+            uncache (key (fid, f.page));
+            f.fid   = -1;
+            f.page  = -1;
+            f.dirty = false;
+            f.ref   = false;
+        } // for
+    } // discard
+
+    /********************************************************************************
+     * Return the number of frames currently pinned.
+     * @return  the number of pinned frames
+     */
+    public synchronized int pinned ()
+    {
+        var n = 0;
+        for (var f : frame) if (f.pins > 0) n++;
+        return n;
+    } // pinned
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Pin page p of the file, reading it (or, if not asked to, zeroing it) into a
+     * victim frame on a miss.  The victim is claimed under the lock and marked in
+     * transit; its write back and the read are done outside the lock.
+     */
+    private Frame pin (int fid, long p, boolean read)
+    {
+        var k = key (fid, p);
+        Frame       f;
+        FileChannel ch, wbCh = null;
+        long        wbPage = -1;
+        synchronized (this) {
+            while ((f = lookup (k)) != null && f.transit) await ();
+            if (f != null) {
+                HITS.inc ();
+                f.pins++;
+                f.ref = true;
+                if (! read) Arrays.fill (f.buf.array (), (byte) 0);
+                return f;
+            } // if
+
+            MISSES.inc ();
+            f = victim ();
+            if (f.fid >= 0) {
+                EVICTIONS.inc ();
+                if (f.dirty) {                                               // stays mapped until written
+                    wbCh     = files.get (f.fid);
+                    wbPage   = f.page;
+                    f.oldFid = f.fid;
+                } else {
+                    uncache (key (f.fid, f.page));
+                } // if
+            } // if
+            ch        = files.get (fid);
+            f.fid     = fid;
+            f.page    = p;
+            f.dirty   = false;
+            f.pins    = 1;
+            f.ref     = true;
+            f.transit = true;
+            cache (k, f);
+        } // synchronized
+
+        var written = wbCh == null;
+        var done    = false;
+        try {
+            if (! written) { write (wbCh, f.buf, wbPage); written = true; }
+            if (read) read (ch, f.buf, p);
+            else      Arrays.fill (f.buf.array (), (byte) 0);
+            done = true;
+        } finally {
+            synchronized (this) {
+                if (wbCh != null && written) uncache (key (f.oldFid, wbPage));
+                if (! done) {                                                // give the frame up
+                    uncache (k);
+                    f.pins = 0;
+                    if (written) { f.fid = -1; f.page = -1; }
+                    else         { f.fid = f.oldFid; f.page = wbPage; f.dirty = true; }
+                } // if
+                f.oldFid  = -1;
+                f.transit = false;
+                notifyAll ();
+            } // synchronized
+        } // try
+        return f;
+    } // pin
+
+    /********************************************************************************
+     * Choose a victim frame by the clock algorithm (a frame in transit is pinned, so
+     * it is never chosen).
+     * @throws IllegalStateException  if every frame is pinned
+     */
+    private Frame victim ()
+    {
+        for (var i = 0; i < 2 * frame.length; i++) {                         // two sweeps clear every ref bit
+            var f = frame [hand];
+            hand  = (hand + 1) % frame.length;
+            if (f.pins > 0) continue;
+            if (f.ref) { f.ref = false; continue; }
+            return f;
+        } // for
+        throw new IllegalStateException ("BufferPool: all " + frame.length + " frames are pinned");
+    } // victim
+
+    /********************************************************************************
+     * Wait until no frame holding (or writing back) a page of the file is in transit.
+     */
+    private void awaitIo (int fid)
+    {
+        for (var busy = true; busy; ) {
+            busy = false;
+            for (var f : frame) busy |= f.transit && (f.fid == fid || f.oldFid == fid);
+            if (busy) await ();
+        } // for
+    } // awaitIo
+
+    /********************************************************************************
+     * Wait for a frame's I/O to finish (called holding the lock).
+     */
+    private void await ()
+    {
+        try {
+            wait ();
+        } catch (InterruptedException ex) {
+            Thread.currentThread ().interrupt ();
+            throw new IllegalStateException ("BufferPool: interrupted waiting for I/O", ex);
+        } // try
+    } // await
+
+    /********************************************************************************
+     * Read page p of the file into the buffer (zeros past the end of the file).
+     */
+    private static void read (FileChannel ch, ByteBuffer frameBuf, long p)
+    {
+        var buf = frameBuf.duplicate ().clear ();
+        try {
+            while (buf.hasRemaining ()) {
+                if (ch.read (buf, p * PAGE_SIZE + buf.position ()) < 0) break;
+            } // while
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("BufferPool: unable to read page " + p, ex);
+        } // try
+        Arrays.fill (buf.array (), buf.position (), PAGE_SIZE, (byte) 0);
+    } // read
+
+    /********************************************************************************
+     * Write the buffer to page p of the file.
+     */
+    private static void write (FileChannel ch, ByteBuffer frameBuf, long p)
+    {
+        WRITE_BACK.inc ();
+        var buf = frameBuf.duplicate ().clear ();
+        try {
+            while (buf.hasRemaining ()) ch.write (buf, p * PAGE_SIZE + buf.position ());
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("BufferPool: unable to write page " + p, ex);
+        } // try
+    } // write
+
+    /********************************************************************************
+     * Write the frame's page back to its file (called holding the lock).
+     */
+    private void writeBack (Frame f)
+    {
+        write (files.get (f.fid), f.buf, f.page);
+        f.dirty = false;
+    } // writeBack
+
+    /********************************************************************************
+     * Return the frame mapped from the key in the table of cached pages, null if none.
+     */
+    private Frame lookup (long k)
+    {
+        for (var i = slot (k); keys [i] != EMPTY; i = (i + 1) & mask) {
+            if (keys [i] == k) return vals [i];
+        } // for
+        return null;
+    } // lookup
+
+    /********************************************************************************
+     * Map the key (which must not be mapped) to the frame.
+     */
+    private void cache (long k, Frame f)
+    {
+        var i = slot (k);
+        while (keys [i] != EMPTY) i = (i + 1) & mask;
+        keys [i] = k;
+        vals [i] = f;
+    } // cache
+
+    /********************************************************************************
+     * Remove the key (if mapped), shifting back the keys after it in its cluster that
+     * could no longer be found (so no tombstones are needed).
+     */
+    private void uncache (long k)
+    {
+        var i = slot (k);
+        while (keys [i] != k) {
+            if (keys [i] == EMPTY) return;
+            i = (i + 1) & mask;
+        } // while
+        for (var j = (i + 1) & mask; keys [j] != EMPTY; j = (j + 1) & mask) {
+            if (((j - slot (keys [j])) & mask) >= ((j - i) & mask)) {    // its home is not in (i, j]
+                keys [i] = keys [j];
+                vals [i] = vals [j];
+                i = j;
+            } // if
+        } // for
+        keys [i] = EMPTY;
+        vals [i] = null;
+    } // uncache
+
+    /********************************************************************************
+     * Return the home slot of the key in the table of cached pages.
+     */
+    private int slot (long k)
+    {
+        return (int) ((k * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    } // slot
+
+    /********************************************************************************
+     * Return the key of page p of the file in the table of cached pages.
+     */
+    private static long key (int fid, long p)
+    {
+        return ((long) fid << 40) | p;
+    } // key
+
+    /********************************************************************************
+     * The main method used for testing: cycle through more pages than frames.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+        throws IOException
+    {
+        var file = File.createTempFile ("pool_", ".test");
+        file.deleteOnExit ();
+        try (var ch = FileChannel.open (file.toPath (), java.nio.file.StandardOpenOption.READ,
+                                        java.nio.file.StandardOpenOption.WRITE)) {
+            var pool = new BufferPool (16);
+            var fid  = pool.register (ch);
+            for (var p = 0; p < 64; p++) {
+                var f = pool.pinNew (fid, p);
+                f.buffer ().putLong (0, p * 1000L);
+                pool.unpin (f, true);
+            } // for
+            var bad = 0;
+            for (var r = 0; r < 4; r++) {
+                for (var p = 0; p < 64; p++) {
+                    var f = pool.pin (fid, (p * 7) % 64);
+                    if (f.buffer ().getLong (0) != (p * 7) % 64 * 1000L) bad++;
+                    pool.unpin (f, false);
+                } // for
+            } // for
+            pool.unregister (fid, true);
+            out.println ("file length = " + ch.size () + ", bad = " + bad);
+        } // try
+        out.println (Metrics.report ());
+    } // main
+
+} // BufferPool class
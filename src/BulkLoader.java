@@ -0,0 +1,327 @@
+/************************************************************************************
+ * @file BulkLoader.java
+ *
+ * @author  John Miller
+ */
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+import static java.lang.System.out;
+
+/************************************************************************************
+ * This class provides bulk loading of tables from a row source.  Independent tables
+ * are loaded concurrently (one task per table on a fixed thread pool) and rows are
+ * handed to each table in batches (Table.insertAll): there is no per-row trace, and
+ * a logged table appends every row to its write-ahead log but commits once per batch.
+ * Two row sources are provided: a JDBC source that reuses pooled connections and
+ * streams rows through a server-side cursor (fetch size), and a dump file source that
+ * reads tab-separated files (PostgreSQL COPY text format), so no database server is
+ * needed.
+ *
+ * #usage new BulkLoader (new BulkLoader.DumpSource (new File ("data")), 4, 1000).load (2500, film, actor)
+ */
+public class BulkLoader
+{
+    /********************************************************************************
+     * A source of rows for tables.  Implementations must allow concurrent reads of
+     * different tables.
+     */
+    public interface Source
+           extends AutoCloseable
+    {
+        /****************************************************************************
+         * Read (at most limit) rows of the given table, converted to the table's
+         * domains, handing them to the sink in batches of (at most) batchSize rows.
+         * @param table      the table whose rows are read (its name and domains are used)
+         * @param limit      the maximum number of rows to read (0 => all)
+         * @param batchSize  the number of rows per batch
+         * @param sink       the consumer of the batches
+         */
+        void read (Table table, int limit, int batchSize, Consumer <List <Comparable []>> sink)
+            throws Exception;
+
+        /****************************************************************************
+         * Release the resources held by the source (a JDBC source closes its
+         * connections, a file source holds none).
+         */
+        default void close () throws IOException, SQLException {}
+
+    } // Source interface
+
+    /********************************************************************************
+     * A source of rows read from a database through JDBC.  Connections are kept in
+     * a pool (of at most poolSize) and reused across tables, and each query is run with
+     * auto-commit off and a fetch size, so the driver streams rows through a cursor
+     * rather than materializing the whole result set.
+     */
+    public static class JdbcSource
+           implements Source
+    {
+        private final String url, user, password;
+        private final int    fetchSize;
+        private final BlockingQueue <Connection> idle;
+        private final Semaphore permits;
+
+        /****************************************************************************
+         * Construct a JDBC row source.
+         * @param _url        the JDBC url of the database
+         * @param _user       the user name
+         * @param _password   the password
+         * @param poolSize    the maximum number of open connections
+         * @param _fetchSize  the number of rows fetched per round trip
+         */
+        public JdbcSource (String _url, String _user, String _password, int poolSize, int _fetchSize)
+        {
+            url       = _url;
+            user      = _user;
+            password  = _password;
+            fetchSize = _fetchSize;
+            idle      = new LinkedBlockingQueue <> ();
+            permits   = new Semaphore (poolSize);
+        } // constructor
+
+        public void read (Table table, int limit, int batchSize, Consumer <List <Comparable []>> sink)
+            throws SQLException, InterruptedException
+        {
+            var dom  = table.getDomain ();
+            var sql  = "select * from " + table.getName () + ((limit > 0) ? " LIMIT " + limit : "");
+            var conn = borrow ();
+            try (var stmt = conn.createStatement (ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                stmt.setFetchSize (fetchSize);
+                try (var rs = stmt.executeQuery (sql)) {
+                    var batch = new ArrayList <Comparable []> (batchSize);
+                    while (rs.next ()) {
+                        var tup = new Comparable [dom.length];
+                        for (var j = 0; j < dom.length; j++) tup [j] = convert (rs.getObject (j + 1), dom [j]);
+                        batch.add (tup);
+                        if (batch.size () == batchSize) { sink.accept (batch); batch = new ArrayList <> (batchSize); }
+                    } // while
+                    if (! batch.isEmpty ()) sink.accept (batch);
+                } // try
+                conn.commit ();
+            } catch (SQLException | RuntimeException ex) {
+                discard (conn, ex);
+                throw ex;
+            } // try
+            giveBack (conn);
+        } // read
+
+        public void close () throws SQLException
+        {
+            for (Connection conn; (conn = idle.poll ()) != null; ) conn.close ();
+        } // close
+
+        /****************************************************************************
+         * Take an idle connection from the pool, opening a new one if the pool is
+         * not yet full (waiting otherwise).
+         */
+        private Connection borrow () throws SQLException, InterruptedException
+        {
+            permits.acquire ();
+            var conn = idle.poll ();
+            if (conn != null && ! conn.isClosed ()) return conn;
+            try {
+                conn = DriverManager.getConnection (url, user, password);
+                conn.setAutoCommit (false);                              // needed for cursor-based fetch
+                return conn;
+            } catch (SQLException ex) {
+                permits.release ();
+                throw ex;
+            } // try
+        } // borrow
+
+        /****************************************************************************
+         * Return a connection to the pool.
+         */
+        private void giveBack (Connection conn)
+        {
+            idle.add (conn);
+            permits.release ();
+        } // giveBack
+
+        /****************************************************************************
+         * Roll back and close a connection whose query failed, rather than return it
+         * to the pool (failures doing so are added to ex as suppressed exceptions).
+         */
+        private void discard (Connection conn, Exception ex)
+        {
+            try {
+                conn.rollback ();
+            } catch (SQLException rb) {
+                ex.addSuppressed (rb);
+            } // try
+            try {
+                conn.close ();
+            } catch (SQLException cl) {
+                ex.addSuppressed (cl);
+            } // try
+            permits.release ();
+        } // discard
+
+        /****************************************************************************
+         * Convert a JDBC value to the given domain (arrays are rendered as strings and
+         * strings are trimmed; values of unknown domain are kept as strings).
+         */
+        private static Comparable convert (Object v, Class dom)
+            throws SQLException
+        {
+            if (v == null) return null;
+            if (v instanceof java.sql.Array arr) return Arrays.toString ((Object []) arr.getArray ());
+            if (v instanceof Number num) {
+                if (dom == Integer.class) return num.intValue ();
+                if (dom == Long.class)    return num.longValue ();
+                if (dom == Double.class)  return num.doubleValue ();
+                if (dom == Float.class)   return num.floatValue ();
+                if (dom == Short.class)   return num.shortValue ();
+            } // if
+            if (v instanceof Boolean b && dom == Boolean.class) return b;
+            return v.toString ().trim ();
+        } // convert
+
+    } // JdbcSource class
+
+    /********************************************************************************
+     * A source of rows read from dump files: table t is read from the file t.tsv in
+     * the given directory, one tuple per line, fields separated by tabs, \N for null
+     * (the PostgreSQL COPY text format, e.g., from psql \copy t to 't.tsv').
+     */
+    public static class DumpSource
+           implements Source
+    {
+        private final File dir;
+
+        /****************************************************************************
+         * Construct a dump file row source.
+         * @param _dir  the directory holding the dump files
+         */
+        public DumpSource (File _dir)
+        {
+            dir = _dir;
+        } // constructor
+
+        public void read (Table table, int limit, int batchSize, Consumer <List <Comparable []>> sink)
+            throws IOException
+        {
+            var dom  = table.getDomain ();
+            var file = new File (dir, table.getName () + ".tsv");
+            try (var in = new BufferedReader (new InputStreamReader (new FileInputStream (file),
+                                                                     StandardCharsets.UTF_8), 1 << 16)) {
+                var batch = new ArrayList <Comparable []> (batchSize);
+                String line;
+                for (var n = 0; (limit <= 0 || n < limit) && (line = in.readLine ()) != null; n++) {
+                    var field = line.split ("\t", -1);
+                    var tup   = new Comparable [dom.length];
+                    for (var j = 0; j < dom.length; j++) tup [j] = parse (field [j], dom [j]);
+                    batch.add (tup);
+                    if (batch.size () == batchSize) { sink.accept (batch); batch = new ArrayList <> (batchSize); }
+                } // for
+                if (! batch.isEmpty ()) sink.accept (batch);
+            } // try
+        } // read
+
+        /****************************************************************************
+         * Parse a field of a dump file into a value of the given domain.
+         * @param s    the field (\N means null)
+         * @param dom  the domain (class) of the value, null if unknown
+         * @return  the value
+         */
+        static Comparable parse (String s, Class dom)
+        {
+            if (s.equals ("\\N")) return null;
+            if (dom == Integer.class) return Integer.valueOf (s);
+            if (dom == Long.class)    return Long.valueOf (s);
+            if (dom == Double.class)  return Double.valueOf (s);
+            if (dom == Float.class)   return Float.valueOf (s);
+            if (dom == Short.class)   return Short.valueOf (s);
+            if (dom == Boolean.class) return s.equals ("t") || Boolean.parseBoolean (s);
+            return s;
+        } // parse
+
+    } // DumpSource class
+
+    /** The source of the rows.
+     */
+    private final Source source;
+
+    /** The number of tables loaded concurrently.
+     */
+    private final int threads;
+
+    /** The number of rows handed to a table at a time.
+     */
+    private final int batchSize;
+
+    /********************************************************************************
+     * Construct a bulk loader.
+     * @param _source     the source of the rows
+     * @param _threads    the number of tables loaded concurrently
+     * @param _batchSize  the number of rows handed to a table at a time
+     */
+    public BulkLoader (Source _source, int _threads, int _batchSize)
+    {
+        source    = _source;
+        threads   = _threads;
+        batchSize = _batchSize;
+    } // constructor
+
+    /********************************************************************************
+     * Load the given (independent) tables concurrently, each with at most limit rows.
+     * @param limit   the maximum number of rows per table (0 => all)
+     * @param tables  the tables to load
+     * @return  the number of rows inserted into each table (by table name; rows failing
+     *          the type check are not counted)
+     * @throws IllegalStateException  if loading any table fails (the others complete)
+     */
+    public Map <String, Integer> load (int limit, Table ... tables)
+    {
+        var pool    = Executors.newFixedThreadPool (Math.max (1, Math.min (threads, tables.length)));
+        var futures = new LinkedHashMap <String, Future <Integer>> ();
+        for (var table : tables) {
+            futures.put (table.getName (), pool.submit (() -> {
+                var n = new int [1];
+                source.read (table, limit, batchSize, batch -> n [0] += table.insertAll (batch));
+                return n [0];
+            }));
+        } // for
+        pool.shutdown ();
+
+        var counts = new LinkedHashMap <String, Integer> ();
+        IllegalStateException failure = null;
+        for (var e : futures.entrySet ()) {
+            try {
+                counts.put (e.getKey (), e.getValue ().get ());
+            } catch (ExecutionException ex) {
+                if (failure == null) failure = new IllegalStateException ("load: failed to load " + e.getKey (), ex.getCause ());
+                else failure.addSuppressed (ex.getCause ());
+            } catch (InterruptedException ex) {
+                Thread.currentThread ().interrupt ();
+                throw new IllegalStateException ("load: interrupted", ex);
+            } // try
+        } // for
+        if (failure != null) throw failure;
+        return counts;
+    } // load
+
+    /********************************************************************************
+     * The main method used for testing: load the tables of QueryBench from dump files
+     * (args [0] gives the directory, default data) and report the time taken.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+        throws Exception
+    {
+        var dir    = new File ((args.length > 0) ? args [0] : "data");
+        var tables = QueryBench.makeTables ();
+        try (var src = new DumpSource (dir)) {
+            var start  = System.nanoTime ();
+            var counts = new BulkLoader (src, 4, 1000).load (0, tables);
+            out.println ("loaded " + counts + " in " + (System.nanoTime () - start) / 1e6 + " ms");
+        } // try
+    } // main
+
+} // BulkLoader class
@@ -0,0 +1,427 @@
+/************************************************************************************
+ * @file ColumnStore.java
+ *
+ * @author  John Miller
+ */
+
+import java.io.Serializable;
+import java.util.*;
+
+import static java.lang.System.out;
+
+/************************************************************************************
+ * This class provides column-oriented storage for the tuples of a table.  Each
+ * attribute is kept in its own array: Integer and Long columns in primitive int []
+ * and long [] arrays, Double and Float columns in primitive double [] arrays, String
+ * columns dictionary encoded and all other domains in Comparable [] arrays.  A
+ * dictionary-encoded column holds an int code per row (-1 for null) and a dictionary
+ * of its distinct strings, so each distinct string is stored once and equal strings
+ * have equal codes.  A primitive column that receives a value of another type (e.g.,
+ * a null or a String) is demoted to a Comparable [] column, as is a String column
+ * whose cardinality turns out to be high (more distinct values than DICT_MIN and
+ * than half the rows).
+ * It extends AbstractList, so the row-oriented API (get, add, iterate) keeps working
+ * by materializing rows on demand, while operators may scan individual columns.
+ */
+public class ColumnStore
+       extends AbstractList <Comparable []>
+       implements RandomAccess, Serializable
+{
+    /** The initial capacity (number of rows) of each column.
+     */
+    private static final int INIT_CAP = 16;
+
+    /** The number of distinct strings a dictionary-encoded column may always hold;
+     *  beyond it, the column is demoted once it has more distinct values than half its
+     *  rows.
+     */
+    private static final int DICT_MIN = 1024;
+
+    /** The kinds of columns: boxed objects, int, long, double and float (held in double [])
+     *  and dictionary-encoded strings (codes held in int [])
+     */
+    static final byte OBJ = 0, INT = 1, LNG = 2, DBL = 3, FLT = 4, STR = 5;
+
+    /** The kind of each column.
+     */
+    private final byte [] kind;
+
+    /** The columns: each is an int [], long [], double [] or Comparable [].
+     */
+    private final Object [] column;
+
+    /** The dictionary of each dictionary-encoded (STR) column (null for other kinds).
+     */
+    private final Dictionary [] dict;
+
+    /** The number of rows stored.
+     */
+    private int n;
+
+    /** The current capacity (number of rows) of the column arrays.
+     */
+    private int cap;
+
+    /********************************************************************************
+     * Construct an empty column store for the given attribute domains.
+     * @param domain  the domains (classes) of the attributes
+     */
+    public ColumnStore (Class [] domain)
+    {
+        kind   = new byte [domain.length];
+        column = new Object [domain.length];
+        dict   = new Dictionary [domain.length];
+        cap    = INIT_CAP;
+        for (var j = 0; j < domain.length; j++) {
+            kind [j]   = kindOf (domain [j]);
+            column [j] = alloc (kind [j], cap);
+            if (kind [j] == STR) dict [j] = new Dictionary ();
+        } // for
+    } // constructor
+
+    /********************************************************************************
+     * Construct a column store from already filled columns.
+     * @param _kind    the kind of each column
+     * @param _column  the column arrays (each of length at least _n)
+     * @param _dict    the dictionaries of the STR columns (copied)
+     * @param _n       the number of rows
+     */
+    private ColumnStore (byte [] _kind, Object [] _column, Dictionary [] _dict, int _n)
+    {
+        kind   = _kind;
+        column = _column;
+        dict   = new Dictionary [_dict.length];
+        for (var j = 0; j < dict.length; j++) if (_dict [j] != null) dict [j] = new Dictionary (_dict [j]);
+        n      = _n;
+        cap    = Math.max (_n, INIT_CAP);
+        for (var j = 0; j < column.length; j++) column [j] = resize (kind [j], column [j], n, cap);
+    } // constructor
+
+    /********************************************************************************
+     * Return the number of rows stored.
+     * @return  the number of rows
+     */
+    public int size ()
+    {
+        return n;
+    } // size
+
+    /********************************************************************************
+     * Return the i-th row, materialized as a tuple.
+     * @param i  the row number
+     * @return  the tuple for row i
+     */
+    public Comparable [] get (int i)
+    {
+        Objects.checkIndex (i, n);
+        var tup = new Comparable [column.length];
+        for (var j = 0; j < tup.length; j++) tup [j] = value (i, j);
+        return tup;
+    } // get
+
+    /********************************************************************************
+     * Replace the i-th row with the given tuple.
+     * @param i    the row number
+     * @param tup  the new tuple
+     * @return  the old tuple
+     */
+    public Comparable [] set (int i, Comparable [] tup)
+    {
+        var old = get (i);
+        for (var j = 0; j < column.length; j++) store (i, j, tup [j]);
+        return old;
+    } // set
+
+    /********************************************************************************
+     * Append the given tuple as a new row, splitting it into the columns.
+     * @param tup  the tuple to append
+     * @return  true
+     */
+    public boolean add (Comparable [] tup)
+    {
+        if (n == cap) grow ();
+        for (var j = 0; j < column.length; j++) store (n, j, tup [j]);
+        n++;
+        modCount++;
+        return true;
+    } // add
+
+    /********************************************************************************
+     * Return the value in row i, column j (boxed if the column is primitive).
+     * @param i  the row number
+     * @param j  the column number
+     * @return  the value
+     */
+    public Comparable value (int i, int j)
+    {
+        return switch (kind [j]) {
+            case INT -> ((int []) column [j]) [i];
+            case LNG -> ((long []) column [j]) [i];
+            case DBL -> ((double []) column [j]) [i];
+            case FLT -> (float) ((double []) column [j]) [i];
+            case STR -> dict [j].decode (((int []) column [j]) [i]);
+            default  -> ((Comparable []) column [j]) [i];
+        }; // switch
+    } // value
+
+    /********************************************************************************
+     * Return the kind of column j (OBJ, INT, LNG, DBL, FLT or STR).
+     * @param j  the column number
+     * @return  the kind of column
+     */
+    public byte kind (int j)
+    {
+        return kind [j];
+    } // kind
+
+    /********************************************************************************
+     * Return the raw array for column j (only the first size () entries are valid).
+     * Callers must check kind (j) to know whether it is an int [], long [], double []
+     * or Comparable [].  For a STR column, it is the int [] of codes (see dictionary).
+     * @param j  the column number
+     * @return  the column array
+     */
+    public Object column (int j)
+    {
+        return column [j];
+    } // column
+
+    /********************************************************************************
+     * Return (a copy of) the distinct strings of the dictionary-encoded column j,
+     * indexed by code.
+     * @param j  the column number (of kind STR)
+     * @return  the dictionary's strings
+     */
+    public String [] dictionary (int j)
+    {
+        return dict [j].values ();
+    } // dictionary
+
+    /********************************************************************************
+     * Return the code of value v in the dictionary-encoded column j, or -1 if it does
+     * not occur in the column.
+     * @param j  the column number (of kind STR)
+     * @param v  the value to look up
+     * @return  its code, -1 if none
+     */
+    public int code (int j, Comparable v)
+    {
+        return (v instanceof String str) ? dict [j].code (str) : -1;
+    } // code
+
+    /********************************************************************************
+     * Project this store onto the given columns by copying just those column arrays.
+     * @param cols  the column positions to keep
+     * @return  a new column store holding only the given columns
+     */
+    public ColumnStore project (int [] cols)
+    {
+        var k = new byte [cols.length];
+        var c = new Object [cols.length];
+        var d = new Dictionary [cols.length];
+        for (var j = 0; j < cols.length; j++) {
+            k [j] = kind [cols [j]];
+            c [j] = column [cols [j]];
+            d [j] = dict [cols [j]];
+        } // for
+        return new ColumnStore (k, c, d, n);
+    } // project
+
+    /********************************************************************************
+     * Gather the given rows (in order) into a new column store.
+     * @param rows   the row numbers to keep
+     * @param count  the number of valid entries in rows
+     * @return  a new column store holding only the given rows
+     */
+    public ColumnStore gather (int [] rows, int count)
+    {
+        var c = new Object [column.length];
+        for (var j = 0; j < column.length; j++) {
+            switch (kind [j]) {
+            case INT, STR -> { var src = (int []) column [j]; var dst = new int [count];
+                          for (var i = 0; i < count; i++) dst [i] = src [rows [i]]; c [j] = dst; }
+            case LNG -> { var src = (long []) column [j]; var dst = new long [count];
+                          for (var i = 0; i < count; i++) dst [i] = src [rows [i]]; c [j] = dst; }
+            case DBL, FLT -> { var src = (double []) column [j]; var dst = new double [count];
+                          for (var i = 0; i < count; i++) dst [i] = src [rows [i]]; c [j] = dst; }
+            default  -> { var src = (Comparable []) column [j]; var dst = new Comparable [count];
+                          for (var i = 0; i < count; i++) dst [i] = src [rows [i]]; c [j] = dst; }
+            } // switch
+        } // for
+        return new ColumnStore (kind.clone (), c, dict, count);
+    } // gather
+
+    /********************************************************************************
+     * Store value v in row i, column j, demoting the column if v does not fit.
+     * @param i  the row number
+     * @param j  the column number
+     * @param v  the value to store
+     */
+    private void store (int i, int j, Comparable v)
+    {
+        switch (kind [j]) {
+        case INT -> { if (v instanceof Integer x) { ((int []) column [j]) [i] = x; return; } }
+        case LNG -> { if (v instanceof Long x)    { ((long []) column [j]) [i] = x; return; } }
+        case DBL -> { if (v instanceof Double x)  { ((double []) column [j]) [i] = x; return; } }
+        case FLT -> { if (v instanceof Float x)   { ((double []) column [j]) [i] = x; return; } }
+        case STR -> { if (v == null) { ((int []) column [j]) [i] = -1; return; }
+                      if (v instanceof String x && ! highCardinality (j, x)) {
+                          ((int []) column [j]) [i] = dict [j].encode (x); return; } }
+        default  -> { ((Comparable []) column [j]) [i] = v; return; }
+        } // switch
+        demote (j);
+        ((Comparable []) column [j]) [i] = v;
+    } // store
+
+    /********************************************************************************
+     * Return whether adding string x to the dictionary of column j would give it too
+     * many distinct values to be worth encoding.
+     * @param j  the column number (of kind STR)
+     * @param x  the string to be added
+     */
+    private boolean highCardinality (int j, String x)
+    {
+        var size = dict [j].size ();
+        return size >= DICT_MIN && 2 * size > n && dict [j].code (x) < 0;
+    } // highCardinality
+
+    /********************************************************************************
+     * Demote primitive (or dictionary-encoded) column j to a Comparable [] column by
+     * boxing (or decoding) its values.
+     * @param j  the column number
+     */
+    private void demote (int j)
+    {
+        var boxed = new Comparable [cap];
+        for (var i = 0; i < n; i++) boxed [i] = value (i, j);
+        column [j] = boxed;
+        kind [j]   = OBJ;
+        dict [j]   = null;
+    } // demote
+
+    /********************************************************************************
+     * Double the capacity of all the columns.
+     */
+    private void grow ()
+    {
+        var newCap = 2 * cap;
+        for (var j = 0; j < column.length; j++) column [j] = resize (kind [j], column [j], n, newCap);
+        cap = newCap;
+    } // grow
+
+    /********************************************************************************
+     * Return the kind of column to use for the given domain.
+     * @param dom  the domain (class) of the attribute
+     * @return  the kind of column
+     */
+    private static byte kindOf (Class dom)
+    {
+        if (dom == Integer.class) return INT;
+        if (dom == Long.class)    return LNG;
+        if (dom == Double.class)  return DBL;
+        if (dom == Float.class)   return FLT;
+        if (dom == String.class)  return STR;
+        return OBJ;
+    } // kindOf
+
+    /********************************************************************************
+     * Allocate an empty column array of the given kind.
+     * @param k    the kind of column
+     * @param len  the length of the array
+     * @return  the new array
+     */
+    private static Object alloc (byte k, int len)
+    {
+        return switch (k) {
+            case INT, STR -> new int [len];
+            case LNG      -> new long [len];
+            case DBL, FLT -> new double [len];
+            default       -> new Comparable [len];
+        }; // switch
+    } // alloc
+
+    /********************************************************************************
+     * Copy the first n entries of a column array into a new array of length len.
+     * @param k    the kind of column
+     * @param col  the column array
+     * @param n    the number of valid entries
+     * @param len  the length of the new array
+     * @return  the new array
+     */
+    private static Object resize (byte k, Object col, int n, int len)
+    {
+        var arr = alloc (k, len);
+        System.arraycopy (col, 0, arr, 0, n);
+        return arr;
+    } // resize
+
+    /********************************************************************************
+     * The dictionary of a dictionary-encoded column: its distinct strings, numbered
+     * (coded) in order of first occurrence.
+     */
+    private static final class Dictionary
+            implements Serializable
+    {
+        private final List <String> values;
+        private final Map <String, Integer> codes;
+
+        Dictionary ()
+        {
+            values = new ArrayList <> ();
+            codes  = new HashMap <> ();
+        } // constructor
+
+        Dictionary (Dictionary other)
+        {
+            values = new ArrayList <> (other.values);
+            codes  = new HashMap <> (other.codes);
+        } // constructor
+
+        int size ()                       { return values.size (); }
+        String decode (int c)             { return (c < 0) ? null : values.get (c); }
+        String [] values ()               { return values.toArray (new String [0]); }
+
+        int code (String v)
+        {
+            var c = codes.get (v);
+            return (c == null) ? -1 : c;
+        } // code
+
+        int encode (String v)
+        {
+            var c = codes.get (v);
+            if (c != null) return c;
+            codes.put (v, values.size ());
+            values.add (v);
+            return values.size () - 1;
+        } // encode
+
+    } // Dictionary class
+
+    /********************************************************************************
+     * The main method used for testing.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+    {
+        var cs = new ColumnStore (new Class [] { Integer.class, String.class, Float.class });
+        for (var i = 0; i < 40; i++) cs.add (new Comparable [] { i, "s" + i, i / 2.0f });
+        cs.add (new Comparable [] { "forty", "s40", 20.0f });                 // demotes column 0
+
+        out.println ("size = " + cs.size () + ", kinds = " + Arrays.toString (cs.kind));
+        out.println ("row 3  = " + Arrays.toString (cs.get (3)));
+        out.println ("row 40 = " + Arrays.toString (cs.get (40)));
+        var p = cs.project (new int [] { 2, 1 });
+        out.println ("projected row 5 = " + Arrays.toString (p.get (5)));
+        var g = cs.gather (new int [] { 1, 7, 40 }, 3);
+        for (var t : g) out.println ("gathered " + Arrays.toString (t));
+
+        var ratings = new ColumnStore (new Class [] { Integer.class, String.class, String.class });
+        String [] rating = { "G", "PG", "PG-13", "R", "NC-17" };
+        for (var i = 0; i < 5000; i++) ratings.add (new Comparable [] { i, rating [i % 5], "title " + i });
+        out.println ("kinds = " + Arrays.toString (ratings.kind) + ", rating dictionary = "
+                   + Arrays.toString (ratings.dictionary (1)) + ", code of PG = " + ratings.code (1, "PG"));
+    } // main
+
+} // ColumnStore class
+
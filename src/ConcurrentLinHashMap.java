@@ -0,0 +1,521 @@
+/************************************************************************************
+ * @file ConcurrentLinHashMap.java
+ *
+ * @author  John Miller
+ */
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.lang.System.out;
+
+/************************************************************************************
+ * This class provides thread-safe hash maps that use the Linear Hashing algorithm.
+ * Each bucket chain is an immutable linked list of nodes (only a node's value may be
+ * replaced), so look ups (get) never lock, even while a chain is being split.
+ * Writes lock one of a fixed set of striped locks, chosen by bucket number.  At most
+ * one thread splits at a time; a split copies chain 'isplit' into its two new chains,
+ * publishing the new chain first, then the new split pointer, then the old chain, so
+ * a reader that raced with a split notices the changed level and simply retries.
+ * The hash table is a segmented directory of buckets, so growing never copies a
+ * bucket; the directory itself starts small and is replaced by a copy twice its size
+ * when it runs out of segments.
+ */
+public class ConcurrentLinHashMap <K, V>
+       extends AbstractMap <K, V>
+       implements ConcurrentMap <K, V>, Serializable
+{
+    /** The threshold/upper bound on the load factor (keys per bucket chain)
+     */
+    private static final double THRESHOLD = 1.5;
+
+    /** The number of striped locks (a power of 2)
+     */
+    private static final int STRIPES = 64;
+
+    /** The number of buckets per directory segment is 2^SEG_BITS
+     */
+    private static final int SEG_BITS = 10;
+
+    /** The initial and maximum number of directory segments
+     */
+    private static final int INIT_SEGS = 4, MAX_SEGS = 1 << 16;
+
+    /********************************************************************************
+     * This inner class defines the nodes making up the (immutable) bucket chains.
+     */
+    private static final class Node <K, V> implements Serializable
+    {
+        final int        hash;
+        final K          key;
+        volatile V       value;
+        final Node <K, V> next;
+
+        Node (int _hash, K _key, V _value, Node <K, V> _next)
+        {
+            hash  = _hash;
+            key   = _key;
+            value = _value;
+            next  = _next;
+        } // constructor
+
+    } // Node inner class
+
+    /********************************************************************************
+     * This inner class records the hashing level: the low resolution modulus and
+     * the index of the next bucket chain to split.  Levels are immutable, so both are
+     * read together.
+     */
+    private static final class Level implements Serializable
+    {
+        final int mod1;
+        final int isplit;
+
+        Level (int _mod1, int _isplit)
+        {
+            mod1   = _mod1;
+            isplit = _isplit;
+        } // constructor
+
+    } // Level inner class
+
+    /** The directory of buckets: segment s holds buckets s * 2^SEG_BITS onwards (grown
+     *  copy-on-write by the splitting thread, sharing the segments)
+     */
+    private volatile AtomicReferenceArray <AtomicReferenceArray <Node <K, V>>> dir =
+                     new AtomicReferenceArray <> (INIT_SEGS);
+
+    /** The current hashing level (modulus and split pointer)
+     */
+    private volatile Level level = new Level (4, 0);
+
+    /** The striped locks guarding writes to the bucket chains
+     */
+    private final ReentrantLock [] lock = new ReentrantLock [STRIPES];
+
+    /** The lock held by the (single) thread splitting bucket chains
+     */
+    private final ReentrantLock splitLock = new ReentrantLock ();
+
+    /** The number of keys in the map
+     */
+    private final AtomicInteger keyCount = new AtomicInteger ();
+
+    /** Counter for the number buckets accessed (for performance testing)
+     */
+    private final LongAdder count = new LongAdder ();
+
+    /********************************************************************************
+     * Construct an empty concurrent hash table that uses Linear Hashing.
+     */
+    public ConcurrentLinHashMap ()
+    {
+        for (var i = 0; i < STRIPES; i++) lock [i] = new ReentrantLock ();
+        dir.set (0, new AtomicReferenceArray <> (1 << SEG_BITS));
+    } // constructor
+
+    /********************************************************************************
+     * Construct an empty concurrent hash table (the classes are accepted so that it
+     * can be made the same way as LinHashMap).
+     * @param classK  the class for keys (K)
+     * @param classV  the class for values (V)
+     */
+    public ConcurrentLinHashMap (Class <K> classK, Class <V> classV)
+    {
+        this ();
+    } // constructor
+
+    /********************************************************************************
+     * Given the key, look up the value in the hash table without locking.
+     * @param key  the key used for look up
+     * @return  the value associated with the key, null if none
+     */
+    public V get (Object key)
+    {
+        var h = spread (key.hashCode ());
+        while (true) {
+            var lev = level;
+            for (var n = bucket (address (h, lev)); n != null; n = n.next) {
+                count.increment ();
+                if (n.hash == h && key.equals (n.key)) return n.value;
+            } // for
+            if (level == lev) return null;                           // else raced a split: retry
+        } // while
+    } // get
+
+    /********************************************************************************
+     * Determine whether the hash table contains the given key.
+     * @param key  the key to look for
+     * @return  whether the key is present
+     */
+    public boolean containsKey (Object key)
+    {
+        return get (key) != null;
+    } // containsKey
+
+    /********************************************************************************
+     * Put the key-value pair in the hash table.  Split bucket chains while the load
+     * factor is exceeded.
+     * @param key    the key to insert
+     * @param value  the value to insert
+     * @return  the old/previous value, null if none
+     */
+    public V put (K key, V value)
+    {
+        return putVal (key, value, false);
+    } // put
+
+    /********************************************************************************
+     * Put the key-value pair in the hash table only if the key is absent.
+     * @param key    the key to insert
+     * @param value  the value to insert
+     * @return  the current value, null if the key was absent
+     */
+    public V putIfAbsent (K key, V value)
+    {
+        return putVal (key, value, true);
+    } // putIfAbsent
+
+    /********************************************************************************
+     * Remove the key (and its value) from the hash table.
+     * @param key  the key to remove
+     * @return  the old value, null if none
+     */
+    public V remove (Object key)
+    {
+        return removeVal (key, null);
+    } // remove
+
+    /********************************************************************************
+     * Remove the key only if it is currently mapped to the given value.
+     * @param key    the key to remove
+     * @param value  the expected value
+     * @return  whether the key was removed
+     */
+    public boolean remove (Object key, Object value)
+    {
+        return value != null && removeVal (key, value) != null;
+    } // remove
+
+    /********************************************************************************
+     * Replace the value for the key only if it is currently mapped to oldValue.
+     * @param key       the key
+     * @param oldValue  the expected value
+     * @param newValue  the new value
+     * @return  whether the value was replaced
+     */
+    public boolean replace (K key, V oldValue, V newValue)
+    {
+        Objects.requireNonNull (oldValue);
+        Objects.requireNonNull (newValue);
+        var h = spread (key.hashCode ());
+        var b = lockBucket (h);
+        try {
+            var n = find (bucket (b), key, h);
+            if (n == null || ! n.value.equals (oldValue)) return false;
+            n.value = newValue;
+            return true;
+        } finally {
+            lockFor (b).unlock ();
+        } // try
+    } // replace
+
+    /********************************************************************************
+     * Replace the value for the key only if it is currently mapped to some value.
+     * @param key    the key
+     * @param value  the new value
+     * @return  the old value, null if the key was absent
+     */
+    public V replace (K key, V value)
+    {
+        Objects.requireNonNull (value);
+        var h = spread (key.hashCode ());
+        var b = lockBucket (h);
+        try {
+            var n = find (bucket (b), key, h);
+            if (n == null) return null;
+            var oldV = n.value;
+            n.value = value;
+            return oldV;
+        } finally {
+            lockFor (b).unlock ();
+        } // try
+    } // replace
+
+    /********************************************************************************
+     * Return the number of keys in the hash table.
+     * @return  the size of the hash table
+     */
+    public int size ()
+    {
+        return keyCount.get ();
+    } // size
+
+    /********************************************************************************
+     * Return a set containing all the entries as pairs of keys and values.  The set is
+     * a weakly consistent snapshot (it reflects the chains at the time of the call).
+     * @return  the set view of the map
+     */
+    public Set <Map.Entry <K, V>> entrySet ()
+    {
+        var enSet = new HashSet <Map.Entry <K, V>> ();
+        var lev   = level;
+        for (var i = 0; i < lev.mod1 + lev.isplit; i++) {
+            for (var n = bucket (i); n != null; n = n.next) {
+                enSet.add (new AbstractMap.SimpleImmutableEntry <> (n.key, n.value));
+            } // for
+        } // for
+        return enSet;
+    } // entrySet
+
+    /********************************************************************************
+     * Return the number of buckets accessed so far by look ups (for performance testing).
+     * @return  the count of buckets accessed
+     */
+    public long bucketsAccessed ()
+    {
+        return count.sum ();
+    } // bucketsAccessed
+
+    /********************************************************************************
+     * Print the hash table.
+     */
+    public void print ()
+    {
+        out.println ("ConcurrentLinHashMap");
+        out.println ("-------------------------------------------");
+        var lev = level;
+        for (var i = 0; i < lev.mod1 + lev.isplit; i++) {
+            out.print ("Bucket [ " + i + " ] = [ ");
+            for (var n = bucket (i); n != null; n = n.next) out.print (n.key + " . ");
+            out.println ("]");
+        } // for
+        out.println ("-------------------------------------------");
+    } // print
+
+    /********************************************************************************
+     * Insert or update the key-value pair under the lock of its bucket chain.
+     * @param key           the key to insert
+     * @param value         the value to insert
+     * @param onlyIfAbsent  whether an existing value is kept
+     * @return  the old/previous value, null if none
+     */
+    private V putVal (K key, V value, boolean onlyIfAbsent)
+    {
+        Objects.requireNonNull (value);
+        var h = spread (key.hashCode ());
+        var b = lockBucket (h);
+        try {
+            var head = bucket (b);
+            var n    = find (head, key, h);
+            if (n != null) {
+                var oldV = n.value;
+                if (! onlyIfAbsent) n.value = value;
+                return oldV;
+            } // if
+            setBucket (b, new Node <> (h, key, value, head));
+        } finally {
+            lockFor (b).unlock ();
+        } // try
+
+        if (keyCount.incrementAndGet () > THRESHOLD * buckets ()) split ();
+        return null;
+    } // putVal
+
+    /********************************************************************************
+     * Remove the key (if mapped to expected, when not null) under the lock of its
+     * bucket chain.  The nodes before the removed one are copied, since chains are
+     * immutable for concurrent readers.
+     * @param key       the key to remove
+     * @param expected  the expected value, null for any
+     * @return  the removed value, null if nothing was removed
+     */
+    private V removeVal (Object key, Object expected)
+    {
+        var h = spread (key.hashCode ());
+        var b = lockBucket (h);
+        try {
+            var head = bucket (b);
+            var n    = find (head, key, h);
+            if (n == null || expected != null && ! n.value.equals (expected)) return null;
+            var rest = n.next;
+            for (var p = head; p != n; p = p.next) rest = new Node <> (p.hash, p.key, p.value, rest);
+            setBucket (b, rest);
+            keyCount.decrementAndGet ();
+            return n.value;
+        } finally {
+            lockFor (b).unlock ();
+        } // try
+    } // removeVal
+
+    /********************************************************************************
+     * Split bucket chains while the load factor exceeds THRESHOLD.  Only one thread
+     * splits at a time; other writers carry on rather than wait for it.
+     */
+    private void split ()
+    {
+        if (! splitLock.tryLock ()) return;
+        try {
+            while (keyCount.get () > THRESHOLD * buckets ()) if (! splitOne ()) break;
+        } finally {
+            splitLock.unlock ();
+        } // try
+    } // split
+
+    /********************************************************************************
+     * Split bucket chain 'isplit' by creating a new bucket chain at the end of the
+     * hash table and redistributing the keys according to the high-resolution hash
+     * function.  Increment 'isplit' (and double 'mod1' when the round is complete).
+     * @return  whether a chain was split (false once the directory is full)
+     */
+    private boolean splitOne ()
+    {
+        var lev = level;
+        int i   = lev.isplit, j = i + lev.mod1, mod2 = 2 * lev.mod1;
+        var s   = j >>> SEG_BITS;
+        if (s >= MAX_SEGS) return false;                             // directory is full
+        if (s == dir.length ()) {                                    // publish a larger copy
+            var bigger = new AtomicReferenceArray <AtomicReferenceArray <Node <K, V>>> (Math.min (2 * s, MAX_SEGS));
+            for (var k = 0; k < s; k++) bigger.set (k, dir.get (k));
+            dir = bigger;
+        } // if
+        if (dir.get (s) == null) dir.set (s, new AtomicReferenceArray <> (1 << SEG_BITS));
+
+        ReentrantLock l1 = lockFor (i), l2 = lockFor (j);
+        if (l1 == l2) l1.lock (); else { lockFor (Math.min (i, j)).lock (); lockFor (Math.max (i, j)).lock (); }
+        try {
+            Node <K, V> stay = null, move = null;
+            for (var n = bucket (i); n != null; n = n.next) {
+                if (n.hash % mod2 == i) stay = new Node <> (n.hash, n.key, n.value, stay);
+                else                    move = new Node <> (n.hash, n.key, n.value, move);
+            } // for
+            setBucket (j, move);                                      // 1. publish the new chain
+            level = (i + 1 == lev.mod1) ? new Level (mod2, 0)         // 2. advance the split pointer
+                                        : new Level (lev.mod1, i + 1);
+            setBucket (i, stay);                                      // 3. replace the old chain
+        } finally {
+            l1.unlock ();
+            if (l1 != l2) l2.unlock ();
+        } // try
+        return true;
+    } // splitOne
+
+    /********************************************************************************
+     * Lock the bucket chain that key hash h addresses, retrying if a split moves the
+     * key before the lock is acquired.  Once held, the key's address cannot change.
+     * @param h  the spread hash of the key
+     * @return  the bucket number (whose lock is now held)
+     */
+    private int lockBucket (int h)
+    {
+        while (true) {
+            var b = address (h, level);
+            var l = lockFor (b);
+            l.lock ();
+            if (address (h, level) == b) return b;
+            l.unlock ();
+        } // while
+    } // lockBucket
+
+    /********************************************************************************
+     * Find the node for the key in the chain starting at head.
+     */
+    private Node <K, V> find (Node <K, V> head, Object key, int h)
+    {
+        for (var n = head; n != null; n = n.next) if (n.hash == h && key.equals (n.key)) return n;
+        return null;
+    } // find
+
+    /********************************************************************************
+     * Return the number of bucket chains in the hash table.
+     */
+    private int buckets ()
+    {
+        var lev = level;
+        return lev.mod1 + lev.isplit;
+    } // buckets
+
+    /********************************************************************************
+     * Return the bucket chain that hash h maps to at the given level (low resolution
+     * hash, or high resolution for chains already split in this round).
+     */
+    private static int address (int h, Level lev)
+    {
+        var b = h % lev.mod1;
+        return (b < lev.isplit) ? h % (2 * lev.mod1) : b;
+    } // address
+
+    /********************************************************************************
+     * Spread the hash code (mixing in the high bits) and make it non-negative.
+     */
+    private static int spread (int h)
+    {
+        return (h ^ (h >>> 16)) & 0x7fffffff;
+    } // spread
+
+    /********************************************************************************
+     * Return the head of bucket chain b.
+     */
+    private Node <K, V> bucket (int b)
+    {
+        return dir.get (b >>> SEG_BITS).get (b & ((1 << SEG_BITS) - 1));
+    } // bucket
+
+    /********************************************************************************
+     * Set the head of bucket chain b.
+     */
+    private void setBucket (int b, Node <K, V> head)
+    {
+        dir.get (b >>> SEG_BITS).set (b & ((1 << SEG_BITS) - 1), head);
+    } // setBucket
+
+    /********************************************************************************
+     * Return the striped lock guarding bucket chain b.
+     */
+    private ReentrantLock lockFor (int b)
+    {
+        return lock [b & (STRIPES - 1)];
+    } // lockFor
+
+    /********************************************************************************
+     * The main method used for testing: several writer threads insert disjoint keys
+     * while reader threads look them up concurrently.
+     * @param args  the command-line arguments (args [0] gives number of keys per writer)
+     */
+    public static void main (String [] args)
+        throws InterruptedException
+    {
+        var perThread = (args.length == 1) ? Integer.valueOf (args [0]) : 100000;
+        var writers   = 4;
+        var ht        = new ConcurrentLinHashMap <Integer, Integer> ();
+        var misses    = new AtomicInteger ();
+        var threads   = new ArrayList <Thread> ();
+
+        for (var w = 0; w < writers; w++) {
+            var base = w * perThread;
+            threads.add (new Thread (() -> {
+                for (var i = base; i < base + perThread; i++) ht.put (i, i * 2);
+            }));
+            threads.add (new Thread (() -> {                          // reads keys already written
+                for (var i = base; i < base + perThread; i++) {
+                    var v = ht.get (i);
+                    if (v != null && v != i * 2) misses.incrementAndGet ();
+                } // for
+            }));
+        } // for
+        for (var t : threads) t.start ();
+        for (var t : threads) t.join ();
+
+        var lost = 0;
+        for (var i = 0; i < writers * perThread; i++) if (ht.get (i) == null || ht.get (i) != i * 2) lost++;
+        out.println ("size = " + ht.size () + ", buckets = " + ht.buckets () + ", lost = " + lost +
+                     ", wrong values read = " + misses.get ());
+        for (var i = 0; i < writers * perThread; i += 2) ht.remove (i);
+        out.println ("after removing evens: size = " + ht.size () + ", get (3) = " + ht.get (3) +
+                     ", get (4) = " + ht.get (4));
+    } // main
+
+} // ConcurrentLinHashMap class
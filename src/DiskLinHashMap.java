@@ -0,0 +1,758 @@
+/************************************************************************************
+ * @file DiskLinHashMap.java
+ *
+ * @author  John Miller
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static java.lang.System.out;
+
+/************************************************************************************
+ * This class provides disk-resident hash maps (from keys to tuples) that use the
+ * Linear Hashing algorithm, so an index may be far larger than the heap.  Buckets are
+ * fixed-size pages read and written through the shared BufferPool:
+ *
+ *   file          page 0: the directory (magic, version, page size, mod1, isplit,
+ *                 key count, bytes stored, overflow page count, free list head);
+ *                 page 1 + i: the home bucket of chain i
+ *   file.ovf      overflow buckets, linked from their chain's previous page (freed
+ *                 overflow pages are linked into a free list and reused)
+ *
+ * A bucket page holds its entry count, the bytes used and the next (overflow) page,
+ * followed by its entries: the key's hash code, the lengths of the key and value and
+ * their TupleCodec encodings.  Keys are compared by their encodings (after their hash
+ * codes), so a look up reads about one page and decodes only the value found.  When
+ * the bytes stored exceed THRESHOLD of the home pages' capacity, chain 'isplit' is
+ * split: its entries are redistributed between its home page and the new home page
+ * at the end of the file, so a split without overflow writes just those two pages
+ * (and the directory), and hot pages stay cached in the pool.  Remove merges the last
+ * chain back into its buddy when the load drops below LOW_THRESHOLD.  The key count is
+ * saved in the directory on flush and close.  Like LinHashMap, it is not safe for
+ * concurrent updates, but concurrent look ups are (each thread copies pages into its
+ * own buffer).
+ *
+ * #usage try (var map = new DiskLinHashMap (new File ("store/rental.lh"))) { map.put (key, tup); }
+ */
+public class DiskLinHashMap
+       extends AbstractMap <KeyType, Comparable []>
+       implements Closeable
+{
+    /** The magic number identifying disk linear hash files ("DLH1").
+     */
+    private static final int MAGIC = 0x444C4831;
+
+    /** The version of the file format.
+     */
+    private static final int VERSION = 1;
+
+    /** The size of a page (bucket) in bytes.
+     */
+    public static final int PAGE_SIZE = BufferPool.PAGE_SIZE;
+
+    /** The size of a bucket page header: entry count, bytes used and next page.
+     */
+    private static final int HEADER = 8;
+
+    /** The size of an entry header: hash code, key length and value length.
+     */
+    private static final int ENTRY_HEADER = 8;
+
+    /** The page link for "no next page".
+     */
+    private static final int NONE = -1;
+
+    /** The initial number of bucket chains (the table never contracts below it).
+     */
+    private static final int INIT_CHAINS = 4;
+
+    /** The bounds on the load factor (bytes stored / capacity of the home pages).
+     */
+    private static final double THRESHOLD = 0.8, LOW_THRESHOLD = 0.3;
+
+    /** The metrics shared by all disk linear hash maps.
+     */
+    private static final Metrics.Counter PAGE_READS  = Metrics.counter ("disklinhash.pageReads");
+    private static final Metrics.Counter PAGE_WRITES = Metrics.counter ("disklinhash.pageWrites");
+    private static final Metrics.Counter SPLITS      = Metrics.counter ("disklinhash.splits");
+
+    /** The home file (directory and home pages) and the overflow file.
+     */
+    private final File file;
+    private final FileChannel home, overflow;
+
+    /** The buffer pool the pages are read through and their ids for the files.
+     */
+    private final BufferPool pool = BufferPool.shared ();
+    private final int homeId, overflowId;
+
+    /** The state kept in the directory page.
+     */
+    private int  mod1;
+    private int  isplit;
+    private int  keyCount;
+    private long bytes;
+    private int  nOverflow;
+    private int  freeHead;
+
+    /** The buffer each thread reads pages into (for look ups) and the buffer updates
+     *  work in (there is only one updating thread).
+     */
+    private final ThreadLocal <ByteBuffer> readBuf = ThreadLocal.withInitial (() -> ByteBuffer.allocate (PAGE_SIZE));
+    private final ByteBuffer writeBuf = ByteBuffer.allocate (PAGE_SIZE);
+
+    /********************************************************************************
+     * Open the disk linear hash map stored in the given file, creating it (empty) if
+     * the file does not exist or is empty.
+     * @param _file  the home file (the overflow file is _file + ".ovf")
+     * @throws UncheckedIOException  if the files cannot be opened or are not valid
+     */
+    public DiskLinHashMap (File _file)
+    {
+        file = _file;
+        try {
+            var parent = file.getAbsoluteFile ().getParentFile ();
+            if (parent != null) parent.mkdirs ();
+            home     = FileChannel.open (file.toPath (), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                         StandardOpenOption.WRITE);
+            overflow = FileChannel.open (new File (file.getPath () + ".ovf").toPath (), StandardOpenOption.CREATE,
+                                         StandardOpenOption.READ, StandardOpenOption.WRITE);
+            homeId     = pool.register (home);
+            overflowId = pool.register (overflow);
+            if (home.size () == 0) reset ();
+            else readDirectory ();
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("DiskLinHashMap: unable to open " + file, ex);
+        } // try
+    } // constructor
+
+    /********************************************************************************
+     * Make a disk linear hash map in a temporary file in the given directory (its
+     * owner removes the files by calling delete).
+     * @param dir     the directory for the files
+     * @param prefix  the prefix of the file name
+     * @return  the new (empty) map
+     * @throws UncheckedIOException  if the file cannot be created
+     */
+    public static DiskLinHashMap temporary (File dir, String prefix)
+    {
+        try {
+            dir.mkdirs ();
+            return new DiskLinHashMap (File.createTempFile (prefix, ".lh", dir));
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("temporary: unable to create an index file in " + dir, ex);
+        } // try
+    } // temporary
+
+    //----------------------------------------------------------------------------------
+    // Map operations
+    //----------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Return the number of keys in the map.
+     * @return  the number of key-value pairs
+     */
+    public int size ()
+    {
+        return keyCount;
+    } // size
+
+    /********************************************************************************
+     * Given the key, look up the value (a copy decoded from its page).
+     * @param key  the key used for look up
+     * @return  the value associated with the key, null if none
+     */
+    public Comparable [] get (Object key)
+    {
+        if (! (key instanceof KeyType k)) return null;
+        var hk  = k.hashCode ();
+        var kb  = encodeKey (k);
+        var pg  = readBuf.get ();
+        var ref = homeRef (chain (hk));
+        while (ref != NONE) {
+            read (ref, pg);
+            var off = find (pg, hk, kb);
+            if (off >= 0) return value (pg, off);
+            ref = next (pg);
+        } // while
+        return null;
+    } // get
+
+    /********************************************************************************
+     * Determine whether the key is in the map.
+     * @param key  the key to look for
+     * @return  whether it is present
+     */
+    public boolean containsKey (Object key)
+    {
+        return get (key) != null;
+    } // containsKey
+
+    /********************************************************************************
+     * Put the key-value pair in the map, replacing the value of a key already present.
+     * The chain is walked once, looking for the key and for the first page with room
+     * for the entry; a replaced entry stays on its page if it still fits.  Split the
+     * 'isplit' chain when the load factor is exceeded.
+     * @param key    the key to insert
+     * @param value  the value to insert (a tuple)
+     * @return  the old/previous value, null if none
+     * @throws IllegalArgumentException  if the entry does not fit in a page
+     */
+    public Comparable [] put (KeyType key, Comparable [] value)
+    {
+        var hk   = key.hashCode ();
+        var kb   = encodeKey (key);
+        var vb   = TupleCodec.encode (value);
+        var size = ENTRY_HEADER + kb.length + vb.length;
+        if (size > PAGE_SIZE - HEADER) throw new IllegalArgumentException ("put: entry too large for a page: " + key);
+
+        Comparable [] old = null;
+        var pg   = writeBuf;
+        var room = NONE;                                                     // the first page with room
+        var last = NONE;                                                     // the page in pg
+        for (var ref = homeRef (chain (hk)); ref != NONE; ref = next (pg)) {
+            read (ref, pg);
+            last    = ref;
+            var off = find (pg, hk, kb);
+            if (off >= 0) {                                                  // take out the old entry
+                old = value (pg, off);
+                keyCount--;
+                bytes  -= entrySize (pg, off);
+                removeAt (pg, off);
+                if (PAGE_SIZE - used (pg) >= size) { room = ref; break; }    // replace it in place
+                write (ref, pg);
+                if (room != NONE) break;
+            } else if (room == NONE && PAGE_SIZE - used (pg) >= size) {
+                room = ref;
+            } // if
+        } // for
+
+        if (room == NONE) {                                                  // add a page at the end of the chain
+            room = allocate ();
+            pg.putInt (4, room);
+            write (last, pg);
+            clearPage (pg);
+        } else if (room != last) {
+            read (room, pg);
+        } // if
+        append (pg, hk, kb, vb);
+        write (room, pg);
+
+        keyCount++;
+        bytes += size;
+        if (loadFactor () > THRESHOLD) split ();
+        return old;
+    } // put
+
+    /********************************************************************************
+     * Remove the key (and its value) from the map.  Merge the last chain back when the
+     * load factor drops below LOW_THRESHOLD.
+     * @param key  the key to remove
+     * @return  the value it had, null if none
+     */
+    public Comparable [] remove (Object key)
+    {
+        if (! (key instanceof KeyType k)) return null;
+        return remove (k.hashCode (), encodeKey (k));
+    } // remove
+
+    /********************************************************************************
+     * Remove all the keys, truncating the files.
+     */
+    public void clear ()
+    {
+        try {
+            reset ();
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("clear: unable to truncate " + file, ex);
+        } // try
+    } // clear
+
+    /********************************************************************************
+     * Return a set containing all the entries as pairs of keys and values (read from
+     * every page).
+     * @return  the set view of the map
+     */
+    public Set <Map.Entry <KeyType, Comparable []>> entrySet ()
+    {
+        var enSet = new LinkedHashSet <Map.Entry <KeyType, Comparable []>> ();
+        var pg    = ByteBuffer.allocate (PAGE_SIZE);
+        for (var i = 0; i < mod1 + isplit; i++) {
+            for (var ref = homeRef (i); ref != NONE; ref = next (pg)) {
+                read (ref, pg);
+                var off = HEADER;
+                for (var e = 0; e < count (pg); e++) {
+                    enSet.add (new AbstractMap.SimpleEntry <> (key (pg, off), value (pg, off)));
+                    off += entrySize (pg, off);
+                } // for
+            } // for
+        } // for
+        return enSet;
+    } // entrySet
+
+    /********************************************************************************
+     * Save the directory and force the files to disk.
+     */
+    public void flush ()
+    {
+        try {
+            writeDirectory ();
+            pool.flush (homeId);
+            pool.flush (overflowId);
+            home.force (false);
+            overflow.force (false);
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("flush: unable to write " + file, ex);
+        } // try
+    } // flush
+
+    /********************************************************************************
+     * Save the directory and close the files.
+     */
+    public void close ()
+    {
+        try {
+            writeDirectory ();
+            pool.unregister (homeId, true);
+            pool.unregister (overflowId, true);
+            home.close ();
+            overflow.close ();
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("close: unable to write " + file, ex);
+        } // try
+    } // close
+
+    /********************************************************************************
+     * Close the map without saving it and delete its files (e.g., a temporary index).
+     */
+    public void delete ()
+    {
+        pool.unregister (homeId, false);
+        pool.unregister (overflowId, false);
+        try {
+            home.close ();
+            overflow.close ();
+        } catch (IOException ex) {
+            out.println ("delete: IO Exception on close");
+        } // try
+        file.delete ();
+        new File (file.getPath () + ".ovf").delete ();
+    } // delete
+
+    //----------------------------------------------------------------------------------
+    // Linear hashing
+    //----------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Remove the entry with the given key (if any) from its chain, dropping an emptied
+     * overflow page from the chain, and merge chains when the load factor gets low.
+     * @param hk  the key's hash code
+     * @param kb  its encoding
+     * @return  the value it had, null if none
+     */
+    private Comparable [] remove (int hk, byte [] kb)
+    {
+        var pg   = writeBuf;
+        var prev = NONE;
+        for (var ref = homeRef (chain (hk)); ref != NONE; ref = next (pg)) {
+            read (ref, pg);
+            var off = find (pg, hk, kb);
+            if (off < 0) { prev = ref; continue; }
+
+            var old  = value (pg, off);
+            var size = entrySize (pg, off);
+            removeAt (pg, off);
+            if (count (pg) == 0 && prev != NONE) {                           // unlink and free the page
+                var nref = next (pg);
+                free (ref, pg);
+                read (prev, pg);
+                pg.putInt (4, nref);
+                write (prev, pg);
+            } else {
+                write (ref, pg);
+            } // if
+
+            keyCount--;
+            bytes -= size;
+            if (loadFactor () < LOW_THRESHOLD && mod1 + isplit > INIT_CHAINS) merge ();
+            return old;
+        } // for
+        return null;
+    } // remove
+
+    /********************************************************************************
+     * Split chain 'isplit': redistribute its entries between it and a new chain at the
+     * end of the table according to the high resolution hash function.  Increment
+     * 'isplit'; if the split phase is complete, reset 'isplit' and double mod1.
+     */
+    private void split ()
+    {
+        Metrics.trace (Metrics.Level.DEBUG, () -> "DiskLinHashMap.split: chain " + isplit);
+        SPLITS.inc ();
+        var entries = takeChain (isplit);
+        var stay    = new ArrayList <byte []> ();
+        var move    = new ArrayList <byte []> ();
+        for (var e : entries) {
+            var hk = ByteBuffer.wrap (e).getInt (0);
+            (Math.floorMod (mix (hk), 2 * mod1) == isplit ? stay : move).add (e);
+        } // for
+        writeChain (isplit, stay);
+        writeChain (mod1 + isplit, move);
+
+        if (++isplit == mod1) {
+            isplit = 0;
+            mod1  *= 2;
+        } // if
+        writeDirectory ();
+    } // split
+
+    /********************************************************************************
+     * Merge the last chain back into the chain it was split from, truncating its home
+     * page from the file.
+     */
+    private void merge ()
+    {
+        if (isplit == 0) {
+            mod1  /= 2;
+            isplit = mod1;
+        } // if
+        isplit--;
+        var entries = takeChain (isplit);
+        entries.addAll (takeChain (mod1 + isplit));
+        writeChain (isplit, entries);
+        try {
+            pool.discard (homeId, 1 + mod1 + isplit);
+            home.truncate ((long) (1 + mod1 + isplit) * PAGE_SIZE);
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("merge: unable to truncate " + file, ex);
+        } // try
+        writeDirectory ();
+    } // merge
+
+    /********************************************************************************
+     * Read the entries of chain i (as raw bytes), freeing its overflow pages.
+     * @param i  the chain
+     * @return  its entries
+     */
+    private List <byte []> takeChain (int i)
+    {
+        var entries = new ArrayList <byte []> ();
+        var pg      = ByteBuffer.allocate (PAGE_SIZE);
+        var ref     = homeRef (i);
+        while (ref != NONE) {
+            read (ref, pg);
+            var off = HEADER;
+            for (var e = 0; e < count (pg); e++) {
+                var size = entrySize (pg, off);
+                entries.add (Arrays.copyOfRange (pg.array (), off, off + size));
+                off += size;
+            } // for
+            var nref = next (pg);
+            if (ref != homeRef (i)) free (ref, pg);
+            ref = nref;
+        } // while
+        return entries;
+    } // takeChain
+
+    /********************************************************************************
+     * Write the entries (raw bytes) as chain i: its home page followed by as many
+     * overflow pages as needed.
+     * @param i        the chain
+     * @param entries  its entries
+     */
+    private void writeChain (int i, List <byte []> entries)
+    {
+        var pg  = ByteBuffer.allocate (PAGE_SIZE);
+        var ref = homeRef (i);
+        clearPage (pg);
+        for (var e : entries) {
+            if (PAGE_SIZE - used (pg) < e.length) {
+                var nref = allocate ();
+                pg.putInt (4, nref);
+                write (ref, pg);
+                ref = nref;
+                clearPage (pg);
+            } // if
+            pg.put (used (pg), e);
+            pg.putShort (0, (short) (count (pg) + 1));
+            pg.putShort (2, (short) (used (pg) + e.length));
+        } // for
+        write (ref, pg);
+    } // writeChain
+
+    /********************************************************************************
+     * Return the load factor: the bytes stored over the capacity of the home pages.
+     */
+    private double loadFactor ()
+    {
+        return bytes / (double) ((long) (mod1 + isplit) * (PAGE_SIZE - HEADER));
+    } // loadFactor
+
+    /********************************************************************************
+     * Return the chain for a key with the given hash code (by the high resolution
+     * hash function if the low resolution chain has already been split).
+     */
+    private int chain (int hk)
+    {
+        var i = Math.floorMod (mix (hk), mod1);
+        return (i < isplit) ? Math.floorMod (mix (hk), 2 * mod1) : i;
+    } // chain
+
+    /********************************************************************************
+     * Mix the bits of a hash code (the moduli are powers of two).
+     */
+    private static int mix (int hk)
+    {
+        var x = hk * 0x9E3779B9;
+        return x ^ (x >>> 16);
+    } // mix
+
+    //----------------------------------------------------------------------------------
+    // Pages
+    //----------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Page references: home page i + 1 of the home file is referred to as -(i + 2)
+     * (so NONE = -1 is not a page), overflow page p as p.
+     */
+    private static int homeRef (int i)                { return -(i + 2); }
+
+    private static int count (ByteBuffer pg)          { return pg.getShort (0); }
+    private static int used (ByteBuffer pg)           { return pg.getShort (2); }
+    private static int next (ByteBuffer pg)           { return pg.getInt (4); }
+
+    private static int entrySize (ByteBuffer pg, int off)
+    {
+        return ENTRY_HEADER + pg.getShort (off + 4) + pg.getShort (off + 6);
+    } // entrySize
+
+    private static void clearPage (ByteBuffer pg)
+    {
+        Arrays.fill (pg.array (), (byte) 0);
+        pg.putShort (2, (short) HEADER);
+        pg.putInt (4, NONE);
+    } // clearPage
+
+    /********************************************************************************
+     * Return the offset of the entry with the given hash code and key encoding in the
+     * page, -1 if none.
+     */
+    private static int find (ByteBuffer pg, int hk, byte [] kb)
+    {
+        var arr = pg.array ();
+        var off = HEADER;
+        for (var e = 0; e < count (pg); e++) {
+            var klen = pg.getShort (off + 4);
+            if (pg.getInt (off) == hk && klen == kb.length
+                && Arrays.equals (arr, off + ENTRY_HEADER, off + ENTRY_HEADER + klen, kb, 0, klen)) return off;
+            off += entrySize (pg, off);
+        } // for
+        return -1;
+    } // find
+
+    /********************************************************************************
+     * Append an entry to the page (which must have room for it).
+     */
+    private static void append (ByteBuffer pg, int hk, byte [] kb, byte [] vb)
+    {
+        var off = used (pg);
+        pg.putInt (off, hk).putShort (off + 4, (short) kb.length).putShort (off + 6, (short) vb.length);
+        pg.put (off + ENTRY_HEADER, kb).put (off + ENTRY_HEADER + kb.length, vb);
+        pg.putShort (0, (short) (count (pg) + 1));
+        pg.putShort (2, (short) (off + ENTRY_HEADER + kb.length + vb.length));
+    } // append
+
+    /********************************************************************************
+     * Remove the entry at the given offset, shifting the following entries down.
+     */
+    private static void removeAt (ByteBuffer pg, int off)
+    {
+        var size = entrySize (pg, off);
+        var end  = used (pg);
+        System.arraycopy (pg.array (), off + size, pg.array (), off, end - off - size);
+        Arrays.fill (pg.array (), end - size, end, (byte) 0);
+        pg.putShort (0, (short) (count (pg) - 1));
+        pg.putShort (2, (short) (end - size));
+    } // removeAt
+
+    /********************************************************************************
+     * Decode the key of the entry at the given offset.
+     */
+    private static KeyType key (ByteBuffer pg, int off)
+    {
+        return KeyType.of (TupleCodec.decode (pg.duplicate ().position (off + ENTRY_HEADER)));
+    } // key
+
+    /********************************************************************************
+     * Decode the value of the entry at the given offset.
+     */
+    private static Comparable [] value (ByteBuffer pg, int off)
+    {
+        return TupleCodec.decode (pg.duplicate ().position (off + ENTRY_HEADER + pg.getShort (off + 4)));
+    } // value
+
+    /********************************************************************************
+     * Encode a key (its values, as a tuple).
+     */
+    private static byte [] encodeKey (KeyType k)
+    {
+        var vals = new Comparable [k.arity ()];
+        for (var j = 0; j < vals.length; j++) vals [j] = k.component (j);
+        return TupleCodec.encode (vals);
+    } // encodeKey
+
+    /********************************************************************************
+     * Allocate an overflow page, reusing a free one if possible.
+     * @return  the reference to the (cleared) page
+     */
+    private int allocate ()
+    {
+        if (freeHead == NONE) return nOverflow++;
+        var ref = freeHead;
+        var pg  = readBuf.get ();                                            // the caller may be using writeBuf
+        read (ref, pg);
+        freeHead = next (pg);
+        return ref;
+    } // allocate
+
+    /********************************************************************************
+     * Free an overflow page, linking it into the free list.
+     * @param ref  the reference to the page
+     * @param pg   a buffer to use
+     */
+    private void free (int ref, ByteBuffer pg)
+    {
+        clearPage (pg);
+        pg.putInt (4, freeHead);
+        write (ref, pg);
+        freeHead = ref;
+    } // free
+
+    /********************************************************************************
+     * Read (a copy of) the referenced page into the buffer through the buffer pool
+     * (a page past the end of its file reads as an empty page).
+     * @param ref  the reference to the page
+     * @param pg   the buffer to read into
+     */
+    private void read (int ref, ByteBuffer pg)
+    {
+        var f = pin (ref, false);
+        System.arraycopy (f.buffer ().array (), 0, pg.array (), 0, PAGE_SIZE);
+        pool.unpin (f, false);
+        pg.clear ();
+        if (ref != -1 && used (pg) == 0) clearPage (pg);
+        PAGE_READS.inc ();
+    } // read
+
+    /********************************************************************************
+     * Write the buffer to the referenced page (in the buffer pool, which writes it
+     * back to the file when it is evicted or flushed).
+     * @param ref  the reference to the page
+     * @param pg   the page contents
+     */
+    private void write (int ref, ByteBuffer pg)
+    {
+        var f = pin (ref, true);                                             // overwritten, so not read
+        System.arraycopy (pg.array (), 0, f.buffer ().array (), 0, PAGE_SIZE);
+        pool.unpin (f, true);
+        PAGE_WRITES.inc ();
+    } // write
+
+    /********************************************************************************
+     * Pin the referenced page in the buffer pool.
+     * @param ref    the reference to the page
+     * @param fresh  whether the page is about to be overwritten (so need not be read)
+     */
+    private BufferPool.Frame pin (int ref, boolean fresh)
+    {
+        var fid = (ref < 0) ? homeId : overflowId;
+        var p   = (ref < 0) ? -ref - 1 : ref;
+        return fresh ? pool.pinNew (fid, p) : pool.pin (fid, p);
+    } // pin
+
+    //----------------------------------------------------------------------------------
+    // Directory
+    //----------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Reset the map to empty: truncate the files and write the directory and the
+     * initial (empty) home pages.
+     */
+    private void reset ()
+        throws IOException
+    {
+        pool.discard (homeId, 0);
+        pool.discard (overflowId, 0);
+        home.truncate (0);
+        overflow.truncate (0);
+        mod1      = INIT_CHAINS;
+        isplit    = 0;
+        keyCount  = 0;
+        bytes     = 0;
+        nOverflow = 0;
+        freeHead  = NONE;
+        var pg = ByteBuffer.allocate (PAGE_SIZE);
+        clearPage (pg);
+        for (var i = 0; i < mod1; i++) write (homeRef (i), pg);
+        writeDirectory ();
+    } // reset
+
+    /********************************************************************************
+     * Write the directory page.
+     */
+    private void writeDirectory ()
+    {
+        var pg = ByteBuffer.allocate (PAGE_SIZE);
+        pg.putInt (MAGIC).putInt (VERSION).putInt (PAGE_SIZE).putInt (mod1).putInt (isplit)
+          .putInt (keyCount).putLong (bytes).putInt (nOverflow).putInt (freeHead);
+        write (-1, pg);                                                      // page 0 of the home file
+    } // writeDirectory
+
+    /********************************************************************************
+     * Read the directory page.
+     */
+    private void readDirectory ()
+        throws IOException
+    {
+        var pg = ByteBuffer.allocate (PAGE_SIZE);
+        read (-1, pg);
+        if (pg.getInt () != MAGIC)     throw new IOException ("DiskLinHashMap: not a linear hash file: " + file);
+        if (pg.getInt () != VERSION)   throw new IOException ("DiskLinHashMap: unsupported version in " + file);
+        if (pg.getInt () != PAGE_SIZE) throw new IOException ("DiskLinHashMap: unsupported page size in " + file);
+        mod1      = pg.getInt ();
+        isplit    = pg.getInt ();
+        keyCount  = pg.getInt ();
+        bytes     = pg.getLong ();
+        nOverflow = pg.getInt ();
+        freeHead  = pg.getInt ();
+    } // readDirectory
+
+    /********************************************************************************
+     * The main method used for testing: fill a map, reopen it and look the keys up.
+     * @param args  the command-line arguments (args [0] gives number of keys to insert)
+     */
+    public static void main (String [] args)
+    {
+        var n    = (args.length == 1) ? Integer.parseInt (args [0]) : 100_000;
+        var file = new File ("store" + File.separator + "test.lh");
+        try (var map = new DiskLinHashMap (file)) {
+            map.clear ();
+            for (var i = 0; i < n; i++) map.put (KeyType.of (i), new Comparable [] { i, "film" + i, 0.99 + i % 3 });
+        } // try
+
+        Metrics.reset ();
+        try (var map = new DiskLinHashMap (file)) {
+            var found = 0;
+            for (var i = 0; i < n; i++) if (map.get (KeyType.of (i)) != null) found++;
+            out.println ("size = " + map.size () + ", found = " + found + ", pages read per look up = "
+                       + Metrics.counter ("disklinhash.pageReads").get () / (double) n);
+        } // try
+        file.delete ();
+        new File (file.getPath () + ".ovf").delete ();
+    } // main
+
+} // DiskLinHashMap class
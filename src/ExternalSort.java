@@ -0,0 +1,157 @@
+/************************************************************************************
+ * @file ExternalSort.java
+ *
+ * @author  John Miller
+ */
+
+import java.io.Closeable;
+import java.util.*;
+
+import static java.lang.System.out;
+
+/************************************************************************************
+ * This class provides an external merge sort of tuples.  The input is read in runs of
+ * at most budget tuples; each run is sorted in memory and (when there is more than one
+ * run) spilled to a temporary file through a SpillBuffer.  The runs are then merged
+ * through a priority queue holding the head of each run, so at most budget tuples are
+ * held in memory while sorting and one tuple per run while merging.  The sort is
+ * stable (ties keep input order).
+ *
+ * #usage try (var sorted = new ExternalSort (tuples, order, 100_000)) { while (sorted.hasNext ()) ... }
+ */
+public class ExternalSort
+       implements Iterator <Comparable []>, Closeable
+{
+    /** The sorted runs (spilled when there is more than one).
+     */
+    private final List <SpillBuffer> runs = new ArrayList <> ();
+
+    /** The order on the tuples.
+     */
+    private final Comparator <Comparable []> order;
+
+    /** The heads of the runs not yet exhausted, least first: { run number, tuple }
+     *  pairs, ordered by tuple and then by run number (for stability).
+     */
+    private final PriorityQueue <Object []> heads;
+
+    /** The iterators over the runs.
+     */
+    private final List <Iterator <Comparable []>> cursor = new ArrayList <> ();
+
+    /********************************************************************************
+     * Sort the input tuples into runs and prepare to merge them.
+     * @param input   the tuples to sort
+     * @param _order  the order on the tuples
+     * @param budget  the maximum number of tuples held in memory at once
+     */
+    public ExternalSort (Iterable <Comparable []> input, Comparator <Comparable []> _order, int budget)
+    {
+        if (budget < 1) throw new IllegalArgumentException ("ExternalSort: budget must be positive");
+        order = _order;
+        heads = new PriorityQueue <> ((a, b) -> {
+            var c = order.compare ((Comparable []) a [1], (Comparable []) b [1]);
+            return (c != 0) ? c : Integer.compare ((Integer) a [0], (Integer) b [0]);
+        });
+
+        try {
+            var buf = new ArrayList <Comparable []> (Math.min (budget, 1024));
+            for (var tup : input) {
+                buf.add (tup);
+                if (buf.size () == budget) { addRun (buf); buf.clear (); }
+            } // for
+            if (! buf.isEmpty ()) addRun (buf);
+
+            for (var r = 0; r < runs.size (); r++) {
+                var it = runs.get (r).iterator ();
+                cursor.add (it);
+                if (it.hasNext ()) heads.add (new Object [] { r, it.next () });
+            } // for
+        } catch (RuntimeException ex) {
+            close ();
+            throw ex;
+        } // try
+    } // constructor
+
+    /********************************************************************************
+     * Return whether there are more tuples.
+     * @return  whether the merge is not exhausted
+     */
+    public boolean hasNext ()
+    {
+        return ! heads.isEmpty ();
+    } // hasNext
+
+    /********************************************************************************
+     * Return the next tuple in order.
+     * @return  the least remaining tuple
+     */
+    public Comparable [] next ()
+    {
+        var head = heads.poll ();
+        if (head == null) throw new NoSuchElementException ();
+        var r  = (Integer) head [0];
+        var it = cursor.get (r);
+        if (it.hasNext ()) heads.add (new Object [] { r, it.next () });
+        return (Comparable []) head [1];
+    } // next
+
+    /********************************************************************************
+     * Return the number of sorted runs the input was split into.
+     * @return  the number of runs
+     */
+    public int runs ()
+    {
+        return runs.size ();
+    } // runs
+
+    /********************************************************************************
+     * Release the runs, deleting their spill files.
+     */
+    public void close ()
+    {
+        for (var run : runs) run.close ();
+        runs.clear ();
+        heads.clear ();
+    } // close
+
+    /********************************************************************************
+     * Sort a run and add it to the runs.  The first run stays in memory until a second
+     * one is needed, at which point both are spilled.
+     * @param buf  the tuples of the run
+     */
+    private void addRun (List <Comparable []> buf)
+    {
+        buf.sort (order);
+        var run = new SpillBuffer ("sort_" + runs.size () + "_");
+        if (! runs.isEmpty ()) {
+            runs.get (0).spill ();
+            run.spill ();
+        } // if
+        for (var tup : buf) run.add (tup);
+        runs.add (run);
+    } // addRun
+
+    /********************************************************************************
+     * The main method used for testing: sort random tuples with a small budget and
+     * check the order.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+    {
+        var rand  = new Random (0);
+        var input = new ArrayList <Comparable []> ();
+        for (var i = 0; i < 50_000; i++) input.add (new Comparable [] { rand.nextInt (1000), i });
+
+        Comparator <Comparable []> byFirst = Comparator.comparing (a -> (Integer) a [0]);
+        try (var sorted = new ExternalSort (input, byFirst, 4096)) {
+            var expect = new ArrayList <> (input);
+            expect.sort (byFirst);
+            var i = 0;
+            var ok = true;
+            while (sorted.hasNext ()) ok &= Arrays.equals (sorted.next (), expect.get (i++));
+            out.println ("sorted " + i + " tuples in " + sorted.runs () + " runs, order ok = " + ok);
+        } // try
+    } // main
+
+} // ExternalSort class
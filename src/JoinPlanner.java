@@ -0,0 +1,396 @@
+/************************************************************************************
+ * @file JoinPlanner.java
+ *
+ * @author  John Miller
+ */
+
+import java.util.*;
+
+import static java.lang.System.out;
+
+/************************************************************************************
+ * This class provides cost-based planning of multi-way equi-joins.  Given a set of
+ * tables and equi-join predicates between them ("t1.attr1 == t2.attr2", where t1 and
+ * t2 are table names or aliases), it
+ * estimates the cardinality of every connected subset of the tables as
+ *
+ *   |R join S| = |R| * |S| / max (V(R, a), V(S, b))      (V = number of distinct values)
+ *
+ * and picks the join order (bushy trees allowed, cross products avoided) minimizing the
+ * sum of the inputs and outputs of the joins by dynamic programming over the subsets.
+ * Each join is executed as a hash join that builds on its smaller (estimated) input; the
+ * plan runs as a pipeline of operators (see Operator), so probe sides stream through
+ * the joins and only the build sides are materialized.
+ * The result has the attributes of the tables in the order the tables were given
+ * (clashing names get a numeric suffix as for the other joins), whatever the join order.
+ *
+ * #usage new JoinPlanner (film, inventory, rental)
+ *            .where ("film.film_id == inventory.film_id")
+ *            .where ("rental.inventory_id == inventory.inventory_id").execute ()
+ */
+public class JoinPlanner
+{
+    /** The tables to be joined (in the order given) and the names they are referred
+     *  to by in the predicates (their aliases).
+     */
+    private final List <Table>  table = new ArrayList <> ();
+    private final List <String> alias = new ArrayList <> ();
+
+    /** The equi-join predicates: (table, column) pairs {t1, c1, t2, c2}.
+     */
+    private final List <int []> pred = new ArrayList <> ();
+
+    /** The number of distinct values of the join columns (by "table.column").
+     */
+    private final Map <String, Integer> distinct = new HashMap <> ();
+
+    /** The best plan found for each subset of the tables (a bit mask), null if the
+     *  subset is not connected by the predicates.
+     */
+    private Plan [] best;
+
+    /********************************************************************************
+     * A plan for joining a subset of the tables: either a table scan (a leaf) or a
+     * hash join of two sub-plans that builds on the smaller one.
+     */
+    private static class Plan
+    {
+        final int    set;                          // the tables joined (bit mask)
+        final Plan   left, right;                  // the inputs (null for a leaf)
+        final double card;                         // the estimated number of rows
+        final double cost;                         // the estimated cost
+
+        Plan (int _set, Plan _left, Plan _right, double _card, double _cost)
+        {
+            set = _set; left = _left; right = _right; card = _card; cost = _cost;
+        } // constructor
+
+    } // Plan class
+
+    /********************************************************************************
+     * The operator producing the rows of (part of) a plan, along with the table each
+     * column block comes from: the columns of table order [k] start at position base [k].
+     */
+    private static class Rel
+    {
+        final Operator op;
+        final int [] order;
+        final int [] base;
+
+        Rel (Operator _op, int [] _order, int [] _base)
+        {
+            op = _op; order = _order; base = _base;
+        } // constructor
+
+        int pos (int t, int c)
+        {
+            for (var k = 0; k < order.length; k++) if (order [k] == t) return base [k] + c;
+            throw new IllegalStateException ("pos: table " + t + " is not in the relation");
+        } // pos
+
+    } // Rel class
+
+    /********************************************************************************
+     * Construct a join planner for the given tables, each referred to by its name
+     * (so the names must be distinct).
+     * @param _table  the tables to be joined
+     */
+    public JoinPlanner (Table ... _table)
+    {
+        for (var t : _table) from (t.getName (), t);
+    } // constructor
+
+    /********************************************************************************
+     * Add a table to be joined, referred to in the predicates by the given alias
+     * (as in "from film f").
+     * @param _alias  the alias of the table
+     * @param _table  the table to be joined
+     * @return  this planner
+     */
+    public JoinPlanner from (String _alias, Table _table)
+    {
+        if (alias.contains (_alias)) throw new IllegalArgumentException ("from: duplicate alias " + _alias);
+        if (table.size () == 16) throw new IllegalArgumentException ("from: at most 16 tables may be joined");
+        table.add (_table);
+        alias.add (_alias);
+        best = null;
+        return this;
+    } // from
+
+    /********************************************************************************
+     * Add an equi-join predicate between two of the tables (referred to by name or
+     * alias), e.g., "rental.inventory_id == inventory.inventory_id".
+     * @param condition  the predicate ("table1.attr1 == table2.attr2")
+     * @return  this planner
+     */
+    public JoinPlanner where (String condition)
+    {
+        var token = condition.trim ().split ("\\s+");
+        if (token.length != 3 || ! token [1].equals ("==")) {
+            throw new IllegalArgumentException ("where: expected \"table1.attr1 == table2.attr2\", got " + condition);
+        } // if
+        var lhs = resolve (token [0]);
+        var rhs = resolve (token [2]);
+        if (lhs [0] == rhs [0]) throw new IllegalArgumentException ("where: both sides refer to the same table: " + condition);
+        pred.add (new int [] { lhs [0], lhs [1], rhs [0], rhs [1] });
+        best = null;
+        return this;
+    } // where
+
+    /********************************************************************************
+     * Execute the join using the cheapest plan.
+     * @return  the joined table
+     */
+    public Table execute ()
+    {
+        var plan   = plan ();
+        var rowsIn = 0L;
+        for (var t : table) rowsIn += t.records ().size ();
+        var op     = Metrics.operator ("planned_join", rowsIn, () -> "join " + explain (plan));
+        var rel    = run (plan);
+
+        // Arrange the columns by table in the order the tables were given
+        var attrs = new ArrayList <String> ();
+        var doms  = new ArrayList <Class> ();
+        var from  = new ArrayList <Integer> ();
+        for (var t = 0; t < table.size (); t++) {
+            var attr = Table.disambiguate (attrs.toArray (new String [0]), table.get (t).getattribute ());
+            for (var c = 0; c < attr.length; c++) {
+                attrs.add (attr [c]);
+                doms.add (table.get (t).getDomain () [c]);
+                from.add (rel.pos (t, c));
+            } // for
+        } // for
+        var rows = new ArrayList <Comparable []> ();
+        rel.op.open ();
+        try {
+            for (Comparable [] tup; (tup = rel.op.next ()) != null; ) {
+                var row = new Comparable [from.size ()];
+                for (var j = 0; j < row.length; j++) row [j] = tup [from.get (j)];
+                rows.add (row);
+            } // for
+        } finally {
+            rel.op.close ();
+        } // try
+
+        var name = new StringBuilder (table.get (0).getName ());
+        for (var t = 1; t < table.size (); t++) name.append ('_').append (table.get (t).getName ());
+        return op.end (new Table (name.toString (), attrs.toArray (new String [0]), doms.toArray (new Class [0]),
+                                  table.get (0).getKey (), rows));
+    } // execute
+
+    /********************************************************************************
+     * Return a description of the cheapest plan, e.g.,
+     * "((film |><| inventory) |><| rental)" where the build side is on the right.
+     * @return  the plan as a string
+     */
+    public String explain ()
+    {
+        return explain (plan ());
+    } // explain
+
+    /********************************************************************************
+     * Return the estimated number of rows in the result.
+     * @return  the estimated result size
+     */
+    public double estimate ()
+    {
+        return plan ().card;
+    } // estimate
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Find the cheapest plan joining all the tables by dynamic programming over the
+     * subsets of the tables (in order of increasing size, since subsets of a set have
+     * smaller masks).
+     */
+    private Plan plan ()
+    {
+        var all = (1 << table.size ()) - 1;
+        if (best != null) return best [all];
+
+        best = new Plan [all + 1];
+        for (var t = 0; t < table.size (); t++) {
+            var n = table.get (t).records ().size ();
+            best [1 << t] = new Plan (1 << t, null, null, n, 0.0);
+        } // for
+
+        for (var s = 1; s <= all; s++) {
+            if (Integer.bitCount (s) < 2) continue;
+            for (var l = (s - 1) & s; l > 0; l = (l - 1) & s) {   // every split into l and r
+                var r = s & ~l;
+                var pl = best [l];
+                var pr = best [r];
+                if (pl == null || pr == null) continue;
+                var sel = selectivity (l, r);
+                if (sel < 0) continue;                             // no predicate: cross product
+
+                var card  = pl.card * pr.card * sel;
+                var cost  = pl.cost + pr.cost + pl.card + pr.card + card;
+                var build = (pl.card < pr.card) ? pl : pr;         // build on the smaller side
+                var probe = (build == pl) ? pr : pl;
+                if (best [s] == null || cost < best [s].cost) best [s] = new Plan (s, probe, build, card, cost);
+            } // for
+        } // for
+
+        if (best [all] == null) {
+            best = null;
+            throw new IllegalArgumentException ("plan: the predicates do not connect all the tables");
+        } // if
+        return best [all];
+    } // plan
+
+    /********************************************************************************
+     * Return the combined selectivity of the predicates joining the tables in l with
+     * those in r (assuming independence), or -1 if there is no such predicate.
+     * @param l  the left set of tables
+     * @param r  the right set of tables
+     */
+    private double selectivity (int l, int r)
+    {
+        var sel   = 1.0;
+        var found = false;
+        for (var p : pred) {
+            var lr = in (l, p [0]) && in (r, p [2]);
+            var rl = in (r, p [0]) && in (l, p [2]);
+            if (lr || rl) {
+                sel  /= Math.max (1, Math.max (distinct (p [0], p [1]), distinct (p [2], p [3])));
+                found = true;
+            } // if
+        } // for
+        return found ? sel : -1.0;
+    } // selectivity
+
+    /********************************************************************************
+     * Return the number of distinct values in column c of table t.  A single column
+     * primary key is known to be distinct; otherwise the column is counted once.
+     * @param t  the table
+     * @param c  the column
+     */
+    private int distinct (int t, int c)
+    {
+        return distinct.computeIfAbsent (t + "." + c, k -> {
+            var tab = table.get (t);
+            var key = tab.getKey ();
+            if (key.length == 1 && key [0].equals (tab.getattribute () [c])) return tab.records ().size ();
+            var vals = new HashSet <Comparable> ();
+            for (var tup : tab.records ()) if (tup [c] != null) vals.add (tup [c]);
+            return vals.size ();
+        });
+    } // distinct
+
+    /********************************************************************************
+     * Build the operator tree for a plan.
+     * @param plan  the plan to execute
+     */
+    private Rel run (Plan plan)
+    {
+        if (plan.left == null) {
+            var t = Integer.numberOfTrailingZeros (plan.set);
+            return new Rel (new Operator.Scan (table.get (t)), new int [] { t }, new int [] { 0 });
+        } // if
+        var probe = run (plan.left);
+        var build = run (plan.right);
+        return hashJoin (probe, build, plan.left.set, plan.right.set);
+    } // run
+
+    /********************************************************************************
+     * Join two relations on all the predicates between them with a hash join that
+     * builds on the second relation.  Rows whose join values include a null do not
+     * match.  The result has the columns of probe followed by those of build.
+     * @param probe  the relation probing the hash table
+     * @param build  the relation the hash table is built on
+     * @param pSet   the tables in probe
+     * @param bSet   the tables in build
+     */
+    private Rel hashJoin (Rel probe, Rel build, int pSet, int bSet)
+    {
+        var pCols = new ArrayList <Integer> ();
+        var bCols = new ArrayList <Integer> ();
+        for (var p : pred) {
+            if (in (pSet, p [0]) && in (bSet, p [2])) {
+                pCols.add (probe.pos (p [0], p [1])); bCols.add (build.pos (p [2], p [3]));
+            } else if (in (bSet, p [0]) && in (pSet, p [2])) {
+                pCols.add (probe.pos (p [2], p [3])); bCols.add (build.pos (p [0], p [1]));
+            } // if
+        } // for
+        var op = new Operator.HashJoin (probe.op, build.op, pCols.stream ().mapToInt (Integer::intValue).toArray (),
+                                                            bCols.stream ().mapToInt (Integer::intValue).toArray ());
+
+        var width = probe.op.getAttribute ().length;
+        var order = Arrays.copyOf (probe.order, probe.order.length + build.order.length);
+        var base  = Arrays.copyOf (probe.base, probe.base.length + build.base.length);
+        for (var k = 0; k < build.order.length; k++) {
+            order [probe.order.length + k] = build.order [k];
+            base  [probe.order.length + k] = width + build.base [k];
+        } // for
+        return new Rel (op, order, base);
+    } // hashJoin
+
+    /********************************************************************************
+     * Resolve a qualified attribute ("alias.attr") to its table and column.
+     */
+    private int [] resolve (String qattr)
+    {
+        var dot = qattr.indexOf ('.');
+        if (dot < 0) throw new IllegalArgumentException ("resolve: attribute must be qualified: " + qattr);
+        var tname = qattr.substring (0, dot);
+        var attr  = qattr.substring (dot + 1);
+        for (var t = 0; t < table.size (); t++) {
+            if (alias.get (t).equals (tname)) {
+                var c = table.get (t).col (attr);
+                if (c < 0) throw new IllegalArgumentException ("resolve: no attribute " + attr + " in " + tname);
+                return new int [] { t, c };
+            } // if
+        } // for
+        throw new IllegalArgumentException ("resolve: no table " + tname);
+    } // resolve
+
+    /********************************************************************************
+     * Return whether table t is in the set s.
+     */
+    private static boolean in (int s, int t)
+    {
+        return (s & (1 << t)) != 0;
+    } // in
+
+    /********************************************************************************
+     * Return a plan as a string (probe side on the left, build side on the right).
+     */
+    private String explain (Plan plan)
+    {
+        if (plan.left == null) return alias.get (Integer.numberOfTrailingZeros (plan.set));
+        return "(" + explain (plan.left) + " |><| " + explain (plan.right) + ")";
+    } // explain
+
+    /********************************************************************************
+     * The main method used for testing: plan query 4 of set_of_queries.sql on small
+     * synthetic tables.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+    {
+        var film      = new Table ("film", "film_id title", "Integer String", "film_id");
+        var inventory = new Table ("inventory", "inventory_id film_id", "Integer Integer", "inventory_id");
+        var rental    = new Table ("rental", "rental_id inventory_id customer_id", "Integer Integer Integer", "rental_id");
+        var customer  = new Table ("customer", "customer_id name", "Integer String", "customer_id");
+        var rand      = new Random (0);
+        for (var i = 0; i < 100; i++)  film.insertAll (List.<Comparable []> of (new Comparable [] { i, "film" + i }));
+        for (var i = 0; i < 400; i++)  inventory.insertAll (List.<Comparable []> of (new Comparable [] { i, rand.nextInt (100) }));
+        for (var i = 0; i < 2000; i++) rental.insertAll (List.<Comparable []> of (new Comparable [] { i, rand.nextInt (400), rand.nextInt (50) }));
+        for (var i = 0; i < 50; i++)   customer.insertAll (List.<Comparable []> of (new Comparable [] { i, "cust" + i }));
+
+        var planner = new JoinPlanner (film, inventory, rental, customer)
+                          .where ("film.film_id == inventory.film_id")
+                          .where ("rental.inventory_id == inventory.inventory_id")
+                          .where ("customer.customer_id == rental.customer_id");
+        out.println ("plan = " + planner.explain () + ", estimated rows = " + planner.estimate ());
+        var result = planner.execute ();
+        out.println ("result has " + result.records ().size () + " rows, attributes "
+                   + Arrays.toString (result.getattribute ()));
+    } // main
+
+} // JoinPlanner class
@@ -8,39 +8,94 @@
  */
 
 import java.io.Serializable;
+import java.util.function.Function;
 
 import static java.lang.System.out;
 
 /*****************************************************************************************
  * The KeyType class provides a key type for handling both non-composite and composite keys.
  * A key is a minimal set of attributes that can be used to uniquely identify a tuple.
+ * KeyType itself holds no values: the general key (GeneralKey) holds them in a Comparable
+ * array, while IntKey, LongKey and IntPairKey hold a single int, a single long or two
+ * ints unboxed and compare and hash them directly.  Keys of any representation with
+ * equal values are equal, compare as equal and have the same hash code, so they may be
+ * mixed in one map.  Use 'of' or 'maker' to get the most specific representation.
  */
-public class KeyType
+public abstract class KeyType
        implements Comparable <KeyType>, Serializable
 {
-    /** Array holding the attribute values for a particular key
+    /*************************************************************************************
+     * Construct a key (its values are held by the subclass).
      */
-    private final Comparable [] key;
+    protected KeyType ()
+    {
+    } // constructor
 
     /*************************************************************************************
-     * Construct an instance of KeyType from a Comparable array.  
-     * @param _key  the primary key
+     * Return a key for the given values, specialized when they are one Integer, one Long
+     * or two Integers.
+     * @param vals  the values of the key
+     * @return  the key
      */
-    public KeyType (Comparable [] _key)
+    public static KeyType of (Comparable ... vals)
     {
-         key = _key;
-    } // constructor
+        if (vals.length == 1) {
+            if (vals [0] instanceof Integer v) return new IntKey (v);
+            if (vals [0] instanceof Long v)    return new LongKey (v);
+        } else if (vals.length == 2 && vals [0] instanceof Integer v0 && vals [1] instanceof Integer v1) {
+            return new IntPairKey (v0, v1);
+        } // if
+        return new GeneralKey (vals);
+    } // of
 
     /*************************************************************************************
-     * Construct an instance of KeyType from a Comparable variable argument list.
-     * @param_key  the primary key
+     * Return a function that makes the key (at the given columns) of a tuple, chosen
+     * once from the domains of the key attributes: an int, long or int pair key when
+     * they are Integer, Long or Integer Integer, otherwise a general key.  A tuple whose
+     * key values are not of those types (e.g., null, or a value of another type, as the
+     * type check does not reject it) gets a general key.
+     * @param dom   the domains of the key attributes
+     * @param cols  the column positions of the key attributes
+     * @return  the function making keys from tuples
      */
-    public KeyType (Comparable key0, Comparable ... keys)
+    public static Function <Comparable [], KeyType> maker (Class [] dom, int [] cols)
     {
-         key = new Comparable [keys.length + 1];
-         key [0] = key0;
-         for (var i = 1; i < key.length; i++) key [i] = keys [i-1];
-    } // constructor
+        if (cols.length == 1 && dom [0] == Integer.class) {
+            int c = cols [0];
+            return t -> (t [c] instanceof Integer v) ? new IntKey (v) : general (t, cols);
+        } else if (cols.length == 1 && dom [0] == Long.class) {
+            int c = cols [0];
+            return t -> (t [c] instanceof Long v) ? new LongKey (v) : general (t, cols);
+        } else if (cols.length == 2 && dom [0] == Integer.class && dom [1] == Integer.class) {
+            int c0 = cols [0], c1 = cols [1];
+            return t -> (t [c0] instanceof Integer v0 && t [c1] instanceof Integer v1) ? new IntPairKey (v0, v1)
+                                                                                        : general (t, cols);
+        } // if
+        return t -> general (t, cols);
+    } // maker
+
+    /*************************************************************************************
+     * Return a general key with the values at the given columns of a tuple.
+     */
+    private static KeyType general (Comparable [] t, int [] cols)
+    {
+        var vals = new Comparable [cols.length];
+        for (var j = 0; j < cols.length; j++) vals [j] = t [cols [j]];
+        return new GeneralKey (vals);
+    } // general
+
+    /*************************************************************************************
+     * Return the number of values in the key.
+     * @return  the arity of the key
+     */
+    public abstract int arity ();
+
+    /*************************************************************************************
+     * Return the i-th value of the key.
+     * @param i  the position of the value
+     * @return  the value (boxed for the specialized keys)
+     */
+    public abstract Comparable component (int i);
 
     /*************************************************************************************
      * Compare two keys (negative => less than, zero => equals, positive => greater than).
@@ -50,11 +105,12 @@ public class KeyType
     @SuppressWarnings("unchecked")
     public int compareTo (KeyType k)
     {
-        for (var i = 0; i < key.length; i++) {
-            if (key [i].compareTo (k.key [i]) < 0) return -1;
-            if (key [i].compareTo (k.key [i]) > 0) return 1;
+        var n = Math.min (arity (), k.arity ());
+        for (var i = 0; i < n; i++) {
+            var c = component (i).compareTo (k.component (i));
+            if (c != 0) return (c < 0) ? -1 : 1;
         } // for
-        return 0;
+        return Integer.compare (arity (), k.arity ());
     } // compareTo
 
     /*************************************************************************************
@@ -64,17 +120,18 @@ public class KeyType
      */
     public boolean equals (Object k)
     {
-        return compareTo ((KeyType) k) == 0;
+        return k instanceof KeyType kt && hashCode () == kt.hashCode () && compareTo (kt) == 0;
     } // equals
 
     /*************************************************************************************
      * Compute a hash code for this object (equal objects should produce the same hash code).
+     * The specialized keys compute the same value from their unboxed values.
      * @return  an integer hash code value
      */
     public int hashCode ()
     {
         var sum = 0;
-        for (var i = 0; i < key.length; i++) sum = 7 * sum + key [i].hashCode ();
+        for (var i = 0; i < arity (); i++) sum = 7 * sum + component (i).hashCode ();
         return sum;
     } // hashCode
 
@@ -84,20 +141,139 @@ public class KeyType
      */
     public String toString ()
     {
-        var s = "Key (";
-        for (var i = 0; i < key.length; i++) s += " " + key [i];
-        return s + (" )");
+        var s = new StringBuilder ("Key (");
+        for (var i = 0; i < arity (); i++) s.append (" ").append (component (i));
+        return s.append (" )").toString ();
     } // toString
 
+    /*************************************************************************************
+     * A general key: any number of values of any (Comparable) type, held in an array.
+     * Its hash code is cached as String's is (0 => not yet computed).
+     */
+    public static final class GeneralKey
+           extends KeyType
+    {
+        private final Comparable [] key;
+        private int hash;
+
+        /*********************************************************************************
+         * Construct a general key from a Comparable array.
+         * @param _key  the values of the key
+         */
+        public GeneralKey (Comparable [] _key)
+        {
+            key = _key;
+        } // constructor
+
+        public int arity ()               { return key.length; }
+        public Comparable component (int i) { return key [i]; }
+
+        public int hashCode ()
+        {
+            var h = hash;
+            if (h == 0) hash = h = super.hashCode ();
+            return h;
+        } // hashCode
+
+    } // GeneralKey class
+
+    /*************************************************************************************
+     * A key made of one int value.
+     */
+    public static final class IntKey
+           extends KeyType
+    {
+        private final int value;
+
+        public IntKey (int _value)        { value = _value; }
+        public int value ()               { return value; }
+        public int arity ()               { return 1; }
+        public Comparable component (int i) { return value; }
+        public int hashCode ()            { return value; }
+
+        public int compareTo (KeyType k)
+        {
+            return (k instanceof IntKey ik) ? Integer.compare (value, ik.value) : super.compareTo (k);
+        } // compareTo
+
+        public boolean equals (Object k)
+        {
+            return (k instanceof IntKey ik) ? value == ik.value : super.equals (k);
+        } // equals
+
+    } // IntKey class
+
+    /*************************************************************************************
+     * A key made of one long value.
+     */
+    public static final class LongKey
+           extends KeyType
+    {
+        private final long value;
+
+        public LongKey (long _value)      { value = _value; }
+        public long value ()              { return value; }
+        public int arity ()               { return 1; }
+        public Comparable component (int i) { return value; }
+        public int hashCode ()            { return Long.hashCode (value); }
+
+        public int compareTo (KeyType k)
+        {
+            return (k instanceof LongKey lk) ? Long.compare (value, lk.value) : super.compareTo (k);
+        } // compareTo
+
+        public boolean equals (Object k)
+        {
+            return (k instanceof LongKey lk) ? value == lk.value : super.equals (k);
+        } // equals
+
+    } // LongKey class
+
+    /*************************************************************************************
+     * A composite key made of two int values, e.g., (actor_id, film_id), packed into a
+     * long that orders as the pair does (first value, then second).
+     */
+    public static final class IntPairKey
+           extends KeyType
+    {
+        private final long packed;
+        private final int  hash;
+
+        public IntPairKey (int v0, int v1)
+        {
+            packed = ((long) v0 << 32) | (v1 & 0xFFFFFFFFL);
+            hash   = 7 * v0 + v1;
+        } // constructor
+
+        public int first ()               { return (int) (packed >> 32); }
+        public int second ()              { return (int) packed; }
+        public int arity ()               { return 2; }
+        public Comparable component (int i) { return (i == 0) ? first () : second (); }
+        public int hashCode ()            { return hash; }
+
+        public int compareTo (KeyType k)
+        {
+            if (! (k instanceof IntPairKey pk)) return super.compareTo (k);
+            var c = Integer.compare (first (), pk.first ());
+            return (c != 0) ? c : Integer.compare (second (), pk.second ());
+        } // compareTo
+
+        public boolean equals (Object k)
+        {
+            return (k instanceof IntPairKey pk) ? packed == pk.packed : super.equals (k);
+        } // equals
+
+    } // IntPairKey class
+
     /*************************************************************************************
      * The main method is used for testing purposes only.
      * @param args  the command-line arguments
      */
     public static void main (String [] args)
     {
-        var key1 = new KeyType (new Comparable [] { "Star_Wars_2", 1980 });
-        var key2 = new KeyType (new Comparable [] { "Rocky", 1985 } );
-        var key3 = new KeyType (new Comparable [] { "Star_Wars_2", 1980 });
+        var key1 = KeyType.of ("Star_Wars_2", 1980);
+        var key2 = KeyType.of ("Rocky", 1985);
+        var key3 = KeyType.of ("Star_Wars_2", 1980);
 
         out.println ();
         out.println ("Test the KeyClass");
@@ -122,6 +298,17 @@ public class KeyType
         out.println ("key1.equals (key3): " + key1.equals (key3));
         out.println ("key1.hashCode () == key2.hashCode (): " + (key1.hashCode () == key2.hashCode ()));
         out.println ("key1.hashCode () == key3.hashCode (): " + (key1.hashCode () == key3.hashCode ()));
+
+        var int1  = KeyType.of (141);
+        var pair1 = KeyType.of (5, 141);
+        var gen1  = new GeneralKey (new Comparable [] { 141 });
+        var gen2  = new GeneralKey (new Comparable [] { 5, 141 });
+        out.println ();
+        out.println (int1.getClass ().getSimpleName () + " " + int1 + " equals " + gen1 + ": "
+                   + (int1.equals (gen1) && gen1.equals (int1) && int1.hashCode () == gen1.hashCode ()));
+        out.println (pair1.getClass ().getSimpleName () + " " + pair1 + " equals " + gen2 + ": "
+                   + (pair1.equals (gen2) && pair1.hashCode () == gen2.hashCode ()));
+        out.println (pair1 + " < " + KeyType.of (5, 142) + ": " + (pair1.compareTo (KeyType.of (5, 142)) < 0));
     } // main
 
 } // KeyType class
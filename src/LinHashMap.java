@@ -1,4 +1,3 @@
-
 /************************************************************************************
  * @file LinHashMap.java
  *
@@ -8,29 +7,53 @@
 import java.io.*;
 import java.lang.reflect.Array;
 import static java.lang.System.out;
-import java.util.*;    
-import java.io.Serializable;                                                                                                   
+import java.util.*;
+import java.io.Serializable;
 
 /************************************************************************************
  * This class provides hash maps that use the Linear Hashing algorithm.
  * A hash table is created that is an expandable array-list of buckets.
+ * The table grows one bucket chain at a time: when the load factor exceeds THRESHOLD,
+ * chain 'isplit' is split into itself and a new chain at the end of the table, so each
+ * put does a bounded amount of work.  When contraction is on, remove merges the last
+ * chain back into its buddy as the load factor drops below LOW_THRESHOLD.  Chains are
+ * kept compact: every bucket but the last in a chain is full.
  */
 
 public class LinHashMap <K, V>
        extends AbstractMap <K, V>
        implements Serializable, Cloneable, Map <K, V>
 {
-    /** The debug flag
+    /** The metrics shared by all linear hash maps: the buckets accessed by get (also
+     *  counted per map in 'count'), the splits, the length of the chain searched by each
+     *  get (only when tracing at DEBUG, as it is costly on this hot path) and the load
+     *  factor of the map last updated.
      */
-    private static final boolean DEBUG = true;
+    private static final Metrics.Counter   BUCKET_ACCESSES = Metrics.counter ("linhash.bucketAccesses");
+    private static final Metrics.Counter   SPLITS          = Metrics.counter ("linhash.splits");
+    private static final Metrics.Counter   MERGES          = Metrics.counter ("linhash.merges");
+    private static final Metrics.Histogram CHAIN_LENGTH    = Metrics.histogram ("linhash.chainLength");
+    private static final Metrics.Gauge     LOAD_FACTOR     = Metrics.gauge ("linhash.loadFactor");
 
     /** The number of slots (for key-value pairs) per bucket.
      */
-    private static final int SLOTS = 10000;
+    private static final int SLOTS = 8;
+
+    /** The initial capacity of a bucket's arrays (they grow by doubling up to SLOTS).
+     */
+    private static final int INIT_SLOTS = 4;
+
+    /** The initial number of bucket chains (the table never contracts below it).
+     */
+    private static final int INIT_CHAINS = 4;
 
     /** The threshold/upper bound on the load factor
      */
-    private static final double THRESHOLD = 1.1;
+    private static final double THRESHOLD = 0.75;
+
+    /** The lower bound on the load factor (below it, remove contracts the table)
+     */
+    private static final double LOW_THRESHOLD = 0.3;
 
     /** The class for type K.
      */
@@ -41,39 +64,60 @@ public class LinHashMap <K, V>
     private final Class <V> classV;
 
     /********************************************************************************
-     * This inner class defines buckets that are stored in the hash table.
+     * This inner class defines buckets that are stored in the hash table.  A bucket
+     * holds up to SLOTS key-value pairs, but its arrays start small and grow as keys
+     * are added, so sparse buckets stay compact in memory (and when serialized).
+     * The hash code of each key is kept in a primitive array so that find can reject
+     * non-matching slots without calling equals (and split need not rehash keys).
      */
 
     private class Bucket implements Serializable
     {
         int    nKeys;
+        int [] hash;
         K []   key;
         V []   value;
         Bucket next;
- 
+
         @SuppressWarnings("unchecked")
 
         Bucket ()
         {
             nKeys = 0;
-            key   = (K []) Array.newInstance (classK, SLOTS);
-            value = (V []) Array.newInstance (classV, SLOTS);
+            hash  = new int [INIT_SLOTS];
+            key   = (K []) Array.newInstance (classK, INIT_SLOTS);
+            value = (V []) Array.newInstance (classV, INIT_SLOTS);
             next  = null;
         } // constructor
 
-        V find (K k)
+        int indexOf (Object k, int hk)
+        {
+            for (var j = 0; j < nKeys; j++) if (hash[j] == hk && k.equals (key[j])) return j;
+            return -1;
+        } // indexOf
+
+        boolean isFull ()
         {
-            for (var j = 0; j < nKeys; j++) if (key[j].equals (k)) return value[j];
-            return null;
-        } // find
+            return nKeys == SLOTS;
+        } // isFull
 
-        void add (K k, V v)
+        void add (K k, int hk, V v)
         {
+            if (nKeys == key.length) grow ();
+            hash[nKeys]  = hk;
             key[nKeys]   = k;
             value[nKeys] = v;
             nKeys++;
         } // add
 
+        void grow ()
+        {
+            var cap = Math.min (2 * key.length, SLOTS);
+            hash  = Arrays.copyOf (hash, cap);
+            key   = Arrays.copyOf (key, cap);
+            value = Arrays.copyOf (value, cap);
+        } // grow
+
         void print ()
         {
             out.print ("[ " );
@@ -107,6 +151,10 @@ public class LinHashMap <K, V>
      */
     private int keyCount = 0;
 
+    /** Whether remove contracts the table when the load factor gets low.
+     */
+    private boolean contract = true;
+
     /********************************************************************************
      * Construct a hash table that uses Linear Hashing.
      * @param classK  the class for keys (K)
@@ -116,12 +164,19 @@ public class LinHashMap <K, V>
     {
         classK = _classK;
         classV = _classV;
-        mod1   = 4;                                                          // initial size
-        mod2   = 2 * mod1;
         hTable = new ArrayList <> ();
-        for (var i = 0; i < mod1; i++) hTable.add (new Bucket ());
+        clear ();
     } // constructor
 
+    /********************************************************************************
+     * Turn contraction of the table by remove on or off (it is on by default).
+     * @param _contract  whether remove should contract the table
+     */
+    public void setContraction (boolean _contract)
+    {
+        contract = _contract;
+    } // setContraction
+
     /********************************************************************************
      * Return a set containing all the entries as pairs of keys and values.
      * @return  the set view of the map
@@ -129,87 +184,130 @@ public class LinHashMap <K, V>
     public Set <Map.Entry <K, V>> entrySet ()
     {
         var enSet = new HashSet <Map.Entry <K, V>> ();
-        //  T O   B E   I M P L E M E N T E D
-
-        // Getting the size of the hash table to be iterated
-        int hashTable_Size = hTable.size();
-        int current_ind = 0;
 
-         // Iterating each and every bucket in the hash table
-        while( current_ind < hashTable_Size) 
-        {
-            // Fetching the bucket which is at the current index
-        
-            Bucket current_bucket = hTable.get(current_ind);
+        // Iterating each and every bucket chain in the hash table
+        for (var bh : hTable) {
             // Iterate through the bucket chain at this position in the hash table
-            while (current_bucket != null) 
-            {
-                // Iterating through the key-value pairs stored in the current bucket
-                for (int temp_counter = 0; temp_counter < current_bucket.nKeys; temp_counter++) 
-                {
-            
-                    // Retrieving the key and value from the current bucket's keyvalue pair
-                    K keyToAdd = current_bucket.key[temp_counter];
-                    V valueToAdd = current_bucket.value[temp_counter];
-                    // Creating a new entry using the key-value pair  
-                    Map.Entry<K, V> entryToAdd = new AbstractMap.SimpleEntry<>(keyToAdd, valueToAdd);
-                    // Adding the entry to the set
-                    enSet.add(entryToAdd);
-                }
-                // Move to the next bucket in the chain
-                current_bucket = current_bucket.next;
-                current_ind++;
-            }
-        }
+            for (var b = bh; b != null; b = b.next) {
+                // Adding an entry for each key-value pair stored in the current bucket
+                for (var j = 0; j < b.nKeys; j++) enSet.add (new AbstractMap.SimpleEntry <> (b.key[j], b.value[j]));
+            } // for
+        } // for
         // Return the set of entries
         return enSet;
-    } 
-// entrySet
-
+    } // entrySet
 
     /********************************************************************************
      * Given the key, look up the value in the hash table.
      * @param key  the key used for look up
      * @return  the value associated with the key
      */
-    @SuppressWarnings("unchecked")
     public V get (Object key)
     {
-        var i = h (key);
-        return find ((K) key, hTable.get (i), true);
+        var hk = key.hashCode ();
+        var j  = 0;
+        var b  = hTable.get (home (hk));
+        var len = 0;
+        for ( ; b != null; b = b.next) {
+            len++;
+            if ((j = b.indexOf (key, hk)) >= 0) break;
+        } // for
+        count += len;
+        BUCKET_ACCESSES.add (len);
+        if (Metrics.enabled (Metrics.Level.DEBUG)) CHAIN_LENGTH.record (len);
+        return (b == null) ? null : b.value[j];
     } // get
 
     /********************************************************************************
-     * Put the key-value pair in the hash table.  Split the 'isplit' bucket chain
-     * when the load factor is exceeded.
+     * Determine whether the key is in the hash table.
+     * @param key  the key to look for
+     * @return  whether it is present
+     */
+    public boolean containsKey (Object key)
+    {
+        var hk = key.hashCode ();
+        for (var b = hTable.get (home (hk)); b != null; b = b.next) if (b.indexOf (key, hk) >= 0) return true;
+        return false;
+    } // containsKey
+
+    /********************************************************************************
+     * Put the key-value pair in the hash table, replacing the value of a key already
+     * present.  Split the 'isplit' bucket chain when the load factor is exceeded.
      * @param key    the key to insert
      * @param value  the value to insert
      * @return  the old/previous value, null if none
      */
     public V put (K key, V value)
     {
-        var i = Math.abs(h(key));                                                // hash to i-th bucket chain
-        var bh   = hTable.get (i);                                           // start with home bucket
-        var oldV = find (key, bh, false);                                    // find old value associated with key
-        out.println ("LinearHashMap.put: key = " + key + ", h() = " + i + ", value = " + value);
-
-        keyCount++;                                                          // increment the key count
-        var lf = loadFactor ();                                              // compute the load factor
-        if (DEBUG) out.println ("put: load factor = " + lf);
-        if (lf > THRESHOLD) split ();                                        // split beyond THRESHOLD
+        var hk = key.hashCode ();
+        var i  = home (hk);                                                  // hash to i-th bucket chain
+        var b  = hTable.get (i);                                             // start with home bucket
+        Metrics.trace (Metrics.Level.DEBUG, () -> "LinearHashMap.put: key = " + key + ", h() = " + i + ", value = " + value);
 
-        var b = bh;
         while (true) {
-            if (b.nKeys < SLOTS) { b.add (key, value); return oldV; }
+            var j = b.indexOf (key, hk);
+            if (j >= 0) { var oldV = b.value[j]; b.value[j] = value; return oldV; }   // replace old value
             if (b.next != null) b = b.next; else break;
         } // while
 
-        var bn = new Bucket ();
-        bn.add (key, value);
-        b.next = bn;                                                         // add new bucket at end of chain
-        return oldV;
+        if (b.isFull ()) b = b.next = new Bucket ();                          // add new bucket at end of chain
+        b.add (key, hk, value);
+
+        keyCount++;                                                          // increment the key count
+        var lf = loadFactor ();                                              // compute the load factor
+        LOAD_FACTOR.set (lf);
+        Metrics.trace (Metrics.Level.DEBUG, () -> "put: load factor = " + lf);
+        if (lf > THRESHOLD) split ();                                        // split beyond THRESHOLD
+        return null;
     } // put
 
+    /********************************************************************************
+     * Remove the key (and its value) from the hash table, filling its slot with the
+     * last pair in the chain so the chain stays compact.  Merge the last bucket chain
+     * back when the load factor drops below LOW_THRESHOLD (if contraction is on).
+     * @param key  the key to remove
+     * @return  the value it had, null if none
+     */
+    public V remove (Object key)
+    {
+        var hk = key.hashCode ();
+        var bh = hTable.get (home (hk));
+        for (var b = bh; b != null; b = b.next) {
+            var j = b.indexOf (key, hk);
+            if (j < 0) continue;
+            var oldV = b.value[j];
+            Bucket prev = null, last = bh;                                   // find the last bucket in the chain
+            while (last.next != null) { prev = last; last = last.next; }
+            var k = --last.nKeys;                                            // move its last pair into slot j
+            b.hash[j]  = last.hash[k];
+            b.key[j]   = last.key[k];
+            b.value[j] = last.value[k];
+            last.key[k]   = null;
+            last.value[k] = null;
+            if (last.nKeys == 0 && prev != null) prev.next = null;           // drop an emptied overflow bucket
+
+            keyCount--;
+            var lf = loadFactor ();
+            LOAD_FACTOR.set (lf);
+            if (contract && lf < LOW_THRESHOLD && hTable.size () > INIT_CHAINS) merge ();
+            return oldV;
+        } // for
+        return null;
+    } // remove
+
+    /********************************************************************************
+     * Remove all the keys, shrinking the table back to its initial size.
+     */
+    public void clear ()
+    {
+        hTable.clear ();
+        mod1     = INIT_CHAINS;                                              // initial size
+        mod2     = 2 * mod1;
+        isplit   = 0;
+        keyCount = 0;
+        for (var i = 0; i < mod1; i++) hTable.add (new Bucket ());
+    } // clear
+
     /********************************************************************************
      * Print the hash table.
      */
@@ -230,78 +328,85 @@ public class LinHashMap <K, V>
 
         out.println ("-------------------------------------------");
     } // print
- 
+
     /********************************************************************************
-     * Return the size (SLOTS * number of home buckets) of the hash table. 
-     * @return  the size of the hash table
+     * Return the number of keys in the hash table.
+     * @return  the number of key-value pairs
      */
     public int size ()
     {
-        return SLOTS * (mod1 + isplit);
+        return keyCount;
     } // size
 
     /********************************************************************************
      * Split bucket chain 'isplit' by creating a new bucket chain at the end of the
      * hash table and redistributing the keys according to the high-resolution hash
-     * function 'h2'. Increment 'isplit'. If the current split phase is complete,
-     * reset 'isplit' to zero, and update the hash functions.
+     * function 'h2': keys whose h2 is 'isplit' stay, the others (whose h2 is
+     * 'isplit + mod1') move to the new chain.  Both chains are rebuilt compactly.
+     * Increment 'isplit'. If the current split phase is complete, reset 'isplit' to
+     * zero, and update the hash functions.
      */
-    private void split() {
-        out.println("split: bucket chain " + isplit);
-
-        //  T O   B E   I M P L E M E N T E D
-
-        // Create a new bucket chain at the end of the hash table
-        hTable.add(new Bucket());
-
-        // Creating new bucket for redistributing the keys
-        Bucket bucketKeysNew = new Bucket();
-
-         // Retrieving the buckets to be split
-         Bucket splitBucketChain = hTable.get(isplit);
+    private void split ()
+    {
+        Metrics.trace (Metrics.Level.DEBUG, () -> "split: bucket chain " + isplit);
+        SPLITS.inc ();
+
+        var old  = hTable.get (isplit);
+        var stay = new Bucket ();
+        var move = new Bucket ();
+        for (var b = old; b != null; b = b.next) {
+            for (var j = 0; j < b.nKeys; j++) {
+                var hk = b.hash[j];
+                append (h2 (hk) == isplit ? stay : move, b.key[j], hk, b.value[j]);
+            } // for
+        } // for
+        hTable.set (isplit, stay);
+        hTable.add (move);                                                   // at position isplit + mod1
 
-        // The next of the split bucket chain is assigned to the new buckets created
-        splitBucketChain.next = bucketKeysNew;
+        if (++isplit == mod1) {                                              // the split phase is complete
+            isplit = 0;
+            mod1   = mod2;
+            mod2   = 2 * mod1;
+        } // if
+    } // split
 
-        //Incrementing the index of isplit 
-        isplit++;
+    /********************************************************************************
+     * Merge the last bucket chain back into the chain it was split from (undoing the
+     * last split), moving back to the previous split phase if needed.
+     */
+    private void merge ()
+    {
+        MERGES.inc ();
+        if (isplit == 0) {                                                   // back into the previous phase
+            mod2   = mod1;
+            mod1   = mod1 / 2;
+            isplit = mod1;
+        } // if
+        isplit--;
 
-        // Iterating through all the keys of the split bucket chain
-        int i=0;
-        while (i < splitBucketChain.nKeys) 
-        {
-            K split_key = splitBucketChain.key[i];
-            V split_key_value = splitBucketChain.value[i];
-
-            // Computing the high-resolution hash value using the 'h2' defined with the key obtained
-            int hash_value = h2(split_key);
-
-            // Determine whether to keep the key in the split bucket chain or move it to the new bucket chain
-            if (hash_value != isplit) {
-                // Move the key to the new bucket chain
-                bucketKeysNew.add(split_key, split_key_value);
-
-                // Remove the key from the split bucket chain
-                splitBucketChain.key[i] = null;
-                splitBucketChain.value[i] = null;
-                splitBucketChain.nKeys--;
-            }
-            i++;
-        }
-
-         // Resetting the 'isplit' to zero and updating the hash functions after the current split phase is completed 
-         if (isplit == mod1) 
-         {
-             //isplit set to zero
-             
-             isplit = 0;
-             //updating the hash function
- 
-             mod1 *= 2;
-             mod2 = 2 * mod1;
-         }
-    } // split
+        var last = hTable.remove (hTable.size () - 1);                       // chain isplit + mod1
+        var into = hTable.get (isplit);
+        while (into.next != null) into = into.next;
+        for (var b = last; b != null; b = b.next) {
+            for (var j = 0; j < b.nKeys; j++) into = append (into, b.key[j], b.hash[j], b.value[j]);
+        } // for
+    } // merge
 
+    /********************************************************************************
+     * Add a key-value pair at the end of the chain whose last bucket is b.
+     * @param b   the last bucket in the chain
+     * @param k   the key
+     * @param hk  the hash code of the key
+     * @param v   the value
+     * @return  the (possibly new) last bucket in the chain
+     */
+    private Bucket append (Bucket b, K k, int hk, V v)
+    {
+        while (b.next != null) b = b.next;
+        if (b.isFull ()) b = b.next = new Bucket ();
+        b.add (k, hk, v);
+        return b;
+    } // append
 
     /********************************************************************************
      * Return the load factor for the hash table.
@@ -309,46 +414,55 @@ public class LinHashMap <K, V>
      */
     private double loadFactor ()
     {
-        return keyCount / (double) size ();
+        return keyCount / (double) (SLOTS * hTable.size ());
     } // loadFactor
 
     /********************************************************************************
-     * Find the key in the bucket chain that starts with home bucket bh.
-     * @param key     the key to find
-     * @param bh      the given home bucket
-     * @param by_get  whether 'find' is called from 'get' (performance monitored)
-     * @return  the current value stored stored for the key
+     * Return the home bucket chain for a key with the given hash code: by the low
+     * resolution hash function, unless that chain has already been split in this
+     * phase, in which case by the high resolution one.
+     * @param hk  the hash code of the key
+     * @return  the location of the bucket chain for the key
      */
-    private V find (K key, Bucket bh, boolean by_get)
+    private int home (int hk)
     {
-        for (var b = bh; b != null; b = b.next) {
-            if (by_get) count++;
-            V result = b.find (key);
-            if (result != null) return result;
-        } // for
-        return null;
-    } // find
+        var i = h (hk);
+        return (i < isplit) ? h2 (hk) : i;
+    } // home
 
     /********************************************************************************
-     * Hash the key using the low resolution hash function.
-     * @param key  the key to hash
+     * Hash the key's hash code using the low resolution hash function.  The bits of
+     * the hash code are mixed first, so that keys with regular hash codes spread out.
+     * @param hk  the hash code of the key
      * @return  the location of the bucket chain containing the key-value pair
      */
-    private int h (Object key)
+    private int h (int hk)
     {
-        return key.hashCode () % mod1;
+        return Math.floorMod (mix (hk), mod1);
     } // h
 
     /********************************************************************************
-     * Hash the key using the high resolution hash function.
-     * @param key  the key to hash
+     * Hash the key's hash code using the high resolution hash function.
+     * @param hk  the hash code of the key
      * @return  the location of the bucket chain containing the key-value pair
      */
-    private int h2 (Object key)
+    private int h2 (int hk)
     {
-        return key.hashCode () % mod2;
+        return Math.floorMod (mix (hk), mod2);
     } // h2
 
+    /********************************************************************************
+     * Mix the bits of a hash code (the moduli are powers of two, so only the low bits
+     * would be used otherwise).
+     * @param hk  the hash code
+     * @return  the mixed hash code
+     */
+    private static int mix (int hk)
+    {
+        var x = hk * 0x9E3779B9;
+        return x ^ (x >>> 16);
+    } // mix
+
     /********************************************************************************
      * The main method used for testing.
      * @param  the command-line arguments (args [0] gives number of keys to insert)
@@ -374,7 +488,9 @@ public class LinHashMap <K, V>
         } // for
         out.println ("-------------------------------------------");
         out.println ("Average number of buckets accessed = " + ht.count / (double) totalKeys);
+
+        for (var i = 1; i <= totalKeys; i += 4) ht.remove (i);
+        out.println ("after removing every other key: size = " + ht.size () + ", chains = " + ht.hTable.size ());
     } // main
 
 } // LinHashMap class
-
@@ -0,0 +1,394 @@
+/************************************************************************************
+ * @file Metrics.java
+ *
+ * @author  John Miller
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import javax.management.ObjectName;
+
+import static java.lang.System.out;
+
+/************************************************************************************
+ * This class provides the instrumentation for the storage, index and query layers:
+ * a trace with configurable levels (replacing unconditional printing) and a registry
+ * of named counters, gauges and histograms.  The trace is OFF by default, so nothing
+ * is printed unless asked for (-Ddb.trace=INFO or DEBUG, or setLevel); messages are
+ * built lazily, so a disabled trace costs a level check.  The metrics are always
+ * collected (they are cheap: a LongAdder per counter) and exposed through JMX as the
+ * MXBean "db:type=Metrics" (e.g., in jconsole) as well as through report.
+ *
+ * #usage Metrics.setLevel (Metrics.Level.INFO); ...; out.println (Metrics.report ());
+ */
+public final class Metrics
+{
+    /** The trace levels: OFF prints nothing, INFO prints DDL and relational algebra
+     *  operations, DEBUG also prints DML and the internals of the indexes.
+     */
+    public enum Level { OFF, INFO, DEBUG }
+
+    /** The current trace level.
+     */
+    private static volatile Level level = Level.valueOf (System.getProperty ("db.trace", "OFF").toUpperCase ());
+
+    /** The registered counters, gauges and histograms, by name.
+     */
+    private static final Map <String, Counter>   counters   = new ConcurrentHashMap <> ();
+    private static final Map <String, Gauge>     gauges     = new ConcurrentHashMap <> ();
+    private static final Map <String, Histogram> histograms = new ConcurrentHashMap <> ();
+
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer ()
+                             .registerMBean (new Bean (), new ObjectName ("db:type=Metrics"));
+        } catch (Exception ex) {
+            out.println ("Metrics: JMX registration failed: " + ex);
+        } // try
+    } // static
+
+    /********************************************************************************
+     * Don't instantiate.
+     */
+    private Metrics () { }
+
+    //----------------------------------------------------------------------------------
+    // Trace
+    //----------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Set the trace level.
+     * @param _level  the new trace level
+     */
+    public static void setLevel (Level _level)
+    {
+        level = _level;
+    } // setLevel
+
+    /********************************************************************************
+     * Get the trace level.
+     * @return  the trace level
+     */
+    public static Level getLevel ()
+    {
+        return level;
+    } // getLevel
+
+    /********************************************************************************
+     * Return whether messages at the given level are traced.
+     * @param lev  the level of the messages (INFO or DEBUG)
+     * @return  whether they are printed
+     */
+    public static boolean enabled (Level lev)
+    {
+        return level.ordinal () >= lev.ordinal ();
+    } // enabled
+
+    /********************************************************************************
+     * Trace a message at the given level, building it only when it will be printed.
+     * @param lev  the level of the message (INFO or DEBUG)
+     * @param msg  the supplier of the message
+     */
+    public static void trace (Level lev, Supplier <String> msg)
+    {
+        if (enabled (lev)) out.println (msg.get ());
+    } // trace
+
+    //----------------------------------------------------------------------------------
+    // Registry
+    //----------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Return the counter with the given name, registering it if needed.  Callers on
+     * hot paths should keep the counter rather than look it up each time.
+     * @param name  the name of the counter
+     * @return  the counter
+     */
+    public static Counter counter (String name)
+    {
+        return counters.computeIfAbsent (name, x -> new Counter ());
+    } // counter
+
+    /********************************************************************************
+     * Return the gauge with the given name, registering it if needed.
+     * @param name  the name of the gauge
+     * @return  the gauge
+     */
+    public static Gauge gauge (String name)
+    {
+        return gauges.computeIfAbsent (name, x -> new Gauge ());
+    } // gauge
+
+    /********************************************************************************
+     * Return the histogram with the given name, registering it if needed.
+     * @param name  the name of the histogram
+     * @return  the histogram
+     */
+    public static Histogram histogram (String name)
+    {
+        return histograms.computeIfAbsent (name, x -> new Histogram ());
+    } // histogram
+
+    /********************************************************************************
+     * Reset all the metrics to zero (keeping them registered).
+     */
+    public static void reset ()
+    {
+        for (var c : counters.values ())   c.reset ();
+        for (var g : gauges.values ())     g.set (0.0);
+        for (var h : histograms.values ()) h.reset ();
+    } // reset
+
+    /********************************************************************************
+     * Return a report of the (nonzero) metrics, one per line, in order of name.
+     * @return  the report
+     */
+    public static String report ()
+    {
+        var sb = new StringBuilder ("Metrics\n-------------------------------------------\n");
+        for (var e : new TreeMap <> (counters).entrySet ()) {
+            if (e.getValue ().get () != 0) sb.append (String.format ("%-40s %12d%n", e.getKey (), e.getValue ().get ()));
+        } // for
+        for (var e : new TreeMap <> (gauges).entrySet ()) {
+            sb.append (String.format ("%-40s %12.3f%n", e.getKey (), e.getValue ().get ()));
+        } // for
+        for (var e : new TreeMap <> (histograms).entrySet ()) {
+            if (e.getValue ().count () != 0) sb.append (String.format ("%-40s %s%n", e.getKey (), e.getValue ()));
+        } // for
+        return sb.append ("-------------------------------------------").toString ();
+    } // report
+
+    //----------------------------------------------------------------------------------
+    // Operators
+    //----------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Start timing a relational algebra operation, tracing it at level INFO as
+     * "RA> description".  End it with Op.end, which records its calls, rows in and out
+     * and elapsed time under "op.<name>.*".
+     * @param name    the name of the operation (e.g., "h_join")
+     * @param rowsIn  the number of input rows
+     * @param desc    the supplier of its description (e.g., "rental.h_join (...)")
+     * @return  the running operation
+     */
+    public static Op operator (String name, long rowsIn, Supplier <String> desc)
+    {
+        trace (Level.INFO, () -> "RA> " + desc.get ());
+        return new Op (name, rowsIn);
+    } // operator
+
+    /********************************************************************************
+     * A running relational algebra operation.
+     */
+    public static final class Op
+    {
+        private final String name;
+        private final long rowsIn;
+        private final long start = System.nanoTime ();
+
+        private Op (String _name, long _rowsIn)
+        {
+            name   = _name;
+            rowsIn = _rowsIn;
+        } // constructor
+
+        /****************************************************************************
+         * End the operation, recording its metrics.
+         * @param result  the table produced (null if the operation failed)
+         * @return  the table produced
+         */
+        public Table end (Table result)
+        {
+            var micros  = (System.nanoTime () - start) / 1000;
+            var rowsOut = (result == null) ? 0 : result.records ().size ();
+            counter ("op." + name + ".calls").inc ();
+            counter ("op." + name + ".rowsIn").add (rowsIn);
+            counter ("op." + name + ".rowsOut").add (rowsOut);
+            histogram ("op." + name + ".micros").record (micros);
+            trace (Level.DEBUG, () -> "RA> " + name + ": " + rowsIn + " rows in, " + rowsOut + " rows out, "
+                                    + micros + " us");
+            return result;
+        } // end
+
+    } // Op class
+
+    //----------------------------------------------------------------------------------
+    // Metric types
+    //----------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * A monotonic counter (safe for concurrent updates).
+     */
+    public static final class Counter
+    {
+        private final LongAdder sum = new LongAdder ();
+
+        public void inc ()                { sum.increment (); }
+        public void add (long n)          { sum.add (n); }
+        public long get ()                { return sum.sum (); }
+        void reset ()                     { sum.reset (); }
+
+    } // Counter class
+
+    /********************************************************************************
+     * A gauge holding the last value set.
+     */
+    public static final class Gauge
+    {
+        private volatile double value;
+
+        public void set (double v)        { value = v; }
+        public double get ()              { return value; }
+
+    } // Gauge class
+
+    /********************************************************************************
+     * A histogram of nonnegative values, counted in power-of-two buckets (bucket b
+     * holds the values v with 2^(b-1) <= v < 2^b, bucket 0 holds 0), so percentiles
+     * are reported as the upper bound of their bucket.
+     */
+    public static final class Histogram
+    {
+        private final LongAdder [] bucket = new LongAdder [65];
+        private final LongAdder  total = new LongAdder ();
+        private final LongAdder  sum   = new LongAdder ();
+        private final AtomicLong max   = new AtomicLong ();
+
+        Histogram ()
+        {
+            for (var b = 0; b < bucket.length; b++) bucket [b] = new LongAdder ();
+        } // constructor
+
+        /****************************************************************************
+         * Record a value (negative values are recorded as 0).
+         * @param v  the value
+         */
+        public void record (long v)
+        {
+            if (v < 0) v = 0;
+            bucket [64 - Long.numberOfLeadingZeros (v)].increment ();
+            total.increment ();
+            sum.add (v);
+            if (v > max.get ()) max.accumulateAndGet (v, Math::max);       // rarely a new max
+        } // record
+
+        public long count ()              { return total.sum (); }
+        public long max ()                { return max.get (); }
+        public double mean ()             { var n = count (); return (n == 0) ? 0.0 : sum.sum () / (double) n; }
+
+        /****************************************************************************
+         * Return (an upper bound on) the p-th percentile of the values recorded.
+         * @param p  the percentile (0 to 100)
+         * @return  the upper bound of the bucket holding the percentile
+         */
+        public long percentile (double p)
+        {
+            var n    = count ();
+            var rank = (long) Math.ceil (p / 100.0 * n);
+            var seen = 0L;
+            for (var b = 0; b < bucket.length; b++) {
+                seen += bucket [b].sum ();
+                if (seen >= rank && seen > 0) return Math.min ((b == 0) ? 0 : (1L << b) - 1, max ());
+            } // for
+            return max ();
+        } // percentile
+
+        void reset ()
+        {
+            for (var b : bucket) b.reset ();
+            total.reset ();
+            sum.reset ();
+            max.set (0);
+        } // reset
+
+        public String toString ()
+        {
+            return String.format ("count = %d, mean = %.1f, p50 <= %d, p99 <= %d, max = %d",
+                                  count (), mean (), percentile (50), percentile (99), max ());
+        } // toString
+
+    } // Histogram class
+
+    //----------------------------------------------------------------------------------
+    // JMX
+    //----------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * The management interface of the metrics.  Histograms are flattened into
+     * "<name>.count", ".mean", ".p50", ".p99" and ".max" entries.
+     */
+    public interface MetricsMXBean
+    {
+        String getLevel ();
+        void setLevel (String level);
+        Map <String, Long> getCounters ();
+        Map <String, Double> getGauges ();
+        Map <String, Double> getHistograms ();
+        void reset ();
+    } // MetricsMXBean interface
+
+    /********************************************************************************
+     * The MXBean registered with the platform MBean server.
+     */
+    private static final class Bean
+            implements MetricsMXBean
+    {
+        public String getLevel ()                   { return level.name (); }
+        public void setLevel (String lev)           { Metrics.setLevel (Level.valueOf (lev.toUpperCase ())); }
+        public void reset ()                        { Metrics.reset (); }
+
+        public Map <String, Long> getCounters ()
+        {
+            var m = new TreeMap <String, Long> ();
+            for (var e : counters.entrySet ()) m.put (e.getKey (), e.getValue ().get ());
+            return m;
+        } // getCounters
+
+        public Map <String, Double> getGauges ()
+        {
+            var m = new TreeMap <String, Double> ();
+            for (var e : gauges.entrySet ()) m.put (e.getKey (), e.getValue ().get ());
+            return m;
+        } // getGauges
+
+        public Map <String, Double> getHistograms ()
+        {
+            var m = new TreeMap <String, Double> ();
+            for (var e : histograms.entrySet ()) {
+                var h = e.getValue ();
+                m.put (e.getKey () + ".count", (double) h.count ());
+                m.put (e.getKey () + ".mean", h.mean ());
+                m.put (e.getKey () + ".p50", (double) h.percentile (50));
+                m.put (e.getKey () + ".p99", (double) h.percentile (99));
+                m.put (e.getKey () + ".max", (double) h.max ());
+            } // for
+            return m;
+        } // getHistograms
+
+    } // Bean class
+
+    /********************************************************************************
+     * The main method used for testing: record some metrics and read them back
+     * through JMX.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args) throws Exception
+    {
+        for (var i = 0; i < 1000; i++) {
+            counter ("test.events").inc ();
+            histogram ("test.latency").record (i);
+        } // for
+        gauge ("test.loadFactor").set (0.75);
+        out.println (report ());
+
+        var server = ManagementFactory.getPlatformMBeanServer ();
+        var name   = new ObjectName ("db:type=Metrics");
+        out.println ("JMX Level = " + server.getAttribute (name, "Level"));
+        out.println ("JMX Counters = " + server.getAttribute (name, "Counters"));
+    } // main
+
+} // Metrics class
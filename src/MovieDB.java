@@ -20,6 +20,7 @@ class MovieDB
      */
     public static void main (String [] args)
     {
+        Metrics.setLevel (Metrics.Level.INFO);                    // show the DDL and RA> lines
         out.println ();
 
         var movie = new Table ("movie", "title year length genre studioName producerNo",
@@ -121,10 +122,21 @@ class MovieDB
         var t_select3 = movie.select ("year == 1977");
         t_select3.print ();
 
+        //--------------------- select: ranges answered from an ordered index on year
+
+        out.println ();
+        movie.createIndex ("year", Table.MapType.TREE_MAP);
+        var t_select4 = movie.select ("year < 1980");
+        t_select4.print ();
+
+        out.println ();
+        var t_select5 = movie.select ("year >= 1980");
+        t_select5.print ();
+
         //--------------------- indexed select: key
 
         out.println ();
-        var t_iselect = movieStar.select (new KeyType ("Harrison_Ford"));
+        var t_iselect = movieStar.select (KeyType.of ("Harrison_Ford"));
         t_iselect.print ();
 
         //--------------------- union: movie UNION cinema
@@ -139,12 +151,30 @@ class MovieDB
         var t_minus = movie.minus (cinema);
         t_minus.print ();
 
+        //--------------------- intersect: movie INTERSECT cinema
+
+        out.println ();
+        var t_intersect = movie.intersect (cinema);
+        t_intersect.print ();
+
+        //--------------------- union all: movie UNION ALL cinema
+
+        out.println ();
+        var t_unionAll = movie.unionAll (cinema);
+        t_unionAll.print ();
+
         //--------------------- equi-join: movie JOIN studio ON studioName = name
 
         out.println ();
         var t_join = movie.join ("studioName", "name", studio);
         t_join.print ();
 
+        //--------------------- sort-merge join: movie JOIN studio ON studioName = name
+
+        out.println ();
+        var t_m_join = movie.m_join ("studioName", "name", studio);
+        t_m_join.print ();
+
         //--------------------- natural join: movie JOIN studio
 
         out.println ();
@@ -0,0 +1,352 @@
+/************************************************************************************
+ * @file Operator.java
+ *
+ * @author  John Miller
+ */
+
+import java.util.*;
+import java.util.function.Predicate;
+
+import static java.lang.System.out;
+
+/************************************************************************************
+ * This class provides pipelined (Volcano-style) execution of relational algebra
+ * operators.  An operator is opened, yields its tuples one at a time through next
+ * (null at the end) and is then closed.  Operators pull tuples from their inputs as
+ * needed, so a chain of scans, selections, projections and joins passes each tuple up
+ * the pipeline without building an intermediate Table; only pipeline breakers (the
+ * build side of a hash join) are materialized.  A pipeline is started from a table
+ * with Table.scan and its result may be collected into a Table with toTable.
+ *
+ * #usage rental.scan ().join ("inventory_id", "inventory_id", inventory.scan ())
+ *                      .join ("film_id", "film_id", film.scan ()).toTable ("rif", key)
+ */
+public abstract class Operator
+{
+    /** The names of the attributes of the tuples produced.
+     */
+    protected final String [] attribute;
+
+    /** The domains of the attributes of the tuples produced.
+     */
+    protected final Class [] domain;
+
+    /********************************************************************************
+     * Construct an operator producing tuples with the given attributes.
+     * @param _attribute  the attribute names
+     * @param _domain     the attribute domains
+     */
+    protected Operator (String [] _attribute, Class [] _domain)
+    {
+        attribute = _attribute;
+        domain    = _domain;
+    } // constructor
+
+    /********************************************************************************
+     * Prepare to produce tuples (opening the inputs).
+     */
+    public abstract void open ();
+
+    /********************************************************************************
+     * Return the next tuple, or null when there are no more.
+     * @return  the next tuple
+     */
+    public abstract Comparable [] next ();
+
+    /********************************************************************************
+     * Release the resources held (closing the inputs).
+     */
+    public abstract void close ();
+
+    /********************************************************************************
+     * Get the names of the attributes of the tuples produced.
+     * @return  the attribute names
+     */
+    public String [] getAttribute ()
+    {
+        return attribute;
+    } // getAttribute
+
+    /********************************************************************************
+     * Get the domains of the attributes of the tuples produced.
+     * @return  the attribute domains
+     */
+    public Class [] getDomain ()
+    {
+        return domain;
+    } // getDomain
+
+    /********************************************************************************
+     * Return the column position of the given attribute.
+     * @param attr  the attribute name
+     * @return  its column position
+     * @throws IllegalArgumentException  if there is no such attribute
+     */
+    public int col (String attr)
+    {
+        for (var j = 0; j < attribute.length; j++) if (attribute [j].equals (attr)) return j;
+        throw new IllegalArgumentException ("col: no attribute " + attr);
+    } // col
+
+    /********************************************************************************
+     * Pipe the tuples through a selection on the given predicate.
+     * @param predicate  the check condition for tuples
+     * @return  the selection operator
+     */
+    public Operator select (Predicate <Comparable []> predicate)
+    {
+        return new Filter (this, predicate);
+    } // select
+
+    /********************************************************************************
+     * Pipe the tuples through a selection on a simple condition ("attr op value"),
+     * compiled once by PredicateCompiler.
+     * @param condition  the check condition, e.g., "rental_rate >= 2.99"
+     * @return  the selection operator
+     */
+    public Operator select (String condition)
+    {
+        var token = condition.split (" ", 3);
+        var j     = col (token [0]);
+        var dom   = (j < domain.length) ? domain [j] : null;
+        return new Filter (this, PredicateCompiler.select (j, token [1], Table.parseOperand (token [2], dom)));
+    } // select
+
+    /********************************************************************************
+     * Pipe the tuples through a projection onto the given attributes.
+     * @param attributes  the attributes to project onto (space separated)
+     * @return  the projection operator
+     */
+    public Operator project (String attributes)
+    {
+        var attrs = attributes.split (" ");
+        var cols  = new int [attrs.length];
+        for (var j = 0; j < attrs.length; j++) cols [j] = col (attrs [j]);
+        return new Project (this, cols);
+    } // project
+
+    /********************************************************************************
+     * Join these tuples (probe side) with those of build (build side) on equality of
+     * the given attributes, using a hash join that materializes only the build side.
+     * @param attributes1  the attributes of these tuples to be compared
+     * @param attributes2  the attributes of the build tuples to be compared
+     * @param build        the build side of the join
+     * @return  the join operator
+     */
+    public Operator join (String attributes1, String attributes2, Operator build)
+    {
+        var a1 = attributes1.split (" ");
+        var a2 = attributes2.split (" ");
+        var c1 = new int [a1.length];
+        var c2 = new int [a2.length];
+        for (var j = 0; j < a1.length; j++) c1 [j] = col (a1 [j]);
+        for (var j = 0; j < a2.length; j++) c2 [j] = build.col (a2 [j]);
+        return new HashJoin (this, build, c1, c2);
+    } // join
+
+    /********************************************************************************
+     * Run the pipeline, collecting its tuples into a new table (timed as the
+     * "pipeline" operation by Metrics).
+     * @param name  the name of the table
+     * @param key   the primary key of the table
+     * @return  the table of the tuples produced
+     */
+    public Table toTable (String name, String [] key)
+    {
+        var op   = Metrics.operator ("pipeline", 0, () -> "pipeline into " + name);
+        var rows = new ArrayList <Comparable []> ();
+        open ();
+        try {
+            for (Comparable [] tup; (tup = next ()) != null; ) rows.add (tup);
+        } finally {
+            close ();
+        } // try
+        return op.end (new Table (name, attribute, domain, key, rows));
+    } // toTable
+
+    //----------------------------------------------------------------------------------
+    // Operators
+    //----------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Scan the tuples of a table.
+     */
+    public static class Scan
+           extends Operator
+    {
+        private final List <Comparable []> tuples;
+        private int i;
+
+        public Scan (Table table)
+        {
+            super (table.getattribute (), table.getDomain ());
+            tuples = table.records ();
+        } // constructor
+
+        public void open ()               { i = 0; }
+        public Comparable [] next ()      { return (i < tuples.size ()) ? tuples.get (i++) : null; }
+        public void close ()              { }
+
+    } // Scan class
+
+    /********************************************************************************
+     * Pass on the input tuples satisfying a predicate.
+     */
+    public static class Filter
+           extends Operator
+    {
+        private final Operator input;
+        private final Predicate <Comparable []> predicate;
+
+        public Filter (Operator _input, Predicate <Comparable []> _predicate)
+        {
+            super (_input.attribute, _input.domain);
+            input     = _input;
+            predicate = _predicate;
+        } // constructor
+
+        public void open ()               { input.open (); }
+        public void close ()              { input.close (); }
+
+        public Comparable [] next ()
+        {
+            for (Comparable [] tup; (tup = input.next ()) != null; ) {
+                if (predicate.test (tup)) return tup;
+            } // for
+            return null;
+        } // next
+
+    } // Filter class
+
+    /********************************************************************************
+     * Pass on the given columns of the input tuples.
+     */
+    public static class Project
+           extends Operator
+    {
+        private final Operator input;
+        private final int [] cols;
+
+        public Project (Operator _input, int [] _cols)
+        {
+            super (pick (_input.attribute, _cols), pick (_input.domain, _cols));
+            input = _input;
+            cols  = _cols;
+        } // constructor
+
+        public void open ()               { input.open (); }
+        public void close ()              { input.close (); }
+
+        public Comparable [] next ()
+        {
+            var tup = input.next ();
+            if (tup == null) return null;
+            var row = new Comparable [cols.length];
+            for (var j = 0; j < cols.length; j++) row [j] = tup [cols [j]];
+            return row;
+        } // next
+
+    } // Project class
+
+    /********************************************************************************
+     * Join the probe tuples with the build tuples having equal values in the given
+     * columns (a pipeline breaker on the build side only): on open, the build side is
+     * read into a hash table; each probe tuple is then joined with its matches as it
+     * arrives.  The output has the probe columns followed by the build columns (whose
+     * names are disambiguated by a numeric suffix).  Null join values do not match.
+     */
+    public static class HashJoin
+           extends Operator
+    {
+        private final Operator probe, build;
+        private final int [] pCols, bCols;
+        private Map <KeyType, List <Comparable []>> table;
+        private Comparable [] cur;                          // the current probe tuple
+        private List <Comparable []> matches;               // its matches
+        private int m;                                      // the next match to join
+
+        public HashJoin (Operator _probe, Operator _build, int [] _pCols, int [] _bCols)
+        {
+            super (Table.concat (_probe.attribute, Table.disambiguate (_probe.attribute, _build.attribute)),
+                   Table.concat (_probe.domain, _build.domain));
+            probe = _probe;
+            build = _build;
+            pCols = _pCols;
+            bCols = _bCols;
+        } // constructor
+
+        public void open ()
+        {
+            table = new HashMap <> ();
+            build.open ();
+            try {
+                for (Comparable [] tup; (tup = build.next ()) != null; ) {
+                    var k = Table.joinKey (tup, bCols);
+                    if (k != null) table.computeIfAbsent (k, x -> new ArrayList <> (1)).add (tup);
+                } // for
+            } finally {
+                build.close ();
+            } // try
+            probe.open ();
+            matches = null;
+        } // open
+
+        public Comparable [] next ()
+        {
+            while (matches == null || m == matches.size ()) {
+                if ((cur = probe.next ()) == null) return null;
+                var k   = Table.joinKey (cur, pCols);
+                matches = (k == null) ? null : table.get (k);
+                m       = 0;
+            } // while
+            return Table.concat (cur, matches.get (m++));
+        } // next
+
+        public void close ()
+        {
+            probe.close ();
+            table   = null;
+            matches = null;
+        } // close
+
+    } // HashJoin class
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Return the elements of an array at the given positions.
+     */
+    private static <T> T [] pick (T [] arr, int [] cols)
+    {
+        var res = Arrays.copyOf (arr, cols.length);
+        for (var j = 0; j < cols.length; j++) res [j] = arr [cols [j]];
+        return res;
+    } // pick
+
+    /********************************************************************************
+     * The main method used for testing: a three-way join pipeline with a selection
+     * and a projection.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+    {
+        var film      = new Table ("film", "film_id title rate", "Integer String Double", "film_id");
+        var inventory = new Table ("inventory", "inventory_id film_id", "Integer Integer", "inventory_id");
+        var rental    = new Table ("rental", "rental_id inventory_id", "Integer Integer", "rental_id");
+        var rand      = new Random (0);
+        for (var i = 0; i < 100; i++)  film.insertAll (List.<Comparable []> of (new Comparable [] { i, "film" + i, 0.99 + i % 3 }));
+        for (var i = 0; i < 400; i++)  inventory.insertAll (List.<Comparable []> of (new Comparable [] { i, rand.nextInt (100) }));
+        for (var i = 0; i < 2000; i++) rental.insertAll (List.<Comparable []> of (new Comparable [] { i, rand.nextInt (400) }));
+
+        var pipeline = rental.scan ()
+                             .join ("inventory_id", "inventory_id", inventory.scan ())
+                             .join ("film_id", "film_id", film.scan ().select ("rate >= 1.99"))
+                             .project ("rental_id title rate");
+        var result   = pipeline.toTable ("rental_film", new String [] { "rental_id" });
+        out.println ("pipeline produced " + result.records ().size () + " tuples with attributes "
+                   + Arrays.toString (result.getattribute ()));
+    } // main
+
+} // Operator class
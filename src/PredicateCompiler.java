@@ -0,0 +1,189 @@
+/************************************************************************************
+ * @file PredicateCompiler.java
+ *
+ * @author  John Miller
+ */
+
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+
+import static java.lang.System.out;
+
+/************************************************************************************
+ * This class compiles simple conditions ("attr op value" for selections and
+ * "attr1 op attr2" for theta joins) into evaluators once per query, so the per-tuple
+ * work is a single monomorphic call rather than a switch on the operator string and
+ * calls through Comparable.compareTo on boxed values.  The comparison operator is
+ * resolved at compile time to a lambda specialized for the value type: primitive
+ * comparisons for int, long and double, a direct String comparison for strings and
+ * compareTo otherwise.  Null values satisfy no condition.
+ */
+public class PredicateCompiler
+{
+    /********************************************************************************
+     * A compiled comparison of two int values.
+     */
+    @FunctionalInterface
+    public interface IntTest
+    {
+        boolean test (int a, int b);
+    } // IntTest interface
+
+    /********************************************************************************
+     * A compiled comparison of two long values.
+     */
+    @FunctionalInterface
+    public interface LongTest
+    {
+        boolean test (long a, long b);
+    } // LongTest interface
+
+    /********************************************************************************
+     * A compiled comparison of two double values (ordered as by Double.compareTo).
+     */
+    @FunctionalInterface
+    public interface DoubleTest
+    {
+        boolean test (double a, double b);
+    } // DoubleTest interface
+
+    /********************************************************************************
+     * Compile the comparison operator for int values.
+     * @param op  the comparison operator (==, !=, <, <=, >, >=)
+     * @return  the comparison
+     */
+    public static IntTest intTest (String op)
+    {
+        return switch (op) {
+            case "==" -> (a, b) -> a == b;
+            case "!=" -> (a, b) -> a != b;
+            case "<"  -> (a, b) -> a < b;
+            case "<=" -> (a, b) -> a <= b;
+            case ">"  -> (a, b) -> a > b;
+            case ">=" -> (a, b) -> a >= b;
+            default   -> { unsupported (op); yield (a, b) -> false; }
+        }; // switch
+    } // intTest
+
+    /********************************************************************************
+     * Compile the comparison operator for long values.
+     * @param op  the comparison operator (==, !=, <, <=, >, >=)
+     * @return  the comparison
+     */
+    public static LongTest longTest (String op)
+    {
+        return switch (op) {
+            case "==" -> (a, b) -> a == b;
+            case "!=" -> (a, b) -> a != b;
+            case "<"  -> (a, b) -> a < b;
+            case "<=" -> (a, b) -> a <= b;
+            case ">"  -> (a, b) -> a > b;
+            case ">=" -> (a, b) -> a >= b;
+            default   -> { unsupported (op); yield (a, b) -> false; }
+        }; // switch
+    } // longTest
+
+    /********************************************************************************
+     * Compile the comparison operator for double values.  Values are ordered as by
+     * Double.compareTo (so NaN equals itself), matching comparisons of boxed values.
+     * @param op  the comparison operator (==, !=, <, <=, >, >=)
+     * @return  the comparison
+     */
+    public static DoubleTest doubleTest (String op)
+    {
+        return switch (op) {
+            case "==" -> (a, b) -> Double.compare (a, b) == 0;
+            case "!=" -> (a, b) -> Double.compare (a, b) != 0;
+            case "<"  -> (a, b) -> Double.compare (a, b) < 0;
+            case "<=" -> (a, b) -> Double.compare (a, b) <= 0;
+            case ">"  -> (a, b) -> Double.compare (a, b) > 0;
+            case ">=" -> (a, b) -> Double.compare (a, b) >= 0;
+            default   -> { unsupported (op); yield (a, b) -> false; }
+        }; // switch
+    } // doubleTest
+
+    /********************************************************************************
+     * Compile the comparison operator for arbitrary (boxed) values, using equals for
+     * == and != and compareTo otherwise.  A null on either side gives false.
+     * @param op  the comparison operator (==, !=, <, <=, >, >=)
+     * @return  the comparison
+     */
+    @SuppressWarnings ("unchecked")
+    public static BiPredicate <Comparable, Comparable> valueTest (String op)
+    {
+        return switch (op) {
+            case "==" -> (a, b) -> a != null && b != null && a.equals (b);
+            case "!=" -> (a, b) -> a != null && b != null && ! a.equals (b);
+            case "<"  -> (a, b) -> a != null && b != null && a.compareTo (b) < 0;
+            case "<=" -> (a, b) -> a != null && b != null && a.compareTo (b) <= 0;
+            case ">"  -> (a, b) -> a != null && b != null && a.compareTo (b) > 0;
+            case ">=" -> (a, b) -> a != null && b != null && a.compareTo (b) >= 0;
+            default   -> { unsupported (op); yield (a, b) -> false; }
+        }; // switch
+    } // valueTest
+
+    /********************************************************************************
+     * Compile the selection condition "tuple [col] op operand" into a predicate on
+     * tuples, specialized for the operand's type.  Values of another type than the
+     * operand (e.g., in a column with mixed types) fall back to a generic comparison.
+     * @param col      the column of the attribute
+     * @param op       the comparison operator (==, !=, <, <=, >, >=)
+     * @param operand  the (non-null) value to compare with
+     * @return  the predicate
+     */
+    public static Predicate <Comparable []> select (int col, String op, Comparable operand)
+    {
+        var generic = valueTest (op);
+        if (operand instanceof Integer v) {
+            int b = v;
+            var test = intTest (op);
+            return t -> (t [col] instanceof Integer a) ? test.test (a, b) : generic.test (t [col], operand);
+        } else if (operand instanceof Long v) {
+            long b = v;
+            var test = longTest (op);
+            return t -> (t [col] instanceof Long a) ? test.test (a, b) : generic.test (t [col], operand);
+        } else if (operand instanceof Double v) {
+            double b = v;
+            var test = doubleTest (op);
+            return t -> (t [col] instanceof Double a) ? test.test (a, b) : generic.test (t [col], operand);
+        } else if (operand instanceof String b) {
+            var test = intTest (op);
+            return t -> (t [col] instanceof String a) ? test.test (a.compareTo (b), 0) : generic.test (t [col], operand);
+        } // if
+        return t -> generic.test (t [col], operand);
+    } // select
+
+    /********************************************************************************
+     * Report an unsupported operator (once per compilation rather than per tuple).
+     * @param op  the operator
+     */
+    private static void unsupported (String op)
+    {
+        out.println ("Unsupported operator: " + op);
+    } // unsupported
+
+    /********************************************************************************
+     * The main method used for testing: compare compiled predicates with boxed
+     * comparisons.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+    {
+        Comparable [][] tups = { { 1, 2L, 2.5, "b" }, { 3, 1L, -0.0, "a" }, { null, null, null, null } };
+        Comparable [] operands = { 2, 1L, 0.0, "ab" };
+        var bad = 0;
+        for (var op : new String [] { "==", "!=", "<", "<=", ">", ">=" }) {
+            for (var col = 0; col < operands.length; col++) {
+                var pred = select (col, op, operands [col]);
+                for (var t : tups) {
+                    if (pred.test (t) != valueTest (op).test (t [col], operands [col])) {
+                        out.println ("mismatch: " + t [col] + " " + op + " " + operands [col]);
+                        bad++;
+                    } // if
+                } // for
+            } // for
+        } // for
+        out.println ("mismatches = " + bad);
+    } // main
+
+} // PredicateCompiler class
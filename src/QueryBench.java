@@ -0,0 +1,335 @@
+/************************************************************************************
+ * @file QueryBench.java
+ *
+ * @author  John Miller
+ */
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/************************************************************************************
+ * This class provides a micro-benchmark harness for the six pagila queries in
+ * set_of_queries.sql, run across the index map types, data sizes and join algorithms
+ * (indexed i_join vs. nested loop join).  In the manner of JMH, each benchmark runs in
+ * several forked JVMs, each with warm-up iterations followed by timed measurement
+ * iterations, and reports throughput (ops/s) and average time (ms/op) with 99.9%
+ * confidence intervals.  Standard output is silenced while tables are loaded and
+ * queries are timed.  The data fixtures are read from tab-separated dump files
+ * (PostgreSQL COPY text format: one tuple per line, \N for null) in the data directory,
+ * so no database server is needed; synthetic pagila-shaped fixtures may be generated.
+ *
+ * #usage java QueryBench --generate 1                     (write data/*.tsv, scale 1)
+ * #usage java QueryBench -q 1,2 -maps HASH_MAP,TREE_MAP -sizes 500,2500 -f 2 -wi 3 -i 5
+ */
+public class QueryBench
+{
+    /** The directory holding the data fixtures.
+     */
+    private static String dataDir = "data";
+
+    /** The names of the pagila tables used by the queries (in creation order).
+     */
+    static final String [] TABLES = { "actor", "film", "film_actor", "customer", "inventory", "rental" };
+
+    /** The film selected by queries 5 and 6 (title 'CHICAGO NORTH').
+     */
+    static final int CHICAGO_NORTH = 141;
+
+    /** Sink for query results (prevents dead-code elimination of the queries).
+     */
+    private static volatile long sink;
+
+    /************************************************************************************
+     * Make the (empty) pagila tables used by the queries.
+     *
+     * @return  the tables in the order of TABLES
+     */
+    static Table [] makeTables ()
+    {
+        return new Table [] {
+            new Table ("actor", "actor_id first_name last_name last_update",
+                       "Integer String String String", "actor_id"),
+            new Table ("film", "film_id title description release_year language_id original_language_id " +
+                       "rental_duration rental_rate length replacement_cost rating last_update special_features fulltext",
+                       "Integer String String Integer Integer Integer Integer Double Integer Double String String String String",
+                       "film_id"),
+            new Table ("film_actor", "actor_id film_id last_updated",
+                       "Integer Integer String", "actor_id film_id"),
+            new Table ("customer", "customer_id store_id first_name last_name email address_id activebool " +
+                       "create_date last_update active",
+                       "Integer Integer String String String Integer Boolean String String Integer", "customer_id"),
+            new Table ("inventory", "inventory_id film_id store_id last_update",
+                       "Integer Integer Integer String", "inventory_id"),
+            new Table ("rental", "rental_id rental_date inventory_id customer_id return_date staff_id last_update",
+                       "Integer String Integer Integer String Integer String", "rental_id") };
+    } // makeTables
+
+    /************************************************************************************
+     * Run query q (1 to 6 from set_of_queries.sql) on the loaded tables.
+     *
+     * @param q        the query number
+     * @param t        the loaded tables (in the order of TABLES)
+     * @param indexed  whether to use indexed joins (i_join) or nested loop joins (join)
+     * @return  the result of the query
+     */
+    static Table query (int q, Table [] t, boolean indexed)
+    {
+        Table actor = t [0], film = t [1], film_actor = t [2], customer = t [3], inventory = t [4], rental = t [5];
+        return switch (q) {
+            case 1  -> join (film, "film_id == film_id", film_actor, indexed);
+            case 2  -> join (join (rental, "inventory_id == inventory_id", inventory, indexed),
+                             "film_id == film_id", film, indexed);
+            case 3  -> join (join (film, "film_id == film_id", film_actor, indexed),
+                             "actor_id == actor_id", actor, indexed);
+            case 4  -> join (join (join (rental, "inventory_id == inventory_id", inventory, indexed),
+                                   "film_id == film_id", film, indexed),
+                             "customer_id == customer_id", customer, indexed);
+            case 5  -> join (join (film_actor, "film_id == film_id", film.select (KeyType.of (CHICAGO_NORTH)), indexed),
+                             "actor_id == actor_id", actor, indexed);
+            case 6  -> join (join (join (rental, "inventory_id == inventory_id", inventory, indexed),
+                                   "film_id == film_id", film.select (KeyType.of (CHICAGO_NORTH)), indexed),
+                             "customer_id == customer_id", customer, indexed);
+            default -> throw new IllegalArgumentException ("query: no query " + q);
+        }; // switch
+    } // query
+
+    /************************************************************************************
+     * Join two tables using either the indexed join or the nested loop join.
+     */
+    private static Table join (Table t1, String condition, Table t2, boolean indexed)
+    {
+        return indexed ? t1.i_join (condition, t2) : t1.join (condition, t2);
+    } // join
+
+    /************************************************************************************
+     * Run one fork of a benchmark in this JVM: load the fixtures, run the warm-up and
+     * measurement iterations and print one "SAMPLE ops nanos" line per measurement.
+     *
+     * @param q         the query number
+     * @param mType     the map type for the indices
+     * @param size      the maximum number of tuples loaded per table
+     * @param indexed   whether to use indexed joins
+     * @param warmups   the number of warm-up iterations
+     * @param iters     the number of measurement iterations
+     * @param iterTime  the minimum duration of an iteration (ms)
+     */
+    private static void runFork (int q, Table.MapType mType, int size, boolean indexed,
+                                 int warmups, int iters, long iterTime)
+        throws IOException
+    {
+        var realOut = System.out;
+        System.setOut (new PrintStream (OutputStream.nullOutputStream ()));   // silence DDL/DML/RA logging
+        Table.setMapType (mType);
+        var t = makeTables ();
+        new BulkLoader (new BulkLoader.DumpSource (new File (dataDir)), t.length, 1000).load (size, t);
+
+        for (var i = 0; i < warmups + iters; i++) {
+            long ops = 0, start = System.nanoTime (), elapsed;
+            do {
+                sink += query (q, t, indexed).records ().size ();
+                ops++;
+            } while ((elapsed = System.nanoTime () - start) < iterTime * 1_000_000);
+            if (i >= warmups) realOut.println ("SAMPLE " + ops + " " + elapsed);
+        } // for
+        realOut.flush ();
+    } // runFork
+
+    /************************************************************************************
+     * Run a benchmark in the given number of forked JVMs and collect the samples
+     * (each sample is { ops, nanos }).
+     */
+    private static List <long []> runForks (int forks, int q, Table.MapType mType, int size, boolean indexed,
+                                            int warmups, int iters, long iterTime)
+        throws IOException, InterruptedException
+    {
+        var java    = ProcessHandle.current ().info ().command ().orElse ("java");
+        var samples = new ArrayList <long []> ();
+        for (var f = 0; f < forks; f++) {
+            var pb = new ProcessBuilder (java, "-cp", System.getProperty ("java.class.path"), "QueryBench", "--fork",
+                                         "" + q, mType.name (), "" + size, indexed ? "INDEXED" : "NESTED",
+                                         "" + warmups, "" + iters, "" + iterTime, dataDir);
+            pb.redirectError (ProcessBuilder.Redirect.INHERIT);
+            var proc = pb.start ();
+            try (var in = new BufferedReader (new InputStreamReader (proc.getInputStream ()))) {
+                String line;
+                while ((line = in.readLine ()) != null) {
+                    if (! line.startsWith ("SAMPLE ")) continue;
+                    var p = line.split (" ");
+                    samples.add (new long [] { Long.parseLong (p [1]), Long.parseLong (p [2]) });
+                } // while
+            } // try
+            if (proc.waitFor () != 0) throw new IllegalStateException ("runForks: fork " + f + " failed");
+        } // for
+        return samples;
+    } // runForks
+
+    /************************************************************************************
+     * Return { mean, error } where error is the half-width of the 99.9% confidence
+     * interval for the mean (Student's t distribution).
+     */
+    private static double [] meanError (double [] x)
+    {
+        var n    = x.length;
+        var mean = Arrays.stream (x).average ().orElse (Double.NaN);
+        if (n < 2) return new double [] { mean, Double.NaN };
+        var ss = 0.0;
+        for (var v : x) ss += (v - mean) * (v - mean);
+        var sd = Math.sqrt (ss / (n - 1));
+        return new double [] { mean, tCritical (n - 1) * sd / Math.sqrt (n) };
+    } // meanError
+
+    /************************************************************************************
+     * Return the 0.9995 quantile of Student's t distribution with df degrees of freedom.
+     */
+    private static double tCritical (int df)
+    {
+        final double [] T = { 636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587,
+                              4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850,
+                              3.819, 3.792, 3.768, 3.745, 3.725, 3.707, 3.690, 3.674, 3.659, 3.646 };
+        if (df <= T.length) return T [df - 1];
+        if (df <= 40)  return 3.551;
+        if (df <= 60)  return 3.460;
+        if (df <= 120) return 3.373;
+        return 3.291;
+    } // tCritical
+
+    /************************************************************************************
+     * Generate synthetic pagila-shaped fixtures (with consistent foreign keys) in the
+     * data directory.  Scale 1 gives the pagila cardinalities (1000 films, 200 actors,
+     * 599 customers, 4581 inventory items, 16044 rentals).  Film 141 is CHICAGO NORTH.
+     *
+     * @param scale  the scale factor
+     */
+    static void generate (int scale)
+        throws IOException
+    {
+        var rng = new Random (6370);
+        int nFilm = 1000 * scale, nActor = 200 * scale, nCust = 599 * scale;
+        int nInv  = 4581 * scale, nRent = 16044 * scale;
+        var ts    = "2022-02-15 09:34:33";
+        String [] rating = { "G", "PG", "PG-13", "R", "NC-17" };
+        new File (dataDir).mkdirs ();
+
+        try (var w = writer ("actor")) {
+            for (var a = 1; a <= nActor; a++) w.println (a + "\tFIRST" + a + "\tLAST" + (a % 120) + "\t" + ts);
+        } // try
+        try (var w = writer ("film")) {
+            for (var f = 1; f <= nFilm; f++) {
+                var title = (f == CHICAGO_NORTH) ? "CHICAGO NORTH" : "FILM " + f;
+                w.println (f + "\t" + title + "\tA film numbered " + f + "\t2006\t1\t\\N\t" + (3 + f % 5) + "\t" +
+                           (0.99 + 2 * (f % 3)) + "\t" + (46 + f % 140) + "\t" + (9.99 + f % 21) + "\t" +
+                           rating [f % 5] + "\t" + ts + "\t{Trailers}\t'film':1 '" + f + "':2");
+            } // for
+        } // try
+        try (var w = writer ("film_actor")) {
+            for (var a = 1; a <= nActor; a++) {
+                var films = new TreeSet <Integer> ();
+                var n     = 15 + rng.nextInt (25);                           // about 27 films per actor
+                while (films.size () < n) films.add (1 + rng.nextInt (nFilm));
+                if (a % 20 == 0) films.add (CHICAGO_NORTH);
+                for (var f : films) w.println (a + "\t" + f + "\t" + ts);
+            } // for
+        } // try
+        try (var w = writer ("customer")) {
+            for (var c = 1; c <= nCust; c++) {
+                w.println (c + "\t" + (1 + c % 2) + "\tCFIRST" + c + "\tCLAST" + c + "\tc" + c + "@example.org\t" +
+                           (5 + c) + "\tt\t2022-02-14\t" + ts + "\t1");
+            } // for
+        } // try
+        try (var w = writer ("inventory")) {
+            for (var i = 1; i <= nInv; i++) w.println (i + "\t" + (1 + rng.nextInt (nFilm)) + "\t" + (1 + i % 2) + "\t" + ts);
+        } // try
+        try (var w = writer ("rental")) {
+            for (var r = 1; r <= nRent; r++) {
+                var day = String.format ("2022-%02d-%02d %02d:00:00", 5 + r * 4 / nRent, 1 + r % 28, r % 24);
+                w.println (r + "\t" + day + "\t" + (1 + rng.nextInt (nInv)) + "\t" + (1 + rng.nextInt (nCust)) + "\t" +
+                           (r % 100 == 0 ? "\\N" : day) + "\t" + (1 + r % 2) + "\t" + ts);
+            } // for
+        } // try
+    } // generate
+
+    /************************************************************************************
+     * Open a writer for the dump file of the named table.
+     */
+    private static PrintWriter writer (String table)
+        throws IOException
+    {
+        return new PrintWriter (new BufferedWriter (new OutputStreamWriter (
+                   new FileOutputStream (new File (dataDir, table + ".tsv")), StandardCharsets.UTF_8)));
+    } // writer
+
+    /************************************************************************************
+     * The main method runs the benchmarks (or one fork, or the fixture generator).
+     * Options: -q queries, -maps map types, -sizes tuples per table, -algo INDEXED/NESTED,
+     * -f forks, -wi warm-up iterations, -i measurement iterations, -t iteration time (ms),
+     * -data data directory, --generate scale.
+     *
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+        throws Exception
+    {
+        if (args.length > 0 && args [0].equals ("--fork")) {
+            dataDir = args [8];
+            runFork (Integer.parseInt (args [1]), Table.MapType.valueOf (args [2]), Integer.parseInt (args [3]),
+                     args [4].equals ("INDEXED"), Integer.parseInt (args [5]), Integer.parseInt (args [6]),
+                     Long.parseLong (args [7]));
+            return;
+        } // if
+
+        var queries = "1,2,3,4,5,6";
+        var maps    = "NO_MAP,TREE_MAP,HASH_MAP,LINHASH_MAP";
+        var sizes   = "500,2500";
+        var algos   = "INDEXED";
+        int forks = 2, warmups = 3, iters = 5, iterTime = 1000, scale = -1;
+
+        for (var i = 0; i < args.length - 1; i += 2) {
+            switch (args [i]) {
+            case "-q"         -> queries  = args [i+1];
+            case "-maps"      -> maps     = args [i+1];
+            case "-sizes"     -> sizes    = args [i+1];
+            case "-algo"      -> algos    = args [i+1];
+            case "-f"         -> forks    = Integer.parseInt (args [i+1]);
+            case "-wi"        -> warmups  = Integer.parseInt (args [i+1]);
+            case "-i"         -> iters    = Integer.parseInt (args [i+1]);
+            case "-t"         -> iterTime = Integer.parseInt (args [i+1]);
+            case "-data"      -> dataDir  = args [i+1];
+            case "--generate" -> scale    = Integer.parseInt (args [i+1]);
+            default           -> throw new IllegalArgumentException ("QueryBench: unknown option " + args [i]);
+            } // switch
+        } // for
+
+        if (scale > 0) {
+            generate (scale);
+            System.out.println ("QueryBench: generated fixtures at scale " + scale + " in " + dataDir);
+            return;
+        } // if
+
+        System.out.printf ("%-5s %-12s %6s %-8s %-6s %4s %14s %12s  %s%n",
+                           "Query", "Map", "Size", "Algo", "Mode", "Cnt", "Score", "Error", "Units");
+        for (var q : queries.split (",")) {
+            for (var algo : algos.split (",")) {
+                for (var m : maps.split (",")) {
+                    for (var size : sizes.split (",")) {
+                        var s = runForks (forks, Integer.parseInt (q), Table.MapType.valueOf (m), Integer.parseInt (size),
+                                          algo.equals ("INDEXED"), warmups, iters, iterTime);
+                        var thrpt = new double [s.size ()];
+                        var avgt  = new double [s.size ()];
+                        for (var k = 0; k < s.size (); k++) {
+                            thrpt [k] = s.get (k) [0] * 1e9 / s.get (k) [1];
+                            avgt [k]  = s.get (k) [1] / 1e6 / s.get (k) [0];
+                        } // for
+                        var tp = meanError (thrpt);
+                        var at = meanError (avgt);
+                        System.out.printf ("q%-4s %-12s %6s %-8s %-6s %4d %14.3f +- %10.3f  ops/s%n",
+                                           q, m, size, algo, "thrpt", s.size (), tp [0], tp [1]);
+                        System.out.printf ("q%-4s %-12s %6s %-8s %-6s %4d %14.3f +- %10.3f  ms/op%n",
+                                           q, m, size, algo, "avgt", s.size (), at [0], at [1]);
+                    } // for
+                } // for
+            } // for
+        } // for
+    } // main
+
+} // QueryBench class
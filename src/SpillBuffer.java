@@ -0,0 +1,230 @@
+/************************************************************************************
+ * @file SpillBuffer.java
+ *
+ * @author  John Miller
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static java.lang.System.out;
+
+/************************************************************************************
+ * This class provides an append-only buffer of tuples that is held in memory until it
+ * is told to spill, after which the buffered tuples (and any later ones) are written
+ * to a temporary file in the storage directory.  It is used by operators (e.g., the
+ * hash join) that must stay within a memory budget.  Reading the buffer back always
+ * yields the tuples in the order they were added.
+ *
+ * The spill file is a sequence of pages written and read through the shared
+ * BufferPool: each tuple is stored as its length followed by its TupleCodec encoding,
+ * and may run on from one page to the next.
+ */
+public class SpillBuffer
+       implements Iterable <Comparable []>, Closeable
+{
+    /** Relative path for storage directory (where spill files are placed)
+     */
+    private static final String DIR = "store" + File.separator;
+
+    /** The size of a page of the spill file.
+     */
+    private static final int PAGE_SIZE = BufferPool.PAGE_SIZE;
+
+    /** The prefix for the name of the spill file.
+     */
+    private final String prefix;
+
+    /** The tuples held in memory (null once spilled).
+     */
+    private List <Comparable []> mem = new ArrayList <> ();
+
+    /** The spill file and its channel (null until spilled).
+     */
+    private File file;
+    private FileChannel ch;
+
+    /** The buffer pool the pages are written through and the id of the spill file.
+     */
+    private final BufferPool pool = BufferPool.shared ();
+    private int fid = -1;
+
+    /** The total number of tuples added.
+     */
+    private int size = 0;
+
+    /** The number of bytes written to the spill file.
+     */
+    private long written = 0;
+
+    /********************************************************************************
+     * Construct an empty, in-memory spill buffer.
+     * @param _prefix  the prefix for the name of the spill file (at least 3 chars)
+     */
+    public SpillBuffer (String _prefix)
+    {
+        prefix = _prefix;
+    } // constructor
+
+    /********************************************************************************
+     * Add a tuple to the end of the buffer (to the spill file if already spilled).
+     * @param tup  the tuple to add
+     */
+    public void add (Comparable [] tup)
+    {
+        if (mem != null) mem.add (tup);
+        else             write (tup);
+        size++;
+    } // add
+
+    /********************************************************************************
+     * Return the number of tuples added to the buffer.
+     * @return  the number of tuples
+     */
+    public int size ()
+    {
+        return size;
+    } // size
+
+    /********************************************************************************
+     * Return whether the buffer is still entirely held in memory.
+     * @return  whether the buffer has not spilled
+     */
+    public boolean inMemory ()
+    {
+        return mem != null;
+    } // inMemory
+
+    /********************************************************************************
+     * Return the number of tuples currently held in memory.
+     * @return  the number of in-memory tuples
+     */
+    public int memSize ()
+    {
+        return (mem != null) ? mem.size () : 0;
+    } // memSize
+
+    /********************************************************************************
+     * Spill the buffer: write the in-memory tuples to a new temporary file in the
+     * storage directory and direct all later tuples to that file.
+     */
+    public void spill ()
+    {
+        if (mem == null) return;
+        try {
+            new File (DIR).mkdirs ();
+            file = File.createTempFile (prefix, ".spill", new File (DIR));
+            ch   = FileChannel.open (file.toPath (), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            fid  = pool.register (ch);
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("spill: unable to create spill file", ex);
+        } // try
+        var tups = mem;
+        mem = null;
+        for (var tup : tups) write (tup);
+    } // spill
+
+    /********************************************************************************
+     * Return an iterator over the tuples in the order added.  For a spilled buffer,
+     * the pages are read sequentially through the buffer pool (it may be iterated
+     * more than once).
+     * @return  an iterator over the tuples
+     */
+    public Iterator <Comparable []> iterator ()
+    {
+        if (mem != null) return mem.iterator ();
+        return new Iterator <Comparable []> () {
+            int  i   = 0;
+            long pos = 0;                                                    // read position in the file
+
+            public boolean hasNext ()
+            {
+                return i < size;
+            } // hasNext
+
+            public Comparable [] next ()
+            {
+                if (i >= size) throw new NoSuchElementException ();
+                i++;
+                var len = ByteBuffer.wrap (read (pos, 4)).getInt ();
+                var b   = read (pos + 4, len);
+                pos    += 4 + len;
+                return TupleCodec.decode (ByteBuffer.wrap (b));
+            } // next
+        };
+    } // iterator
+
+    /********************************************************************************
+     * Release the buffer, deleting its spill file (if any).
+     */
+    public void close ()
+    {
+        if (ch != null) {
+            pool.unregister (fid, false);
+            try {
+                ch.close ();
+            } catch (IOException ex) {
+                out.println ("spill: IO Exception on close");
+            } // try
+            ch = null;
+        } // if
+        if (file != null) { file.delete (); file = null; }
+        mem     = new ArrayList <> ();
+        size    = 0;
+        written = 0;
+    } // close
+
+    /********************************************************************************
+     * Write one tuple (its length and encoding) to the end of the spill file.
+     * @param tup  the tuple to write
+     */
+    private void write (Comparable [] tup)
+    {
+        var b = TupleCodec.encode (tup);
+        put (ByteBuffer.allocate (4).putInt (b.length).array ());
+        put (b);
+    } // write
+
+    /********************************************************************************
+     * Append the bytes to the spill file, page by page.
+     * @param b  the bytes to append
+     */
+    private void put (byte [] b)
+    {
+        for (var off = 0; off < b.length; ) {
+            var p   = written / PAGE_SIZE;
+            var at  = (int) (written % PAGE_SIZE);
+            var f   = (at == 0) ? pool.pinNew (fid, p) : pool.pin (fid, p);
+            var n   = Math.min (b.length - off, PAGE_SIZE - at);
+            System.arraycopy (b, off, f.buffer ().array (), at, n);
+            pool.unpin (f, true);
+            off     += n;
+            written += n;
+        } // for
+    } // put
+
+    /********************************************************************************
+     * Read bytes from the spill file, page by page.
+     * @param pos  the position to read from
+     * @param len  the number of bytes to read
+     * @return  the bytes read
+     */
+    private byte [] read (long pos, int len)
+    {
+        var b = new byte [len];
+        for (var off = 0; off < len; ) {
+            var f  = pool.pin (fid, pos / PAGE_SIZE);
+            var at = (int) (pos % PAGE_SIZE);
+            var n  = Math.min (len - off, PAGE_SIZE - at);
+            System.arraycopy (f.buffer ().array (), at, b, off, n);
+            pool.unpin (f, false);
+            off += n;
+            pos += n;
+        } // for
+        return b;
+    } // read
+
+} // SpillBuffer class
@@ -7,6 +7,7 @@
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.function.*;
 import java.util.stream.*;
 
@@ -21,7 +22,7 @@ import static java.lang.System.out;
  * Missing are update and delete data manipulation operators.
  */
 public class Table
-        implements Serializable
+        implements Serializable, Closeable
 {
     /** Relative path for storage directory
      */
@@ -31,6 +32,10 @@ public class Table
      */
     private static final String EXT = ".dbf";
 
+    /** Filename extension for write-ahead log files
+     */
+    private static final String LOG_EXT = ".wal";
+
     /** Counter for naming temporary tables.
      */
     private static int count = 0;
@@ -58,9 +63,49 @@ public class Table
      */
     private final String [] key;
 
-    /** Index into tuples (maps key to tuple).
+    /** Index into tuples (maps key to tuple).  It is made on first use (see index ()),
+     *  so derived tables that are never looked up by key have none.
+     */
+    private Map <KeyType, Comparable []> index;
+
+    /** The table file a loaded table's tuples are read from (null if not loaded); it
+     *  stays open (registered with the buffer pool) until the table is closed.
+     */
+    private transient TableFile tableFile;
+
+    /** The type of map to make the index with (the map type when the table was made).
+     */
+    private final MapType indexType = mType;
+
+    /** Whether the index must be built (from tuples) before it is next used, i.e., it
+     *  was made after tuples were added (e.g., loaded from a file or given as a list).
+     */
+    private boolean indexStale;
+
+    /** The function making the primary key of a tuple, specialized for the key's
+     *  domains (see KeyType.maker); made on first use.
+     */
+    private transient Function <Comparable [], KeyType> keyMaker;
+
+    /** Secondary indices on (non-key) attributes: for each indexed attribute, a map
+     *  from each (non-null) value to the tuples having that value.
+     */
+    private final Map <String, Map <Comparable, List <Comparable []>>> secondary = new LinkedHashMap <> ();
+
+    /** The write-ahead log that inserts are recorded in before they are applied (null
+     *  if the table is not logged); see openLog.
+     */
+    private transient WriteAheadLog wal;
+
+    /** The zone maps (per block min/max) on the columns, each made when a select on
+     *  its column first scans the table (null until then), then kept current on insert.
      */
-    private final Map <KeyType, Comparable []> index;
+    private transient ZoneMap [] zoneMap;
+
+    /** The number of blocks skipped and scanned by selects using zone maps.
+     */
+    private static final Metrics.Counter BLOCKS_SKIPPED = Metrics.counter ("zonemap.blocksSkipped");
+    private static final Metrics.Counter BLOCKS_SCANNED = Metrics.counter ("zonemap.blocksScanned");
 
     public String[] getattribute() {
         return attribute;
@@ -71,28 +116,158 @@ public class Table
         return tuples;
     }
 
+    /** The number of rows inserted into tables (by insert and insertAll).
+     */
+    private static final Metrics.Counter ROWS_INSERTED = Metrics.counter ("table.rowsInserted");
+
     /** The supported map types.
      */
-    private enum MapType { NO_MAP, HASH_MAP, TREE_MAP, LINHASH_MAP, BPTREE_MAP }
+    public enum MapType { NO_MAP, HASH_MAP, TREE_MAP, LINHASH_MAP, BPTREE_MAP, CONC_LINHASH_MAP, DISK_LINHASH_MAP }
+
+    /** The map type to be used for indices.  Change as needed (or use setMapType).
+     */
+    private static MapType mType = MapType.LINHASH_MAP;
+
+    /************************************************************************************
+     * Set the map type to be used for the indices of tables created from now on.
+     *
+     * @param _mType  the map type
+     */
+    public static void setMapType (MapType _mType)
+    {
+        mType = _mType;
+    } // setMapType
+
+    /** The supported storage layouts for tuples: row-oriented (ArrayList of tuples)
+     *  or column-oriented (ColumnStore with one array per attribute).
+     */
+    public enum StoreType { ROW_STORE, COLUMN_STORE }
+
+    /** The storage layout used for newly created tables.
+     */
+    private static StoreType sType = StoreType.ROW_STORE;
+
+    /** The number of partitions used by the hash join (h_join).
+     */
+    private static int hjPartitions = 16;
+
+    /** The memory budget for the hash join (h_join): the maximum number of build tuples
+     *  held in memory at once.
+     */
+    private static int hjBudget = 100_000;
+
+    /************************************************************************************
+     * Configure the hash join (h_join).
+     *
+     * @param partitions  the number of hash partitions
+     * @param budget      the maximum number of build tuples held in memory at once
+     */
+    public static void setHashJoin (int partitions, int budget)
+    {
+        if (partitions < 1 || budget < 1) throw new IllegalArgumentException ("setHashJoin: must be positive");
+        hjPartitions = partitions;
+        hjBudget     = budget;
+    } // setHashJoin
+
+    /** The memory budget for the sort-merge join (m_join): the maximum number of tuples
+     *  held in memory at once while sorting an input.
+     */
+    private static int mjBudget = 100_000;
+
+    /************************************************************************************
+     * Configure the sort-merge join (m_join).
+     *
+     * @param budget  the maximum number of tuples held in memory at once while sorting
+     */
+    public static void setMergeJoin (int budget)
+    {
+        if (budget < 1) throw new IllegalArgumentException ("setMergeJoin: must be positive");
+        mjBudget = budget;
+    } // setMergeJoin
+
+    /** The default degree of parallelism for the indexed join (i_join) and the set
+     *  operators (union, minus, intersect) in this session.
+     */
+    private static int parallelism = 1;
+
+    /** The fork/join pools used by the parallel operators, one per degree of parallelism
+     *  (other than the common pool's).
+     */
+    private static final Map <Integer, ForkJoinPool> forkJoinPools = new ConcurrentHashMap <> ();
+
+    /************************************************************************************
+     * Set the default degree of parallelism for the indexed join (i_join) and the set
+     * operators (union, minus, intersect).
+     *
+     * @param dop  the degree of parallelism (1 => sequential)
+     */
+    public static void setParallelism (int dop)
+    {
+        if (dop < 1) throw new IllegalArgumentException ("setParallelism: dop must be positive");
+        parallelism = dop;
+    } // setParallelism
+
+    /************************************************************************************
+     * Set the storage layout to be used for tables created from now on.
+     *
+     * @param _sType  the storage layout (ROW_STORE or COLUMN_STORE)
+     */
+    public static void setStoreType (StoreType _sType)
+    {
+        sType = _sType;
+    } // setStoreType
 
-    /** The map type to be used for indices.  Change as needed.
+    /************************************************************************************
+     * Make a list (storage) for tuples given the StoreType.
+     *
+     * @param _domain  the domains of the attributes
      */
-    private static final MapType mType = MapType.LINHASH_MAP;
+    private static List <Comparable []> makeStore (Class [] _domain)
+    {
+        return switch (sType) {
+            case COLUMN_STORE -> new ColumnStore (_domain);
+            default           -> new ArrayList <> ();
+        }; // switch
+    } // makeStore
 
     /************************************************************************************
      * Make a map (index) given the MapType.
+     *
+     * @param type  the type of map to make
      */
-    private static Map <KeyType, Comparable []> makeMap ()
+    private static Map <KeyType, Comparable []> makeMap (MapType type)
     {
-        return switch (mType) {
+        return switch (type) {
             case TREE_MAP    -> new TreeMap <> ();
             case HASH_MAP    -> new HashMap<>();
             case LINHASH_MAP -> new LinHashMap <> (KeyType.class, Comparable [].class);
-//      case BPTREE_MAP  -> new BpTreeMap <> (KeyType.class, Comparable [].class);
+            case BPTREE_MAP  -> new BpTreeMap <> (KeyType.class, Comparable [].class);
+            case CONC_LINHASH_MAP -> new ConcurrentLinHashMap <> (KeyType.class, Comparable [].class);
+            case DISK_LINHASH_MAP -> DiskLinHashMap.temporary (new File (DIR), "index_");
             default          -> null;
         }; // switch
     } // makeMap
 
+    /************************************************************************************
+     * Make a map for a secondary index of the given type on an attribute with the
+     * given domain.
+     *
+     * @param type  the type of map to use
+     * @param dom   the domain of the indexed attribute
+     */
+    @SuppressWarnings ("unchecked")
+    private static Map <Comparable, List <Comparable []>> makeIndex (MapType type, Class dom)
+    {
+        return switch (type) {
+            case TREE_MAP    -> new TreeMap <> ();
+            case HASH_MAP    -> new HashMap <> ();
+            case LINHASH_MAP -> new LinHashMap (dom, List.class);
+            case BPTREE_MAP  -> new BpTreeMap (dom, List.class);
+            case CONC_LINHASH_MAP -> new ConcurrentLinHashMap (dom, List.class);
+            default          -> throw new IllegalArgumentException ("makeIndex: no index of type " + type);
+        }; // switch
+    } // makeIndex
+
     /************************************************************************************
      * Concatenate two arrays of type T to form a new wider array.
      *
@@ -127,8 +302,7 @@ public class Table
         attribute = _attribute;
         domain    = _domain;
         key       = _key;
-        tuples    = new ArrayList <> ();
-        index     = makeMap ();
+        tuples    = makeStore (_domain);
     } // primary constructor
 
     /************************************************************************************
@@ -148,7 +322,6 @@ public class Table
         domain    = _domain;
         key       = _key;
         tuples    = _tuples;
-        index     = makeMap ();
     } // constructor
 
     /************************************************************************************
@@ -163,13 +336,28 @@ public class Table
     {
         this (_name, attributes.split (" "), findClass (domains.split (" ")), _key.split(" "));
 
-        out.println ("DDL> create table " + name + " (" + attributes + ")");
+        Metrics.trace (Metrics.Level.INFO, () -> "DDL> create table " + name + " (" + attributes + ")");
     } // constructor
 
     //----------------------------------------------------------------------------------
     // Public Methods
     //----------------------------------------------------------------------------------
 
+    /************************************************************************************
+     * Start a pipeline over the tuples of this table.  Operators chained onto the scan
+     * (select, project, join) stream tuples to one another instead of building an
+     * intermediate table per operator; see Operator.
+     *
+     * #usage rental.scan ().join ("inventory_id", "inventory_id", inventory.scan ()).toTable (...)
+     *
+     * @return  a scan operator over this table
+     */
+    public Operator scan ()
+    {
+        Metrics.trace (Metrics.Level.INFO, () -> "RA> " + name + ".scan ()");
+        return new Operator.Scan (this);
+    } // scan
+
     /************************************************************************************
      * Project the tuples onto a lower dimension by keeping only the given attributes.
      * Check whether the original key is included in the projection.
@@ -181,11 +369,16 @@ public class Table
      */
     public Table project (String attributes)
     {
-        out.println ("RA> " + name + ".project (" + attributes + ")");
+        var op = Metrics.operator ("project", tuples.size (),
+                                   () -> name + ".project (" + attributes + ")");
         var attrs     = attributes.split (" ");
         var colDomain = extractDom (match (attrs), domain);
         var newKey    = (Arrays.asList (attrs).containsAll (Arrays.asList (key))) ? key : attrs;
 
+        if (tuples instanceof ColumnStore cs) {                       // copy only the projected columns
+            return op.end (new Table (name + count++, attrs, colDomain, newKey, cs.project (match (attrs))));
+        } // if
+
         List <Comparable []> rows = new ArrayList <> ();
 
         //  T O   B E   I M P L E M E N T E D 
@@ -205,7 +398,7 @@ public class Table
             //Adding the projected row to the table
             rows.add(project_attr);
         }
-        return new Table (name + count++, attrs, colDomain, newKey, rows);
+        return op.end (new Table (name + count++, attrs, colDomain, newKey, rows));
     } // project
 
     /************************************************************************************
@@ -219,10 +412,11 @@ public class Table
 
     public Table select (Predicate <Comparable []> predicate)
     {
-        out.println("RA> " + name + ".select (" + predicate + ")");
-        return new Table (name + count++, attribute, domain, key,
+        var op = Metrics.operator ("select", tuples.size (),
+                                   () -> name + ".select (" + predicate + ")");
+        return op.end (new Table (name + count++, attribute, domain, key,
                 tuples.stream ().filter (t -> predicate.test (t))
-                        .collect (Collectors.toList ()));
+                        .collect (Collectors.toList ())));
     } // select
 
     /************************************************************************************
@@ -237,62 +431,55 @@ public class Table
     public Table select (String condition)
 
     {
-        out.println ("RA> " + name + ".select (" + condition + ")");
+        var op = Metrics.operator ("select", tuples.size (),
+                                   () -> name + ".select (" + condition + ")");
         List <Comparable []> rows = new ArrayList <> ();
 
         //  T O   B E   I M P L E M E N T E D
         // Extracting the attributes and the operator from the condition specified
-        String[] split_condition = condition.split(" ");
+        // (the operand is the rest of the condition, so quoted strings may contain spaces)
+        String[] split_condition = condition.split(" ", 3);
         //Storing the operator that is extracted
         String extracted_operator = split_condition[1];
         //Storing the column position of the attribute
         int colPos = col(split_condition[0]);
-        //Converting the third part of the condition to integer to perform numerical comparisons
-        int operand = Integer.parseInt(split_condition[2]);
-
-        // Iterate through each tuple of the movie table
-        for (var m_t : tuples) {
-            Comparable value = m_t[colPos];
-            // Defining a flag that is used to check the condition
-            boolean match_flag = false;
-            //Performing actions based on the operator that is extracted
-            switch (extracted_operator)
-            {
-                case "==":
-                    //checks if value is equal to operand
-                    match_flag = value.equals(operand);
-                    break;
-                case "!=":
-                    //checks if value is not equal to operand
-                    match_flag = !value.equals(operand);
-                    break;
-                case "<":
-                    //checks if value is less than the operand
-                    match_flag = value.compareTo(operand) < 0;
-                    break;
-                case "<=":
-                    //checks if value is less than or equal to the operand
-                    match_flag = value.compareTo(operand) <= 0;
-                    break;
-                case ">":
-                    //checks if value is greater than the operand
-                    match_flag = value.compareTo(operand) > 0;
-                    break;
-                case ">=":
-                    //checks if value is greater than or equal to the operand
-                    match_flag = value.compareTo(operand) >= 0;
-                    break;
-                default:
-                    //If the operator is not in the specified format
-                    out.println("Unsupported operator: " + extracted_operator);
+        //Converting the third part of the condition to a value of the attribute's domain
+        Comparable operand = parseOperand(split_condition[2], (colPos < domain.length) ? domain[colPos] : null);
+
+        // Answer the select from an index on the attribute when possible (touching only
+        // the qualifying tuples)
+        var matches = indexLookup(colPos, extracted_operator, operand);
+        if (matches != null) {
+            return op.end (new Table (name + count++, attribute, domain, key, matches));
+        } // if
+
+        // Scan just the selected column when the tuples are stored column-wise
+        if (tuples instanceof ColumnStore cs) {
+            return op.end (new Table (name + count++, attribute, domain, key,
+                              selectColumn (cs, colPos, extracted_operator, operand)));
+        } // if
+
+        // Compile the condition once, then test each tuple with the compiled predicate,
+        // skipping the blocks whose zone (min/max) shows that none of their tuples qualify
+        var predicate = PredicateCompiler.select(colPos, extracted_operator, operand);
+        var zm = zoneMap(colPos);
+        if (zm == null) {
+            for (var m_t : tuples) {
+                if (predicate.test(m_t)) rows.add(m_t);
             }
-            // If the match is set true we add that particular tuple to the resultant table row
-            if (match_flag)
-            {
-                rows.add(m_t);
+        } else {
+            var skipped = 0;
+            for (var b = 0; b < zm.blocks(); b++) {
+                if (! zm.mayMatch(b, extracted_operator, operand)) { skipped++; continue; }
+                for (var i = b * ZoneMap.BLOCK; i < Math.min((b + 1) * ZoneMap.BLOCK, zm.rows()); i++) {
+                    var m_t = tuples.get(i);
+                    if (predicate.test(m_t)) rows.add(m_t);
+                }
             }
+            BLOCKS_SKIPPED.add(skipped);
+            BLOCKS_SCANNED.add(zm.blocks() - skipped);
         }
-        return new Table (name + count++, attribute, domain, key, rows);
+        return op.end (new Table (name + count++, attribute, domain, key, rows));
     } // select
 
     /************************************************************************************
@@ -304,14 +491,21 @@ public class Table
      */
     public Table select (KeyType keyVal)
     {
-        out.println ("RA> " + name + ".select (" + keyVal + ")");
+        var op = Metrics.operator ("select", tuples.size (),
+                                   () -> name + ".select (" + keyVal + ")");
 
         List <Comparable []> rows = new ArrayList <> ();
 
         //  T O   B E   I M P L E M E N T E D  - Project 2
 
-        // Get the tuples with correct keyVal
-        rows.add(index.get(keyVal));
+        // Get the tuples with correct keyVal (scan for it when there is no index)
+        if (index () != null) {
+            ensureIndex ();
+            var tup = index.get(keyVal);
+            if (tup != null) rows.add(tup);
+        } else {
+            for (var tup : tuples) if (keyVal.equals(keyOf(tup))) rows.add(tup);
+        }
        /* String tableName = "indexed_select";
          FileList fileList = new FileList(tableName, rows.size());
          for(Comparable[] tuple: rows) {
@@ -320,12 +514,14 @@ public class Table
 
          fileList.get(0);*/
 
-        return new Table (name + count++, attribute, domain, key, rows);
+        return op.end (new Table (name + count++, attribute, domain, key, rows));
     } // select
 
     /************************************************************************************
      * **Author Sowndarya Nookala***
-     * Union this table and table2.  Check that the two tables are compatible.
+     * Union this table and table2.  Check that the two tables are compatible.  Tuples
+     * are compared by value (hashing TupleKeys), so the union takes linear time and
+     * holds each distinct tuple once (in order of first occurrence).
      *
      * #usage movie.union (show)
      *
@@ -334,31 +530,54 @@ public class Table
      */
     public Table union (Table table2)
     {
-        out.println ("RA> " + name + ".union (" + table2.name + ")");
+        return union (table2, parallelism);
+    } // union
+
+    /************************************************************************************
+     * Union this table and table2 with the given degree of parallelism (the result is
+     * the same as for dop = 1).
+     *
+     * #usage movie.union (show, 4)
+     *
+     * @param table2  the rhs table in the union operation
+     * @param dop     the degree of parallelism (1 => sequential)
+     * @return  a table representing the union
+     */
+    public Table union (Table table2, int dop)
+    {
+        var op = Metrics.operator ("union", tuples.size () + table2.tuples.size (),
+                                   () -> name + ".union (" + table2.name + ")");
         //Checking if two tables are compatabile for union operation
         if (! compatible (table2)) return null;
-        List <Comparable []> rows = new ArrayList <> ();
-
-        //  T O   B E   I M P L E M E N T E D
 
-        // Adding all the tuples from first table
-        rows.addAll(tuples);
-        //Iterating through all the tuples in second table
-        for (var row : table2.tuples)
-        {
-            //Checking if the tuple from second table is already stored in rows
-            if (!rows.contains(row))
-            {
-                //If the current tuple of table2 is not already in table1 we add it
-                rows.add(row);
-            }
-        }
-        return new Table (name + count++, attribute, domain, key, rows);
+        return op.end (new Table (name + count++, attribute, domain, key, setOp (SetOp.UNION, table2, dop)));
     } // union
 
     /************************************************************************************
-     * Take the difference of this table and table2.  Check that the two tables are
-     * compatible.
+     * Union this table and table2 keeping all duplicates (UNION ALL).  Check that the two
+     * tables are compatible.
+     *
+     * #usage movie.unionAll (show)
+     *
+     * @param table2  the rhs table in the union operation
+     * @return  a table with the tuples of both tables
+     */
+    public Table unionAll (Table table2)
+    {
+        var op = Metrics.operator ("unionAll", tuples.size () + table2.tuples.size (),
+                                   () -> name + ".unionAll (" + table2.name + ")");
+        if (! compatible (table2)) return null;
+
+        var rows = new ArrayList <Comparable []> (tuples.size () + table2.tuples.size ());
+        rows.addAll (tuples);
+        rows.addAll (table2.tuples);
+        return op.end (new Table (name + count++, attribute, domain, key, rows));
+    } // unionAll
+
+    /************************************************************************************
+     * Take the difference of this table and table2 (EXCEPT).  Check that the two tables
+     * are compatible.  Tuples are compared by value (hashing TupleKeys), so the
+     * difference takes linear time; each distinct tuple is kept once.
      *
      * #usage movie.minus (show)
      *
@@ -367,29 +586,62 @@ public class Table
      */
     public Table minus (Table table2)
     {
-        out.println ("RA> " + name + ".minus (" + table2.name + ")");
-        if (! compatible (table2)) return null;
+        return minus (table2, parallelism);
+    } // minus
 
-        List <Comparable []> rows = new ArrayList <> ();
+    /************************************************************************************
+     * Take the difference of this table and table2 with the given degree of parallelism
+     * (the result is the same as for dop = 1).
+     *
+     * #usage movie.minus (show, 4)
+     *
+     * @param table2  The rhs table in the minus operation
+     * @param dop     the degree of parallelism (1 => sequential)
+     * @return  a table representing the difference
+     */
+    public Table minus (Table table2, int dop)
+    {
+        var op = Metrics.operator ("minus", tuples.size () + table2.tuples.size (),
+                                   () -> name + ".minus (" + table2.name + ")");
+        if (! compatible (table2)) return null;
 
-        //  T O   B E   I M P L E M E N T E D
-        // Looping to iterate over the tuples of first table
-        for (var frsttab_row : tuples)
-        {
-            //Condition to check if the tuples of table 1 are not in table 2
-            if(table2.tuples.contains(frsttab_row))
-            {
-                continue;
-            }
-            else
-            {
-                //if the condition is false, we add the tuples to the resultant rows variable created
-                rows.add(frsttab_row);
-            }
-        }
-        return new Table (name + count++, attribute, domain, key, rows);
+        return op.end (new Table (name + count++, attribute, domain, key, setOp (SetOp.MINUS, table2, dop)));
     } // minus
 
+    /************************************************************************************
+     * Intersect this table and table2.  Check that the two tables are compatible.  Tuples
+     * are compared by value (hashing TupleKeys), so the intersection takes linear time;
+     * each distinct tuple is kept once.
+     *
+     * #usage movie.intersect (show)
+     *
+     * @param table2  The rhs table in the intersect operation
+     * @return  a table representing the intersection
+     */
+    public Table intersect (Table table2)
+    {
+        return intersect (table2, parallelism);
+    } // intersect
+
+    /************************************************************************************
+     * Intersect this table and table2 with the given degree of parallelism (the result
+     * is the same as for dop = 1).
+     *
+     * #usage movie.intersect (show, 4)
+     *
+     * @param table2  The rhs table in the intersect operation
+     * @param dop     the degree of parallelism (1 => sequential)
+     * @return  a table representing the intersection
+     */
+    public Table intersect (Table table2, int dop)
+    {
+        var op = Metrics.operator ("intersect", tuples.size () + table2.tuples.size (),
+                                   () -> name + ".intersect (" + table2.name + ")");
+        if (! compatible (table2)) return null;
+
+        return op.end (new Table (name + count++, attribute, domain, key, setOp (SetOp.INTERSECT, table2, dop)));
+    } // intersect
+
     /************************************************************************************
      * Join this table and table2 by performing an "equi-join".  Tuples from both tables
      * are compared requiring attributes1 to equal attributes2.  Disambiguate attribute
@@ -405,8 +657,9 @@ public class Table
      */
     public Table join (String attributes1, String attributes2, Table table2)
     {
-        out.println ("RA> " + name + ".join (" + attributes1 + ", " + attributes2 + ", "
-                + table2.name + ")");
+        var op = Metrics.operator ("join", tuples.size () + table2.tuples.size (),
+                                   () -> name + ".join (" + attributes1 + ", " + attributes2 + ", "
+                                         + table2.name + ")");
 
         var t_attrs = attributes1.split (" ");
         var u_attrs = attributes2.split (" ");
@@ -418,42 +671,22 @@ public class Table
         int[] t_match = match(t_attrs);
         int [] u_match = table2.match(u_attrs);
 
-        // Removing the disambiguate attribute names by appending 2 at the end
-        String[] attr_table2 = table2.attribute;
-        for (int i = 0; i < attr_table2.length; i++) {
-            String attr_initial = attr_table2[i];
-            String attr_after = attr_initial;
-
-            // A condition to check if attribute name already exists in the first table's attributes
-            if (Arrays.asList(attribute).contains(attr_after)) {
-                // If there is an attribute with same name, we append "2" until the attribute becomes unique
-                int append_val = 2;
-                while (Arrays.asList(attribute).contains(attr_after)) {
-                    attr_after = attr_initial + append_val;
-                    append_val++;
-                }
-            }
-            // Updating the final name of the attribute in table2
-            attr_table2[i] = attr_after;
-        }
+        // Disambiguate the attribute names of table2 by appending 2 (table2 itself is not changed)
+        String[] attr_table2 = disambiguate(attribute, table2.attribute);
 
         //Iterating through every row in table 1
-        for(var table1_data : tuples)
+        for(int r1 = 0; r1 < tuples.size(); r1++)
         {
-            //Extracting the values of join attributes of current tuple in table 1
-            Comparable[] table1_values = extract(table1_data, t_attrs);
             //Iterating through every row in table 2
-            for(var table2_data : table2.tuples)
+            for(int r2 = 0; r2 < table2.tuples.size(); r2++)
             {
-                //Extracting the values of join attributes of current tuple in table 2
-                Comparable[] table2_values = table2.extract(table2_data, u_attrs);
                 // Boolean flag that is used to check if the join condition is satisfied or not
                 boolean flag = true;
-                //Looping through the values of tables
-                for(int i=0; i<table1_values.length;i++)
+                //Looping through the join columns (only these cells are read)
+                for(int i=0; i<t_match.length;i++)
                 {
                     //Checking if the values of both tables are equal or not
-                    if(!table1_values[i].equals(table2_values[i]))
+                    if(!cell(r1, t_match[i]).equals(table2.cell(r2, u_match[i])))
                     {
                         //If the values are not equal, the flag is set to false
                         flag = false;
@@ -464,19 +697,21 @@ public class Table
                 if(flag)
                 {
                     //We concatenate the tuples of tables 1 & 2 and store them in a new array
-                    Comparable[] result_data = concat(table1_data,table2_data);
+                    Comparable[] result_data = concat(tuples.get(r1),table2.tuples.get(r2));
                     // Adding the concatenated tuples to the rows of resultant table
                     rows.add(result_data);
                 }
             }
         }
-        return new Table (name + count++, concat (attribute, table2.attribute),concat (domain, table2.domain), key, rows);
+        return op.end (new Table (name + count++, concat (attribute, attr_table2),concat (domain, table2.domain), key, rows));
     } // join
 
     /************************************************************************************
      * Join this table and table2 by performing a "theta-join".  Tuples from both tables
      * are compared attribute1 <op> attribute2.  Disambiguate attribute names by appending "2"
      * to the end of any duplicate attribute name.  Implement using a Nested Loop Join algorithm.
+     * String columns of a column store that are dictionary encoded are compared (for == and
+     * !=) by code.
      *
      * #usage movie.join ("studioName == name", studio)
      *
@@ -486,7 +721,8 @@ public class Table
      */
     public Table join (String condition, Table table2)
     {
-        out.println ("RA> " + name + ".join (" + condition + ", " + table2.name + ")");
+        var op = Metrics.operator ("theta_join", tuples.size () + table2.tuples.size (),
+                                   () -> name + ".join (" + condition + ", " + table2.name + ")");
 
         var rows = new ArrayList <Comparable []> ();
 
@@ -500,77 +736,63 @@ public class Table
         //The col position of RHS attribute
         int rhs_op = table2.col(condition_split[2]);
 
-        // Removing the disambiguate attribute names by appending 2 at the end
-        String[] attr_table2 = table2.attribute;
-        for (int i = 0; i < attr_table2.length; i++) {
-            String attr_initial = attr_table2[i];
-            String attr_after = attr_initial;
-
-            // A condition to check if attribute name already exists in the first table's attributes
-            if (Arrays.asList(attribute).contains(attr_after)) {
-                // If there is an attribute with same name, we append "2" until the attribute becomes unique
-                int append_val = 2;
-                while (Arrays.asList(attribute).contains(attr_after)) {
-                    attr_after = attr_initial + append_val;
-                    append_val++;
-                }
-            }
-            // Updating the final name of the attribute in table2
-            attr_table2[i] = attr_after;
+        // Disambiguate the attribute names of table2 by appending 2 (table2 itself is not changed)
+        String[] attr_table2 = disambiguate(attribute, table2.attribute);
+
+        // Compile the comparison once and extract both join columns once, as primitive
+        // arrays when both hold only ints (or only doubles), so the nested loop makes a
+        // single monomorphic call per pair of tuples
+        var n1 = tuples.size();
+        var n2 = table2.tuples.size();
+        int[] iCol1 = intColumn(lhs_op), iCol2 = (iCol1 == null) ? null : table2.intColumn(rhs_op);
+        double[] dCol1 = (iCol2 != null) ? null : doubleColumn(lhs_op);
+        double[] dCol2 = (dCol1 == null) ? null : table2.doubleColumn(rhs_op);
+
+        int[] sCol1 = null, sCol2 = null;
+        if (iCol2 == null && dCol2 == null && (operator_split.equals("==") || operator_split.equals("!="))) {
+            sCol1 = codeColumn(lhs_op);
+            sCol2 = (sCol1 == null) ? null : table2.codeColumn(rhs_op, (ColumnStore) tuples, lhs_op);
         }
 
-        // Iterating through every tuple in the first table
-        for (var t_row : tuples)
-        {
-            // Extracting values of join attributes from the current tuple
-            Comparable t_values = t_row[lhs_op];
-            // Iterating through each tuple in the table2
-            for (var u_row : table2.tuples)
-            {
-                // Extract the values of the join attributes from the table2 tuple
-                Comparable u_values = u_row[rhs_op];
-                // Defining a flag that is used to check the condition
-                boolean match = false;
-                //Performing actions based on the operator that is extracted
-                switch (operator_split)
-                {
-                    case "==":
-                        //checks if value is equal to operand
-                        match = t_values.equals(u_values);
-                        break;
-                    case "!=":
-                        //checks if value is not equal to operand
-                        match = !t_values.equals(u_values);
-                        break;
-                    case "<":
-                        //checks if value is less than the operand
-                        match = t_values.compareTo(u_values) < 0;
-                        break;
-                    case "<=":
-                        //checks if value is less than or equal to the operand
-                        match = t_values.compareTo(u_values) <= 0;
-                        break;
-                    case ">":
-                        //checks if value is greater than the operand
-                        match = t_values.compareTo(u_values) > 0;
-                        break;
-                    case ">=":
-                        //checks if value is greater than or equal to the operand
-                        match = t_values.compareTo(u_values) >= 0;
-                        break;
-                    default:
-                        //checks and prints if the operator type is not defined
-                        out.println("Unsupported operator: " + operator_split);
+        if (iCol1 != null && iCol2 != null) {
+            var test = PredicateCompiler.intTest(operator_split);
+            for (int r1 = 0; r1 < n1; r1++) {
+                int a = iCol1[r1];
+                for (int r2 = 0; r2 < n2; r2++) {
+                    if (test.test(a, iCol2[r2])) rows.add(concat(tuples.get(r1), table2.tuples.get(r2)));
                 }
-                // If the match is set true we add that particular tuple to the resultant table row
-                if (match)
-                {
-                    Comparable[] combined = concat(t_row, u_row);
-                    rows.add(combined);
+            }
+        } else if (dCol1 != null && dCol2 != null) {
+            var test = PredicateCompiler.doubleTest(operator_split);
+            for (int r1 = 0; r1 < n1; r1++) {
+                double a = dCol1[r1];
+                for (int r2 = 0; r2 < n2; r2++) {
+                    if (test.test(a, dCol2[r2])) rows.add(concat(tuples.get(r1), table2.tuples.get(r2)));
+                }
+            }
+        } else if (sCol1 != null && sCol2 != null) {
+            // dictionary-encoded strings: compare codes (table2's translated into ours,
+            // NULL_CODE for null, ABSENT_CODE for strings not in our dictionary)
+            var eq = operator_split.equals("==");
+            for (int r1 = 0; r1 < n1; r1++) {
+                int a = sCol1[r1];
+                if (a == NULL_CODE) continue;
+                for (int r2 = 0; r2 < n2; r2++) {
+                    int b = sCol2[r2];
+                    if (eq ? a == b : (b != NULL_CODE && a != b)) rows.add(concat(tuples.get(r1), table2.tuples.get(r2)));
+                }
+            }
+        } else {
+            var test  = PredicateCompiler.valueTest(operator_split);
+            var vCol2 = table2.valueColumn(rhs_op);
+            for (int r1 = 0; r1 < n1; r1++) {
+                Comparable a = cell(r1, lhs_op);
+                for (int r2 = 0; r2 < n2; r2++) {
+                    if (test.test(a, vCol2[r2])) rows.add(concat(tuples.get(r1), table2.tuples.get(r2)));
                 }
             }
         }
-        return new Table (name + count++, concat (attribute, table2.attribute),concat (domain, table2.domain), key, rows);
+        return op.end (new Table (name + count++, concat (attribute, attr_table2),concat (domain, table2.domain), key, rows));
     } // join
 
     /************************************************************************************
@@ -583,10 +805,28 @@ public class Table
      * @return  a table with tuples satisfying the equality predicate
      */
     public Table i_join(String condition, Table table2) {
-        out.println("RA> " + name + ".i_join (" + condition + ", " + table2.name + ")");
+        return i_join(condition, table2, parallelism);
+    }
+
+    /************************************************************************************
+     * Join this table and table2 by performing an "equi-join" using an INDEXED JOIN
+     * ALGORITHM with the given degree of parallelism.  When dop > 1, the hash table on
+     * table2 is built in partitions in parallel and the tuples of this table are probed
+     * in parallel chunks (on a fork/join pool), each chunk into its own output buffer;
+     * the buffers are merged in chunk order, so the result is the same as for dop = 1.
+     *
+     * #usage rental.i_join ("inventory_id == inventory_id", inventory, 8)
+     *
+     * @param condition  the equi-join condition ("attr1 == attr2")
+     * @param table2     the rhs table in the join operation
+     * @param dop        the degree of parallelism (1 => sequential)
+     * @return  a table with tuples satisfying the equality predicate
+     */
+    public Table i_join(String condition, Table table2, int dop) {
+        var op = Metrics.operator ("i_join", tuples.size () + table2.tuples.size (),
+                                   () -> name + ".i_join (" + condition + ", " + table2.name + ")");
 
-        var rows = new ArrayList<Comparable[]>();
-        List<String> requiredColumnsFromTable2 = new ArrayList< >();
+        List<Comparable[]> rows = new ArrayList<>();
 
         // Extracting attributes and operator from the condition
         String[] partsOfCondition = condition.split(" ");
@@ -599,47 +839,53 @@ public class Table
         String operator = partsOfCondition[1];
 
         // Handling attributes with the same name in both tables
-        for (String str : table2.attribute) {
-            if (Arrays.asList(this.attribute).contains(str)) {
-                requiredColumnsFromTable2.add(str + '2');
-            } else {
-                requiredColumnsFromTable2.add(str);
-            }
-        }
+        String[] requiredColumnsFromTable2 = disambiguate(attribute, table2.attribute);
 
-        // Build an index on the joining attribute of table2
-        Map<Comparable, List<Comparable[]>> table2Index = new HashMap<>();
-        for (Comparable[] tuple : table2.tuples) {
-            table2Index.computeIfAbsent(tuple[indexOfAttr2], k -> new ArrayList<>()).add(tuple);
-        }
+        if (dop > 1) {
+            rows = parallelJoin(indexOfAttr1, table2, indexOfAttr2, dop);
+        } else {
+            // Build an index on the joining attribute of table2
+            Map<Comparable, List<Comparable[]>> table2Index = new HashMap<>();
+            for (int r2 = 0; r2 < table2.tuples.size(); r2++) {
+                table2Index.computeIfAbsent(table2.cell(r2, indexOfAttr2), k -> new ArrayList<>()).add(table2.tuples.get(r2));
+            }
 
-        // Use the index to perform the join
-        for (Comparable[] table1_tuple : this.tuples) {
-            List<Comparable[]> matchingTuples = table2Index.get(table1_tuple[indexOfAttr1]);
-            if (matchingTuples != null) {
-                for (Comparable[] table2_tuple : matchingTuples) {
-                    Comparable[] mergedTuple = new Comparable[table1_tuple.length + table2_tuple.length];
-                    System.arraycopy(table1_tuple, 0, mergedTuple, 0, table1_tuple.length);
-                    System.arraycopy(table2_tuple, 0, mergedTuple, table1_tuple.length, table2_tuple.length);
-                    rows.add(mergedTuple);
+            // Use the index to perform the join (only the join column of this table is scanned)
+            for (int r1 = 0; r1 < this.tuples.size(); r1++) {
+                List<Comparable[]> matchingTuples = table2Index.get(cell(r1, indexOfAttr1));
+                if (matchingTuples != null) {
+                    Comparable[] table1_tuple = this.tuples.get(r1);
+                    for (Comparable[] table2_tuple : matchingTuples) {
+                        Comparable[] mergedTuple = new Comparable[table1_tuple.length + table2_tuple.length];
+                        System.arraycopy(table1_tuple, 0, mergedTuple, 0, table1_tuple.length);
+                        System.arraycopy(table2_tuple, 0, mergedTuple, table1_tuple.length, table2_tuple.length);
+                        rows.add(mergedTuple);
+                    }
                 }
             }
         }
 
         // Create the resulting table
         List<String> mergedAttributes = new ArrayList<>(Arrays.asList(this.attribute));
-        mergedAttributes.addAll(requiredColumnsFromTable2);
+        mergedAttributes.addAll(Arrays.asList(requiredColumnsFromTable2));
 
         List<Class> mergedDomains = new ArrayList<>(Arrays.asList(this.domain));
-        mergedDomains.addAll(Arrays.asList(table2.extractDom(new int[] {indexOfAttr2}, table2.domain)));
+        mergedDomains.addAll(Arrays.asList(table2.domain));
 
         Table resultTable = new Table(name + "_" + table2.name, mergedAttributes.toArray(new String[0]), mergedDomains.toArray(new Class[0]), key, rows);
-        return  resultTable;
+        return op.end (resultTable);
     }
 
     /************************************************************************************
      * Join this table and table2 by performing an "equi-join".  Same as above, but implemented
-     * using a Hash Join algorithm.
+     * using a Hash Join algorithm.  The smaller input is used as the build side and both
+     * inputs are hash partitioned (GRACE HASH JOIN).  When the build tuples held in memory
+     * exceed the memory budget, the largest build partition (and from then on its probe
+     * partition) is spilled to a temporary file in the storage directory.  Each partition
+     * is then joined by building a hash table on (at most budget tuples of) its build side
+     * and probing it with its probe side.  Tuples with a null join value do not match.
+     *
+     * #usage rental.h_join ("inventory_id", "inventory_id", inventory)
      *
      * @param attributes1  the attributes of this table to be compared (Foreign Key)
      * @param attributes2  the attributes of table2 to be compared (Primary Key)
@@ -648,16 +894,143 @@ public class Table
      */
     public Table h_join (String attributes1, String attributes2, Table table2)
     {
+        var op = Metrics.operator ("h_join", tuples.size () + table2.tuples.size (),
+                                   () -> name + ".h_join (" + attributes1 + ", " + attributes2 + ", "
+                                         + table2.name + ")");
+
+        var t_cols    = match (attributes1.split (" "));
+        var u_cols    = table2.match (attributes2.split (" "));
+        var buildLeft = tuples.size () < table2.tuples.size ();
+        var build     = buildLeft ? this : table2;
+        var probe     = buildLeft ? table2 : this;
+        var b_cols    = buildLeft ? t_cols : u_cols;
+        var p_cols    = buildLeft ? u_cols : t_cols;
+
+        var bPart = new SpillBuffer [hjPartitions];
+        var pPart = new SpillBuffer [hjPartitions];
+        for (var i = 0; i < hjPartitions; i++) {
+            bPart [i] = new SpillBuffer ("hj_build_" + i + "_");
+            pPart [i] = new SpillBuffer ("hj_probe_" + i + "_");
+        } // for
+
+        try {
+            // partition the build side, spilling the largest partition when over budget
+            var inMem = 0;
+            for (var tup : build.tuples) {
+                var k = joinKey (tup, b_cols);
+                if (k == null) continue;
+                var part = bPart [partition (k)];
+                part.add (tup);
+                if (part.inMemory ()) inMem++;
+                if (inMem > hjBudget) {
+                    var victim = bPart [0];
+                    for (var b : bPart) if (b.memSize () > victim.memSize ()) victim = b;
+                    inMem -= victim.memSize ();
+                    victim.spill ();
+                } // if
+            } // for
 
-        //  D O   N O T   I M P L E M E N T
+            // partition the probe side, spilling probe partitions whose build side spilled
+            for (var i = 0; i < hjPartitions; i++) if (! bPart [i].inMemory ()) pPart [i].spill ();
+            for (var tup : probe.tuples) {
+                var k = joinKey (tup, p_cols);
+                if (k != null) pPart [partition (k)].add (tup);
+            } // for
 
-        return null;
+            // join each partition: build a bounded hash table, then probe it
+            var rows = new ArrayList <Comparable []> ();
+            for (var i = 0; i < hjPartitions; i++) {
+                if (bPart [i].size () == 0 || pPart [i].size () == 0) continue;
+                var bIt = bPart [i].iterator ();
+                while (bIt.hasNext ()) {
+                    var table = new HashMap <KeyType, List <Comparable []>> ();
+                    for (var n = 0; n < hjBudget && bIt.hasNext (); n++) {
+                        var tup = bIt.next ();
+                        table.computeIfAbsent (joinKey (tup, b_cols), x -> new ArrayList <> ()).add (tup);
+                    } // for
+                    for (var tup : pPart [i]) {
+                        var matches = table.get (joinKey (tup, p_cols));
+                        if (matches == null) continue;
+                        for (var m : matches) rows.add (buildLeft ? concat (m, tup) : concat (tup, m));
+                    } // for
+                } // while
+            } // for
+
+            return op.end (new Table (name + count++, concat (attribute, disambiguate (attribute, table2.attribute)),
+                                              concat (domain, table2.domain), key, rows));
+        } finally {
+            for (var i = 0; i < hjPartitions; i++) { bPart [i].close (); pPart [i].close (); }
+        } // try
     } // h_join
 
+    /************************************************************************************
+     * Join this table and table2 by performing an "equi-join".  Same as above, but implemented
+     * using a Sort-Merge Join algorithm.  Each input is read in join key order, either from
+     * an ordered index (TREE_MAP or BPTREE_MAP) on exactly the join attributes or through an
+     * external merge sort within the memory budget (runs are spilled to the storage
+     * directory).  The two sorted inputs are then merged, holding in memory only the group
+     * of table2 tuples matching the current join key value, so many-to-many joins need no
+     * hash table.  The result is in join key order.  Tuples with a null join value do not
+     * match.
+     *
+     * #usage film.m_join ("film_id", "film_id", film_actor)
+     *
+     * @param attributes1  the attributes of this table to be compared (Foreign Key)
+     * @param attributes2  the attributes of table2 to be compared (Primary Key)
+     * @param table2       the rhs table in the join operation
+     * @return  a table with tuples satisfying the equality predicate
+     */
+    public Table m_join (String attributes1, String attributes2, Table table2)
+    {
+        var op = Metrics.operator ("m_join", tuples.size () + table2.tuples.size (),
+                                   () -> name + ".m_join (" + attributes1 + ", " + attributes2 + ", "
+                                         + table2.name + ")");
+
+        var t_cols = match (attributes1.split (" "));
+        var u_cols = table2.match (attributes2.split (" "));
+        var sorts  = new ArrayList <ExternalSort> ();
+        try {
+            var left  = sortedOn (t_cols, sorts);
+            var right = table2.sortedOn (u_cols, sorts);
+            var rows  = new ArrayList <Comparable []> ();
+            var group = new ArrayList <Comparable []> ();
+            var l     = nextJoinable (left, t_cols);
+            var r     = nextJoinable (right, u_cols);
+            while (l != null && r != null) {
+                var cmp = compareKeys (l, t_cols, r, u_cols);
+                if (cmp < 0) {
+                    l = nextJoinable (left, t_cols);
+                } else if (cmp > 0) {
+                    r = nextJoinable (right, u_cols);
+                } else {                                             // join the groups with this key
+                    var first = r;
+                    group.clear ();
+                    do {
+                        group.add (r);
+                        r = nextJoinable (right, u_cols);
+                    } while (r != null && compareKeys (first, u_cols, r, u_cols) == 0);
+                    do {
+                        for (var m : group) rows.add (concat (l, m));
+                        l = nextJoinable (left, t_cols);
+                    } while (l != null && compareKeys (l, t_cols, first, u_cols) == 0);
+                } // if
+            } // while
+
+            return op.end (new Table (name + count++, concat (attribute, disambiguate (attribute, table2.attribute)),
+                                              concat (domain, table2.domain), key, rows));
+        } finally {
+            for (var sort : sorts) sort.close ();
+        } // try
+    } // m_join
+
     /************************************************************************************
      * Join this table and table2 by performing an "natural join".  Tuples from both tables
      * are compared requiring common attributes to be equal.  The duplicate column is also
-     * eliminated.
+     * eliminated: the result has the attributes of this table followed by those of table2
+     * that are not common.  The common attribute positions are resolved once, then a hash
+     * table on the composite common key (KeyType) of the smaller table is probed with the
+     * tuples of the larger one.  Tuples with a null common value do not match.  With no
+     * common attributes, the result is the cartesian product.
      *
      * #usage movieStar.join (starsIn)
      *
@@ -666,95 +1039,54 @@ public class Table
      */
     public Table join (Table table2)
     {
-        out.println ("RA> " + name + ".join (" + table2.name + ")");
+        var op = Metrics.operator ("natural_join", tuples.size () + table2.tuples.size (),
+                                   () -> name + ".join (" + table2.name + ")");
+
+        // resolve the common attributes and the columns of table2 to keep
+        var common = new ArrayList <String> ();
+        var keep   = new ArrayList <Integer> ();
+        for (var j = 0; j < table2.attribute.length; j++) {
+            if (col (table2.attribute [j]) >= 0) common.add (table2.attribute [j]);
+            else keep.add (j);
+        } // for
+        var t_cols = match (common.toArray (new String [0]));
+        var u_cols = table2.match (common.toArray (new String [0]));
+        var u_keep = keep.stream ().mapToInt (Integer::intValue).toArray ();
+
+        // build on the smaller table, probe with the larger
+        var buildLeft = tuples.size () < table2.tuples.size ();
+        var build     = buildLeft ? tuples : table2.tuples;
+        var probe     = buildLeft ? table2.tuples : tuples;
+        var b_cols    = buildLeft ? t_cols : u_cols;
+        var p_cols    = buildLeft ? u_cols : t_cols;
+
+        var table = new HashMap <KeyType, List <Comparable []>> ();
+        for (var tup : build) {
+            var k = joinKey (tup, b_cols);
+            if (k != null) table.computeIfAbsent (k, x -> new ArrayList <> (1)).add (tup);
+        } // for
 
         var rows = new ArrayList <Comparable []> ();
+        for (var tup : probe) {
+            var k       = joinKey (tup, p_cols);
+            var matches = (k == null) ? null : table.get (k);
+            if (matches == null) continue;
+            for (var m : matches) {
+                var t = buildLeft ? m : tup;
+                var u = buildLeft ? tup : m;
+                var row = Arrays.copyOf (t, t.length + u_keep.length);
+                for (var j = 0; j < u_keep.length; j++) row [t.length + j] = u [u_keep [j]];
+                rows.add (row);
+            } // for
+        } // for
 
-        //  T O   B E   I M P L E M E N T E D 
-
-        // Extracting common attributes between the two tables
-        int commonAttrrs_true=0;
-        List<String> commonAttrs = new ArrayList<>();
-        for (String attr : attribute)
-        {
-            // Checking if the attribute of table 2 has table 1 attribute
-            if (Arrays.asList(table2.attribute).contains(attr))
-            {
-                //If yes, the variable is set to 1 indicating there is a match
-                commonAttrrs_true=1;
-                //Adding the common attributes found to the array list we created
-                commonAttrs.add(attr);
-            }
-        }
-
-        // Iterate through each tuple in first table
-        for (var t_row : tuples) {
-            // Extracting the common attributes values from the tuple that is being iterated.
-            Comparable[] t_values = extract(t_row, commonAttrs.toArray(new String[0]));
-            // Iterating over each tuple in the table2
-            for (var u_row : table2.tuples) {
-                // Extracting the common attributes values from the tuples of table2 
-                Comparable[] u_values = table2.extract(u_row, commonAttrs.toArray(new String[0]));
-
-                // We now check if these values of common attributes match
-                int values_check=1;
-                for (int i = 0; i < t_values.length; i++)
-                {
-                    //Checking if the values of both common attributes match
-                    if (!t_values[i].equals(u_values[i]))
-                    {
-                        // If they do not match, the value is set to zero. 
-                        values_check=0;
-                        break;
-                    }
-                }
-                //If there are common attributes
-                if(commonAttrrs_true==1)
-                {
-                    //If the values of these common attributes match
-                    if (values_check==1)
-                    {
-                        //We add the tuple from first table to the result
-                        rows.add(t_row);
-                    }
-                }
-                //If there are no common attributes
-                else
-                {
-                    //If the values have a match
-                    if (values_check==1)
-                    {
-                        // We combine the tuples that are matched by eliminating the duplicate columns    
-                        Comparable[] combined = concat(t_row, u_row);
-                        // Adding the combined tuples to the result
-                        rows.add(combined);
-                    }
-                }
-            }
-        }
-        // FIX - eliminate duplicate columns
-        // Create a list to hold the unique attributes for the new table
-        List<String> uniqueAttrs = new ArrayList<>(Arrays.asList(attribute));
-        // Remove duplicate attributes from the list
-        for (String attr : table2.attribute)
-        {
-            //If the new tuple from table 2 is not already in the unique list, we add it.
-            if (!uniqueAttrs.contains(attr))
-            {
-                uniqueAttrs.add(attr);
-            }
-        }
-        //Checking if there are common attributes or not.
-        if (commonAttrrs_true==1)
-        {
-            // If yes, we create a new table with the unique attributes
-            return new Table (name + count++, uniqueAttrs.toArray(new String[0]),domain, key, rows);
-        }
-        else
-        {
-            // Else, we concat the attributes 
-            return new Table (name + count++, concat (attribute, table2.attribute), concat (domain, table2.domain), key);
-        }
+        var u_attr = new String [u_keep.length];
+        var u_dom  = new Class [u_keep.length];
+        for (var j = 0; j < u_keep.length; j++) {
+            u_attr [j] = table2.attribute [u_keep [j]];
+            u_dom [j]  = table2.domain [u_keep [j]];
+        } // for
+        return op.end (new Table (name + count++, concat (attribute, u_attr), concat (domain, u_dom), key, rows));
     } // join
 
 
@@ -783,34 +1115,206 @@ public class Table
      */
     public boolean insert (Comparable [] tup)
     {
-        out.println ("DML> insert into " + name + " values ( " + Arrays.toString (tup) + " )");
+        Metrics.trace (Metrics.Level.DEBUG, () -> "DML> insert into " + name + " values ( " + Arrays.toString (tup) + " )");
 
-        if (typeCheck (tup)) {
-            tuples.add (tup);
-            var keyVal = new Comparable [key.length];
-            var cols   = match (key);
-            for (var j = 0; j < keyVal.length; j++) keyVal [j] = tup [cols [j]];
-            if (mType != MapType.NO_MAP) index.put (new KeyType (keyVal), tup);
-            return true;
+        if (! typeCheck (tup)) return false;
+        if (wal == null) {
+            apply (tup);
         } else {
-            return false;
+            long lsn;
+            synchronized (this) {                                            // log order = tuple order
+                lsn = wal.append (WriteAheadLog.INSERT, tup);
+                apply (tup);
+            } // synchronized
+            wal.commit (lsn);                                                // outside, so commits group
         } // if
+        ROWS_INSERTED.inc ();
+        return true;
     } // insert
 
     /************************************************************************************
-     * Get the name of the table.
+     * Insert a batch of tuples into the table (used for bulk loading).  Unlike insert,
+     * no DML trace is written per tuple.  If the table is logged (see openLog), every
+     * tuple is appended to its write-ahead log and the batch is committed with a
+     * single fsync.  Tuples that fail the type check are skipped.
      *
-     * @return  the table's name
+     * #usage movie.insertAll (List.of (film0, film1))
+     *
+     * @param tups  the tuples to insert
+     * @return  the number of tuples inserted
      */
-    public String getName ()
+    public int insertAll (List <Comparable []> tups)
     {
-        return name;
-    } // getName
+        var n   = 0;
+        var lsn = 0L;
+        synchronized (this) {
+            for (var tup : tups) {
+                if (! typeCheck (tup)) continue;
+                if (wal != null) lsn = wal.append (WriteAheadLog.INSERT, tup);
+                apply (tup);
+                n++;
+            } // for
+        } // synchronized
+        if (wal != null && n > 0) wal.commit (lsn);                          // one commit for the batch
+        ROWS_INSERTED.add (n);
+        return n;
+    } // insertAll
 
     /************************************************************************************
-     * Print this table.
+     * Log the inserts into this table in its write-ahead log (store/name.wal), so they
+     * are durable once insert returns, without saving the table.  If the log already
+     * has inserts (e.g., made before a crash), they are replayed into the table first,
+     * skipping those already saved in its table file.  Saving the table empties the
+     * log (a checkpoint).
+     *
+     * #usage rental.openLog ()
+     *
+     * @throws IllegalArgumentException  if the log is for a table with other attributes
+     * @throws UncheckedIOException      if the log cannot be opened
      */
-    public void print ()
+    public void openLog ()
+    {
+        if (wal != null) return;
+        var log = new WriteAheadLog (new File (DIR + name + LOG_EXT));
+        if (log.isEmpty ()) {
+            log.commit (log.append (WriteAheadLog.HEADER, logHeader ()));
+        } else {
+            var hdr = log.header ();
+            if (hdr == null || ! Arrays.equals (attribute, logSchema (hdr) [0])) {
+                log.close ();
+                throw new IllegalArgumentException ("openLog: " + name + LOG_EXT + " is not a log for " + name);
+            } // if
+            var skip = tuples.size () - (Integer) hdr [1];                   // inserts already in the table file
+            var redo = new ArrayList <Comparable []> ();
+            log.replay ((type, tup) -> { if (type == WriteAheadLog.INSERT) redo.add (tup); });
+            var n = redo.size () - Math.max (skip, 0);
+            Metrics.trace (Metrics.Level.INFO, () -> "openLog: replaying " + n + " inserts into " + name);
+            if (n > 0) insertAll (redo.subList (redo.size () - n, redo.size ()));
+        } // if
+        wal = log;
+    } // openLog
+
+    /************************************************************************************
+     * Stop logging the inserts into this table, closing its write-ahead log (which is
+     * kept, so it is replayed when the table is next loaded).
+     */
+    public void closeLog ()
+    {
+        if (wal == null) return;
+        wal.close ();
+        wal = null;
+    } // closeLog
+
+    /************************************************************************************
+     * Release the files this table holds open: close its disk-resident index (if it
+     * has one), deleting its files, and the table file a loaded table is read from,
+     * releasing their buffer pool pages.  The rows of a loaded table cannot be read
+     * once it is closed.
+     */
+    public void close ()
+    {
+        if (index instanceof DiskLinHashMap disk) {
+            disk.delete ();
+            index = null;
+        } // if
+        if (tableFile != null) {
+            tableFile.close ();
+            tableFile = null;
+        } // if
+    } // close
+
+    /************************************************************************************
+     * Create a secondary (hash) index on the given attribute, so that equality selects
+     * on it ("attr == value") are answered from the index.
+     *
+     * #usage film.createIndex ("title")
+     *
+     * @param attr  the attribute to index
+     */
+    public void createIndex (String attr)
+    {
+        createIndex (attr, MapType.HASH_MAP);
+    } // createIndex
+
+    /************************************************************************************
+     * Create a secondary index of the given type (a hash or an ordered map) on the given
+     * attribute.  The index is built from the current tuples and kept up to date as
+     * tuples are inserted.  Any existing index on the attribute is replaced.
+     *
+     * #usage film.createIndex ("title", MapType.BPTREE_MAP)
+     *
+     * @param attr  the attribute to index
+     * @param type  the type of map to use for the index
+     */
+    public void createIndex (String attr, MapType type)
+    {
+        Metrics.trace (Metrics.Level.INFO, () -> "DDL> create index on " + name + " (" + attr + ") using " + type);
+
+        var j = col (attr);
+        if (j < 0) throw new IllegalArgumentException ("createIndex: no attribute " + attr + " in " + name);
+        var sIndex = makeIndex (type, domain [j]);
+        for (var tup : tuples) addTo (sIndex, tup [j], tup);
+        secondary.put (attr, sIndex);
+    } // createIndex
+
+    /************************************************************************************
+     * Drop the secondary index on the given attribute.
+     *
+     * @param attr  the indexed attribute
+     * @return  whether there was an index to drop
+     */
+    public boolean dropIndex (String attr)
+    {
+        Metrics.trace (Metrics.Level.INFO, () -> "DDL> drop index on " + name + " (" + attr + ")");
+
+        return secondary.remove (attr) != null;
+    } // dropIndex
+
+    /************************************************************************************
+     * Determine whether there is a secondary index on the given attribute.
+     *
+     * @param attr  the attribute
+     * @return  whether the attribute is indexed
+     */
+    public boolean hasIndex (String attr)
+    {
+        return secondary.containsKey (attr);
+    } // hasIndex
+
+    /************************************************************************************
+     * Get the name of the table.
+     *
+     * @return  the table's name
+     */
+    public String getName ()
+    {
+        return name;
+    } // getName
+
+    /************************************************************************************
+     * Get the domains (classes) of the table's attributes.
+     *
+     * @return  the table's attribute domains
+     */
+    public Class [] getDomain ()
+    {
+        return domain;
+    } // getDomain
+
+    /************************************************************************************
+     * Get the attributes forming the table's primary key.
+     *
+     * @return  the table's key
+     */
+    public String [] getKey ()
+    {
+        return key;
+    } // getKey
+
+    /************************************************************************************
+     * Print this table.
+     */
+    public void print ()
     {
         out.println ("\n Table " + name);
         out.print ("|-");
@@ -839,7 +1343,8 @@ public class Table
     {
         out.println ("\n Index for " + name);
         out.println ("-------------------");
-        if (mType != MapType.NO_MAP) {
+        if (index () != null) {
+            ensureIndex ();
             for (var e : index.entrySet ()) {
                 out.println (e.getKey () + " -> " + Arrays.toString (e.getValue ()));
             } // for
@@ -848,37 +1353,63 @@ public class Table
     } // printIndex
 
     /************************************************************************************
-     * Load the table with the given name into memory. 
+     * Load the table with the given name from its table file.  The rows of the file are
+     * read lazily (through the buffer pool), and the index is rebuilt when first used.
+     * If the table has a write-ahead log, the inserts in it are replayed and later
+     * inserts are logged (see openLog); a table that was never saved is recovered from
+     * its log alone.  The table file stays open until the table is closed.
      *
      * @param name  the name of the table to load
+     * @return  the loaded table, or null if it cannot be loaded
      */
     public static Table load (String name)
     {
-        Table tab = null;
         try {
-            ObjectInputStream ois = new ObjectInputStream (new FileInputStream (DIR + name + EXT));
-            tab = (Table) ois.readObject ();
-            ois.close ();
-        } catch (IOException ex) {
+            var dbf = new File (DIR + name + EXT);
+            var log = new File (DIR + name + LOG_EXT);
+            Table table;
+            if (dbf.exists () || ! log.exists ()) {
+                var tf = TableFile.open (dbf);
+                table  = new Table (tf.name (), tf.attribute (), tf.domain (), tf.key (), tf.tuples ());
+                table.tableFile = tf;
+            } else {
+                try (var wal = new WriteAheadLog (log)) {
+                    var hdr = wal.header ();
+                    if (hdr == null) throw new UncheckedIOException (new IOException ("load: no schema in " + log));
+                    var schema = logSchema (hdr);
+                    table = new Table (name, schema [0], findClass (schema [1]), schema [2]);
+                } // try
+            } // if
+            if (log.exists ()) {
+                try {
+                    table.openLog ();
+                } catch (RuntimeException ex) {
+                    table.close ();
+                    throw ex;
+                } // try
+            } // if
+            return table;
+        } catch (UncheckedIOException ex) {
             out.println ("load: IO Exception");
             ex.printStackTrace ();
-        } catch (ClassNotFoundException ex) {
-            out.println ("load: Class Not Found Exception");
-            ex.printStackTrace ();
+            return null;
         } // try
-        return tab;
     } // load
 
     /************************************************************************************
-     * Save this table in a file.
+     * Save this table (schema and tuples, not the index) in its table file.
      */
     public void save ()
     {
         try {
-            var oos = new ObjectOutputStream (new FileOutputStream (DIR + name + EXT));
-            oos.writeObject (this);
-            oos.close ();
-        } catch (IOException ex) {
+            synchronized (this) {
+                TableFile.write (new File (DIR + name + EXT), name, attribute, domain, key, tuples);
+                if (wal != null) {                                           // checkpoint: the log starts over
+                    wal.reset ();
+                    wal.commit (wal.append (WriteAheadLog.HEADER, logHeader ()));
+                } // if
+            } // synchronized
+        } catch (UncheckedIOException ex) {
             out.println ("save: IO Exception");
             ex.printStackTrace ();
         } // try
@@ -888,6 +1419,347 @@ public class Table
     // Private Methods
     //----------------------------------------------------------------------------------
 
+    /************************************************************************************
+     * Return the primary key of the given tuple, using an int, long or int pair key
+     * when the key's domains allow (these hash and compare without boxing).
+     *
+     * @param tup  the tuple
+     * @return  its primary key
+     */
+    private KeyType keyOf (Comparable [] tup)
+    {
+        if (keyMaker == null) {
+            var cols = match (key);
+            keyMaker = KeyType.maker (extractDom (cols, domain), cols);
+        } // if
+        return keyMaker.apply (tup);
+    } // keyOf
+
+    /************************************************************************************
+     * Apply an insert (that has passed the type check) to the tuples and indices.
+     *
+     * @param tup  the tuple to insert
+     */
+    private void apply (Comparable [] tup)
+    {
+        tuples.add (tup);
+        if (index != null) index.put (keyOf (tup), tup);                    // else made when first used
+        indexSecondary (tup);
+        if (zoneMap != null) {
+            for (var zm : zoneMap) if (zm != null) zm.add (tup);
+        } // if
+    } // apply
+
+    /************************************************************************************
+     * Return the zone map on column j, making it on first use.  Tables of at most one
+     * block (and lists without random access) have none.
+     *
+     * @param j  the column
+     * @return  the zone map, or null if none
+     */
+    private ZoneMap zoneMap (int j)
+    {
+        if (tuples.size () <= ZoneMap.BLOCK || ! (tuples instanceof RandomAccess)) return null;
+        synchronized (this) {
+            if (zoneMap == null) zoneMap = new ZoneMap [attribute.length];
+            if (zoneMap [j] == null) zoneMap [j] = new ZoneMap (j, tuples);
+            return zoneMap [j];
+        } // synchronized
+    } // zoneMap
+
+    /************************************************************************************
+     * Return the header record of this table's write-ahead log: its name, the number
+     * of tuples saved (the log's inserts follow them), then the number of attributes,
+     * the attributes, their domains (simple class names), and the key attributes.
+     */
+    private Comparable [] logHeader ()
+    {
+        var hdr = new ArrayList <Comparable> (List.of (name, tuples.size (), attribute.length));
+        hdr.addAll (Arrays.asList (attribute));
+        for (var d : domain) hdr.add (d.getSimpleName ());
+        hdr.addAll (Arrays.asList (key));
+        return hdr.toArray (new Comparable [0]);
+    } // logHeader
+
+    /************************************************************************************
+     * Return the attributes, domains and key attributes given in the header record of
+     * a write-ahead log (see logHeader).
+     *
+     * @param hdr  the header record
+     */
+    private static String [][] logSchema (Comparable [] hdr)
+    {
+        var n   = (Integer) hdr [2];
+        var all = Arrays.copyOfRange (hdr, 3, hdr.length, String [].class);
+        return new String [][] { Arrays.copyOfRange (all, 0, n), Arrays.copyOfRange (all, n, 2 * n),
+                                 Arrays.copyOfRange (all, 2 * n, all.length) };
+    } // logSchema
+
+    /************************************************************************************
+     * Return the index, first making it if it has not yet been made (it is then built
+     * from the tuples when next ensured).
+     *
+     * @return  the index, or null if none (MapType.NO_MAP)
+     */
+    private Map <KeyType, Comparable []> index ()
+    {
+        if (index == null && indexType != MapType.NO_MAP) {
+            index      = makeMap (indexType);
+            indexStale = ! tuples.isEmpty ();
+        } // if
+        return index;
+    } // index
+
+    /************************************************************************************
+     * Rebuild the index from the tuples if it is stale (re-putting tuples already
+     * indexed by insert is harmless).
+     */
+    private void ensureIndex ()
+    {
+        if (! indexStale) return;
+        for (var tup : tuples) index.put (keyOf (tup), tup);
+        indexStale = false;
+    } // ensureIndex
+
+    /************************************************************************************
+     * Select the tuples satisfying "attribute j op operand" using an index, if there is
+     * a suitable one: an equality select may use any secondary index on the attribute
+     * (or the primary index when the attribute is the whole key), while a range select
+     * (<, <=, >, >=) needs an ordered index (TREE_MAP or BPTREE_MAP).  Tuples found by
+     * a range lookup are returned in key order.
+     *
+     * @param j        the column of the attribute
+     * @param op       the comparison operator
+     * @param operand  the value to compare with
+     * @return  the qualifying tuples, or null if no index can answer the select
+     */
+    @SuppressWarnings ("unchecked")
+    private List <Comparable []> indexLookup (int j, String op, Comparable operand)
+    {
+        if (op.equals ("!=")) return null;
+        var rows   = new ArrayList <Comparable []> ();
+        var sIndex = secondary.get (attribute [j]);
+        if (sIndex != null) {
+            if (op.equals ("==")) {
+                var list = sIndex.get (operand);
+                if (list != null) rows.addAll (list);
+                return rows;
+            } // if
+            if (sIndex instanceof SortedMap sorted) {
+                for (var list : range ((SortedMap <Comparable, List <Comparable []>>) sorted, op, operand)) rows.addAll (list);
+                return rows;
+            } // if
+        } // if
+
+        if (key.length == 1 && key [0].equals (attribute [j]) && index () != null) {
+            ensureIndex ();
+            if (op.equals ("==")) {
+                var tup = index.get (KeyType.of (operand));
+                if (tup != null) rows.add (tup);
+                return rows;
+            } // if
+            if (index instanceof SortedMap sorted) {
+                for (var tup : range ((SortedMap <KeyType, Comparable []>) sorted, op, KeyType.of (operand))) rows.add (tup);
+                return rows;
+            } // if
+        } // if
+        return null;
+    } // indexLookup
+
+    /************************************************************************************
+     * Return the values of an ordered map whose keys satisfy "key op k", in key order.
+     * A B+Tree is scanned from the first qualifying leaf along its sibling links; other
+     * maps must be navigable (e.g., TreeMap) and are read through a sub-map view.
+     *
+     * @param map  the ordered map
+     * @param op   the comparison operator (==, <, <=, >, >=)
+     * @param k    the key to compare with
+     * @return  the values of the qualifying entries
+     */
+    @SuppressWarnings ("unchecked")
+    private static <K, V> Iterable <V> range (SortedMap <K, V> map, String op, K k)
+    {
+        var lo    = (op.startsWith (">") || op.equals ("==")) ? k : null;
+        var hi    = (op.startsWith ("<") || op.equals ("==")) ? k : null;
+        var loInc = ! op.equals (">");
+        var hiInc = ! op.equals ("<");
+        if (map instanceof BpTreeMap bpt) {
+            var values = new ArrayList <V> ();
+            for (var it = bpt.scan ((Comparable) lo, loInc, (Comparable) hi, hiInc); it.hasNext (); ) {
+                values.add (((Map.Entry <K, V>) it.next ()).getValue ());
+            } // for
+            return values;
+        } // if
+        var nav = (NavigableMap <K, V>) map;
+        if (lo == null) return nav.headMap (hi, hiInc).values ();
+        if (hi == null) return nav.tailMap (lo, loInc).values ();
+        return nav.subMap (lo, loInc, hi, hiInc).values ();
+    } // range
+
+    /************************************************************************************
+     * Add a newly inserted tuple to each of the secondary indices.
+     *
+     * @param tup  the inserted tuple
+     */
+    private void indexSecondary (Comparable [] tup)
+    {
+        for (var e : secondary.entrySet ()) addTo (e.getValue (), tup [col (e.getKey ())], tup);
+    } // indexSecondary
+
+    /************************************************************************************
+     * Add a tuple to a secondary index under the given value (null values are not
+     * indexed, as they satisfy no condition).
+     *
+     * @param sIndex  the secondary index
+     * @param value   the tuple's value for the indexed attribute
+     * @param tup     the tuple
+     */
+    private static void addTo (Map <Comparable, List <Comparable []>> sIndex, Comparable value, Comparable [] tup)
+    {
+        if (value == null) return;
+        var list = sIndex.get (value);
+        if (list == null) sIndex.put (value, list = new ArrayList <> (1));
+        list.add (tup);
+    } // addTo
+
+    /************************************************************************************
+     * Parse the operand of a condition into a value of the attribute's domain.  A quoted
+     * operand ('CHICAGO NORTH' or "CHICAGO NORTH") is taken as a string.  When the domain
+     * is not known, the operand's own syntax decides: an integer (Integer, or Long if too
+     * large), a real (Double) or else a string.
+     *
+     * @param s    the operand as written in the condition
+     * @param dom  the domain of the attribute it is compared with (null if unknown)
+     * @return  the operand value
+     */
+    static Comparable parseOperand (String s, Class dom)
+    {
+        s = s.trim ();
+        var n = s.length ();
+        if (n >= 2 && (s.charAt (0) == '\'' || s.charAt (0) == '"') && s.charAt (n - 1) == s.charAt (0)) {
+            return s.substring (1, n - 1);
+        } // if
+        if (dom == Integer.class)   return Integer.valueOf (s);
+        if (dom == Long.class)      return Long.valueOf (s);
+        if (dom == Double.class)    return Double.valueOf (s);
+        if (dom == Float.class)     return Float.valueOf (s);
+        if (dom == Short.class)     return Short.valueOf (s);
+        if (dom == Byte.class)      return Byte.valueOf (s);
+        if (dom == Boolean.class)   return Boolean.valueOf (s);
+        if (dom == Character.class && n == 1) return s.charAt (0);
+        if (dom == null) {
+            try {
+                var v = Long.parseLong (s);
+                return (v == (int) v) ? (Comparable) Integer.valueOf ((int) v) : (Comparable) Long.valueOf (v);
+            } catch (NumberFormatException ex) {
+                // not an integer
+            } // try
+            try {
+                return Double.valueOf (s);
+            } catch (NumberFormatException ex) {
+                return s;
+            } // try
+        } // if
+        return s;
+    } // parseOperand
+
+    /** The hash-based set operators.
+     */
+    private enum SetOp { UNION, MINUS, INTERSECT }
+
+    /************************************************************************************
+     * Perform a set operator on this table and table2 by hashing the tuples' values
+     * (TupleKey).  Each tuple is assigned to one of dop partitions by its hash, so equal
+     * tuples always meet in the same partition; the partitions are then processed
+     * independently (in parallel on a fork/join pool when dop > 1).  Each partition
+     * decides which of its tuples are kept, visiting them in their original order, and
+     * the kept tuples are gathered in that order, so the result does not depend on dop.
+     *
+     * @param op      the set operator
+     * @param table2  the rhs table
+     * @param dop     the degree of parallelism (1 => sequential)
+     * @return  the resulting tuples: those of this table followed (for union) by those
+     *          of table2, each distinct tuple once
+     */
+    private List <Comparable []> setOp (SetOp op, Table table2, int dop)
+    {
+        var n1   = tuples.size ();
+        var n    = n1 + table2.tuples.size ();
+        var keep = new boolean [n];
+        var pool = (dop <= 1) ? null : forkJoinPool (dop);
+
+        // hash every tuple (this table's at positions [0, n1), table2's after) and split
+        // the positions by partition, one chunk per task
+        var keys  = new TupleKey [n];
+        var chunk = Math.max (1, (n + dop - 1) / dop);
+        var split = new ArrayList <Callable <int [][]>> ();
+        for (var lo = 0; lo < n; lo += chunk) {
+            int from = lo, to = Math.min (lo + chunk, n);
+            split.add (() -> {
+                var parts = new int [dop][to - from];
+                var cnt   = new int [dop];
+                for (var i = from; i < to; i++) {
+                    keys [i] = new TupleKey ((i < n1) ? tuples.get (i) : table2.tuples.get (i - n1));
+                    var p    = part (keys [i], dop);
+                    parts [p][cnt [p]++] = i;
+                } // for
+                for (var p = 0; p < dop; p++) parts [p] = Arrays.copyOf (parts [p], cnt [p]);
+                return parts;
+            });
+        } // for
+        var splits = run (pool, split);
+
+        // decide which tuples to keep, one partition per task
+        var decide = new ArrayList <Callable <Void>> ();
+        for (var p = 0; p < dop; p++) {
+            var pp = p;
+            decide.add (() -> {
+                var seen  = new HashSet <TupleKey> ();
+                var right = new HashSet <TupleKey> ();
+                if (op != SetOp.UNION) {
+                    for (var s : splits) for (var i : s [pp]) if (i >= n1) right.add (keys [i]);
+                } // if
+                for (var s : splits) {
+                    for (var i : s [pp]) {
+                        keep [i] = switch (op) {
+                            case UNION     -> seen.add (keys [i]);
+                            case MINUS     -> i < n1 && ! right.contains (keys [i]) && seen.add (keys [i]);
+                            case INTERSECT -> i < n1 && right.contains (keys [i]) && seen.add (keys [i]);
+                        }; // switch
+                    } // for
+                } // for
+                return null;
+            });
+        } // for
+        run (pool, decide);
+
+        var rows = new ArrayList <Comparable []> ();
+        for (var i = 0; i < n; i++) if (keep [i]) rows.add (keys [i].tuple ());
+        return rows;
+    } // setOp
+
+    /************************************************************************************
+     * Run the tasks on the pool (or in this thread when there is no pool), returning
+     * their results in task order.
+     *
+     * @param pool   the fork/join pool to run the tasks on (null => sequential)
+     * @param tasks  the tasks to run
+     * @return  the results of the tasks
+     */
+    private static <T> List <T> run (ForkJoinPool pool, List <Callable <T>> tasks)
+    {
+        if (pool != null) return invokeAll (pool, tasks);
+        var results = new ArrayList <T> (tasks.size ());
+        try {
+            for (var task : tasks) results.add (task.call ());
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IllegalStateException ("run: task failed", ex);
+        } // try
+        return results;
+    } // run
+
     /************************************************************************************
      * Determine whether the two tables (this and table2) are compatible, i.e., have
      * the same number of attributes each with the same corresponding domain.
@@ -910,6 +1782,419 @@ public class Table
         return true;
     } // compatible
 
+    /************************************************************************************
+     * Perform the build and probe phases of the indexed join in parallel on a fork/join
+     * pool with dop workers.  Build: each chunk of table2 is split by hash partition of
+     * the join value (in parallel), then one hash table per partition is built (in
+     * parallel).  Probe: chunks of this table probe the partition tables (in parallel),
+     * each into a thread-local buffer; the buffers are concatenated in chunk order.
+     *
+     * @param col1    the column position of the join attribute in this table
+     * @param table2  the rhs table in the join operation
+     * @param col2    the column position of the join attribute in table2
+     * @param dop     the degree of parallelism
+     * @return  the joined tuples
+     */
+    private List <Comparable []> parallelJoin (int col1, Table table2, int col2, int dop)
+    {
+        var pool   = forkJoinPool (dop);
+        var nParts = dop;
+
+        // build phase 1: split table2's row numbers by partition, one chunk per task
+        var n2     = table2.tuples.size ();
+        var chunk2 = (n2 + dop - 1) / dop;
+        var split  = new ArrayList <Callable <int [][]>> ();
+        for (var lo = 0; lo < n2; lo += chunk2) {
+            int from = lo, to = Math.min (lo + chunk2, n2);
+            split.add (() -> {
+                var parts = new int [nParts][to - from];
+                var cnt   = new int [nParts];
+                for (var r = from; r < to; r++) {
+                    var p = part (table2.cell (r, col2), nParts);
+                    parts [p][cnt [p]++] = r;
+                } // for
+                for (var p = 0; p < nParts; p++) parts [p] = Arrays.copyOf (parts [p], cnt [p]);
+                return parts;
+            });
+        } // for
+        var splits = invokeAll (pool, split);
+
+        // build phase 2: one hash table per partition, built in parallel
+        var builds = new ArrayList <Callable <Map <Comparable, List <Comparable []>>>> ();
+        for (var p = 0; p < nParts; p++) {
+            var pp = p;
+            builds.add (() -> {
+                var map = new HashMap <Comparable, List <Comparable []>> ();
+                for (var s : splits) {
+                    for (var r : s [pp]) {
+                        map.computeIfAbsent (table2.cell (r, col2), k -> new ArrayList <> ())
+                           .add (table2.tuples.get (r));
+                    } // for
+                } // for
+                return map;
+            });
+        } // for
+        var partTables = invokeAll (pool, builds);
+
+        // probe phase: chunks of this table, each into its own output buffer
+        var n1     = tuples.size ();
+        var chunk1 = Math.max (1, (n1 + 4 * dop - 1) / (4 * dop));          // 4 chunks per worker
+        var probes = new ArrayList <Callable <List <Comparable []>>> ();
+        for (var lo = 0; lo < n1; lo += chunk1) {
+            int from = lo, to = Math.min (lo + chunk1, n1);
+            probes.add (() -> {
+                var buf = new ArrayList <Comparable []> ();
+                for (var r = from; r < to; r++) {
+                    var v       = cell (r, col1);
+                    var matches = partTables.get (part (v, nParts)).get (v);
+                    if (matches == null) continue;
+                    var t = tuples.get (r);
+                    for (var u : matches) buf.add (concat (t, u));
+                } // for
+                return buf;
+            });
+        } // for
+
+        var rows = new ArrayList <Comparable []> ();
+        for (var buf : invokeAll (pool, probes)) rows.addAll (buf);
+        return rows;
+    } // parallelJoin
+
+    /************************************************************************************
+     * Return the fork/join pool with the given parallelism, shared by every parallel
+     * operator: the common pool when its parallelism matches, else a pool made when
+     * first asked for and kept (its idle workers time out, so it holds no threads
+     * between queries).
+     *
+     * @param dop  the degree of parallelism
+     * @return  the shared pool with dop workers
+     */
+    private static ForkJoinPool forkJoinPool (int dop)
+    {
+        if (dop == ForkJoinPool.commonPool ().getParallelism ()) return ForkJoinPool.commonPool ();
+        return forkJoinPools.computeIfAbsent (dop, ForkJoinPool::new);
+    } // forkJoinPool
+
+    /************************************************************************************
+     * Return the partition for the given join value (or tuple key).
+     *
+     * @param v       the join value or key (may be null)
+     * @param nParts  the number of partitions
+     * @return  the partition number in [0, nParts)
+     */
+    private static int part (Object v, int nParts)
+    {
+        var h = Objects.hashCode (v) * 0x9E3779B9;
+        return Math.floorMod (h ^ (h >>> 16), nParts);
+    } // part
+
+    /************************************************************************************
+     * Run the tasks on the pool, returning their results in task order.
+     *
+     * @param pool   the fork/join pool to run the tasks on
+     * @param tasks  the tasks to run
+     * @return  the results of the tasks
+     */
+    private static <T> List <T> invokeAll (ForkJoinPool pool, List <Callable <T>> tasks)
+    {
+        var results = new ArrayList <T> (tasks.size ());
+        try {
+            for (var f : pool.invokeAll (tasks)) results.add (f.get ());
+        } catch (InterruptedException ex) {
+            Thread.currentThread ().interrupt ();
+            throw new IllegalStateException ("invokeAll: interrupted", ex);
+        } catch (ExecutionException ex) {
+            var cause = ex.getCause ();
+            if (cause instanceof RuntimeException re) throw re;
+            if (cause instanceof Error er) throw er;
+            throw new IllegalStateException ("invokeAll: task failed", cause);
+        } // try
+        return results;
+    } // invokeAll
+
+    /************************************************************************************
+     * Return the (possibly composite) join key of tuple t on the given columns, or null
+     * if any of its values is null (nulls never join).  Also used by the join pipeline
+     * (Operator).
+     *
+     * @param t     the tuple
+     * @param cols  the column positions of the join attributes
+     * @return  the join key or null
+     */
+    static KeyType joinKey (Comparable [] t, int [] cols)
+    {
+        var k = new Comparable [cols.length];
+        for (var j = 0; j < cols.length; j++) {
+            if ((k [j] = t [cols [j]]) == null) return null;
+        } // for
+        return KeyType.of (k);
+    } // joinKey
+
+    /************************************************************************************
+     * Return an iterator over the tuples of this table in order of the given columns.
+     * An ordered primary index on exactly these columns (holding every tuple) or an
+     * ordered secondary index on the single column is read in order; otherwise the tuples
+     * with no null in the columns are sorted by an external merge sort (which is added
+     * to sorts, to be closed by the caller).
+     *
+     * @param cols   the columns to order by
+     * @param sorts  the external sorts opened
+     * @return  an iterator over the tuples in order
+     */
+    @SuppressWarnings ("unchecked")
+    private Iterator <Comparable []> sortedOn (int [] cols, List <ExternalSort> sorts)
+    {
+        if (index () instanceof SortedMap && Arrays.equals (cols, match (key))) {
+            ensureIndex ();
+            if (index.size () == tuples.size ()) return index.values ().iterator ();
+        } // if
+        if (cols.length == 1 && secondary.get (attribute [cols [0]]) instanceof SortedMap <?, ?> sIndex) {
+            var lists = ((SortedMap <Comparable, List <Comparable []>>) sIndex).values ().iterator ();
+            return new Iterator <Comparable []> () {
+                Iterator <Comparable []> cur = Collections.emptyIterator ();
+
+                public boolean hasNext ()
+                {
+                    while (! cur.hasNext () && lists.hasNext ()) cur = lists.next ().iterator ();
+                    return cur.hasNext ();
+                } // hasNext
+
+                public Comparable [] next ()
+                {
+                    if (! hasNext ()) throw new NoSuchElementException ();
+                    return cur.next ();
+                } // next
+            };
+        } // if
+        Iterable <Comparable []> joinable = () -> tuples.stream ().filter (t -> joinKey (t, cols) != null).iterator ();
+        var sort = new ExternalSort (joinable, (a, b) -> compareKeys (a, cols, b, cols), mjBudget);
+        sorts.add (sort);
+        return sort;
+    } // sortedOn
+
+    /************************************************************************************
+     * Return the next tuple from the iterator that has no null in the given columns,
+     * or null when there is none.
+     *
+     * @param it    the iterator over the tuples
+     * @param cols  the join columns
+     */
+    private static Comparable [] nextJoinable (Iterator <Comparable []> it, int [] cols)
+    {
+        while (it.hasNext ()) {
+            var t = it.next ();
+            if (joinKey (t, cols) != null) return t;
+        } // while
+        return null;
+    } // nextJoinable
+
+    /************************************************************************************
+     * Compare tuple a on columns aCols with tuple b on columns bCols (lexicographically,
+     * in the same order as KeyType).
+     *
+     * @param a      the first tuple
+     * @param aCols  its columns to compare
+     * @param b      the second tuple
+     * @param bCols  its columns to compare
+     * @return  negative, zero or positive as a's key is less, equal or greater
+     */
+    @SuppressWarnings ("unchecked")
+    private static int compareKeys (Comparable [] a, int [] aCols, Comparable [] b, int [] bCols)
+    {
+        for (var j = 0; j < aCols.length; j++) {
+            var cmp = a [aCols [j]].compareTo (b [bCols [j]]);
+            if (cmp != 0) return cmp;
+        } // for
+        return 0;
+    } // compareKeys
+
+    /************************************************************************************
+     * Return the hash partition for the given join key.
+     *
+     * @param k  the join key
+     * @return  the partition number in [0, hjPartitions)
+     */
+    private static int partition (KeyType k)
+    {
+        var h = k.hashCode () * 0x9E3779B9;                        // mix so partitions differ
+        return Math.floorMod (h ^ (h >>> 16), hjPartitions);       // from the hash table buckets
+    } // partition
+
+    /************************************************************************************
+     * Disambiguate the attribute names attrs2 (not changing them) by appending "2" (or
+     * a higher number) to the end of any name that is also in attrs1 (or earlier in
+     * attrs2).  Used by the joins, the join pipeline (Operator) and JoinPlanner.
+     *
+     * @param attrs1  the attribute names already taken (e.g., of this table)
+     * @param attrs2  the attribute names of table2
+     * @return  the disambiguated attribute names
+     */
+    static String [] disambiguate (String [] attrs1, String [] attrs2)
+    {
+        var names  = new HashSet <> (Arrays.asList (attrs1));
+        var result = new String [attrs2.length];
+        for (var i = 0; i < attrs2.length; i++) {
+            var a = attrs2 [i];
+            for (var k = 2; names.contains (a); k++) a = attrs2 [i] + k;
+            names.add (result [i] = a);
+        } // for
+        return result;
+    } // disambiguate
+
+    /************************************************************************************
+     * Return the value in row i, column j.  When the tuples are stored column-wise,
+     * only that column is read (the row is not materialized).
+     *
+     * @param i  the row number
+     * @param j  the column number
+     * @return  the value in row i, column j
+     */
+    private Comparable cell (int i, int j)
+    {
+        return (tuples instanceof ColumnStore cs) ? cs.value (i, j) : tuples.get (i) [j];
+    } // cell
+
+    /************************************************************************************
+     * Return column j as an int array, or null unless every value in it is an Integer.
+     * A ColumnStore int column is returned as is (it must not be modified).
+     *
+     * @param j  the column
+     */
+    private int [] intColumn (int j)
+    {
+        if (tuples instanceof ColumnStore cs) {
+            return (cs.kind (j) == ColumnStore.INT) ? (int []) cs.column (j) : null;
+        } // if
+        var col = new int [tuples.size ()];
+        for (var i = 0; i < col.length; i++) {
+            if (! (tuples.get (i) [j] instanceof Integer v)) return null;
+            col [i] = v;
+        } // for
+        return col;
+    } // intColumn
+
+    /************************************************************************************
+     * Return column j as a double array, or null unless every value in it is a Double.
+     * A ColumnStore double column is returned as is (it must not be modified).
+     *
+     * @param j  the column
+     */
+    private double [] doubleColumn (int j)
+    {
+        if (tuples instanceof ColumnStore cs) {
+            return (cs.kind (j) == ColumnStore.DBL) ? (double []) cs.column (j) : null;
+        } // if
+        var col = new double [tuples.size ()];
+        for (var i = 0; i < col.length; i++) {
+            if (! (tuples.get (i) [j] instanceof Double v)) return null;
+            col [i] = v;
+        } // for
+        return col;
+    } // doubleColumn
+
+    /** The codes for null and (in codeColumn with a dictionary to translate to) for a
+     *  string missing from that dictionary.
+     */
+    private static final int NULL_CODE = -1, ABSENT_CODE = -2;
+
+    /************************************************************************************
+     * Return the codes of column j, or null unless it is a dictionary-encoded string
+     * column of a column store.  The codes are returned as is (they must not be modified).
+     *
+     * @param j  the column
+     */
+    private int [] codeColumn (int j)
+    {
+        return (tuples instanceof ColumnStore cs && cs.kind (j) == ColumnStore.STR) ? (int []) cs.column (j) : null;
+    } // codeColumn
+
+    /************************************************************************************
+     * Return the codes of column j translated into the codes of column j2 of column
+     * store cs2 (ABSENT_CODE for strings not in its dictionary), or null unless column j
+     * is a dictionary-encoded string column of a column store.  Each distinct string is
+     * looked up once.
+     *
+     * @param j    the column
+     * @param cs2  the column store whose codes to use
+     * @param j2   the (dictionary-encoded) column of cs2
+     */
+    private int [] codeColumn (int j, ColumnStore cs2, int j2)
+    {
+        var codes = codeColumn (j);
+        if (codes == null) return null;
+        var dict  = ((ColumnStore) tuples).dictionary (j);
+        var trans = new int [dict.length];
+        for (var c = 0; c < dict.length; c++) {
+            var c2    = cs2.code (j2, dict [c]);
+            trans [c] = (c2 < 0) ? ABSENT_CODE : c2;
+        } // for
+        var col = new int [tuples.size ()];
+        for (var i = 0; i < col.length; i++) col [i] = (codes [i] < 0) ? NULL_CODE : trans [codes [i]];
+        return col;
+    } // codeColumn
+
+    /************************************************************************************
+     * Return the values of column j (copied out of the tuples).
+     *
+     * @param j  the column
+     */
+    private Comparable [] valueColumn (int j)
+    {
+        var col = new Comparable [tuples.size ()];
+        for (var i = 0; i < col.length; i++) col [i] = cell (i, j);
+        return col;
+    } // valueColumn
+
+    /************************************************************************************
+     * Select the rows of column store cs whose value in column colPos satisfies
+     * value <op> operand, scanning only that column (primitive int columns are
+     * compared without boxing; dictionary-encoded string columns are tested by code,
+     * the condition being evaluated once per distinct string).
+     *
+     * @param cs       the column store to scan
+     * @param colPos   the column position
+     * @param op       the comparison operator (==, !=, <, <=, >, >=)
+     * @param operand  the integer operand
+     * @return  a column store with just the qualifying rows
+     */
+    private static ColumnStore selectColumn (ColumnStore cs, int colPos, String op, Comparable operand)
+    {
+        var rows = new int [cs.size ()];
+        var cnt  = 0;
+        if (cs.kind (colPos) == ColumnStore.INT && operand instanceof Integer iOperand) {
+            var col  = (int []) cs.column (colPos);
+            var test = PredicateCompiler.intTest (op);
+            int b    = iOperand;
+            for (var i = 0; i < cs.size (); i++) {
+                if (test.test (col [i], b)) rows [cnt++] = i;
+            } // for
+        } else if (cs.kind (colPos) == ColumnStore.DBL && operand instanceof Double dOperand) {
+            var col  = (double []) cs.column (colPos);
+            var test = PredicateCompiler.doubleTest (op);
+            double b = dOperand;
+            for (var i = 0; i < cs.size (); i++) {
+                if (test.test (col [i], b)) rows [cnt++] = i;
+            } // for
+        } else if (cs.kind (colPos) == ColumnStore.STR && operand instanceof String) {
+            // evaluate the condition once per distinct string, then test the codes
+            var col  = (int []) cs.column (colPos);
+            var dict = cs.dictionary (colPos);
+            var test = PredicateCompiler.valueTest (op);
+            var pass = new boolean [dict.length];
+            for (var c = 0; c < dict.length; c++) pass [c] = test.test (dict [c], operand);
+            for (var i = 0; i < cs.size (); i++) {
+                var c = col [i];
+                if (c >= 0 && pass [c]) rows [cnt++] = i;
+            } // for
+        } else {
+            var test = PredicateCompiler.valueTest (op);
+            for (var i = 0; i < cs.size (); i++) {
+                if (test.test (cs.value (i, colPos), operand)) rows [cnt++] = i;
+            } // for
+        } // if
+        return cs.gather (rows, cnt);
+    } // selectColumn
+
     /************************************************************************************
      * Match the column and attribute names to determine the domains.
      *
@@ -936,21 +2221,6 @@ public class Table
         return colPos;
     } // match
 
-    /************************************************************************************
-     * Extract the attributes specified by the column array from tuple t.
-     *
-     * @param t       the tuple to extract from
-     * @param column  the array of column names
-     * @return  a smaller tuple extracted from tuple t 
-     */
-    private Comparable [] extract (Comparable [] t, String [] column)
-    {
-        var tup    = new Comparable [column.length];
-        var colPos = match (column);
-        for (var j = 0; j < column.length; j++) tup [j] = t [colPos [j]];
-        return tup;
-    } // extract
-
     /************************************************************************************
      * Check the size of the tuple (number of elements in array) as well as the type of
      * each value to ensure it is from the right domain. 
@@ -0,0 +1,414 @@
+/************************************************************************************
+ * @file TableFile.java
+ *
+ * @author  John Miller
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+import static java.lang.System.out;
+
+/************************************************************************************
+ * This class provides a binary, page-based file format for tables.  A table file
+ * consists of fixed-size pages:
+ *
+ *   page 0        header: magic, version, page size, row count, data page count,
+ *                 directory offset and the schema (name, attributes, domains, key)
+ *   pages 1 .. n  slotted data pages: row count, row offsets, TupleCodec encoded rows
+ *   directory     the index of the first row on each data page (after the data pages)
+ *
+ * Indices are not stored; a loaded table rebuilds its index on demand.  Opening a file
+ * reads only the header and directory; the data pages are read through the shared
+ * BufferPool (and rows decoded) lazily as they are accessed, so scanning a table
+ * larger than memory keeps at most the pool's frames of it in memory.
+ */
+public class TableFile
+       implements Closeable
+{
+    /** The magic number identifying table files ("DBF1").
+     */
+    private static final int MAGIC = 0x44424631;
+
+    /** The version of the file format.
+     */
+    private static final int VERSION = 1;
+
+    /** The size of a page in bytes.
+     */
+    public static final int PAGE_SIZE = BufferPool.PAGE_SIZE;
+
+    /** The size of a data page header (the row count).
+     */
+    private static final int PAGE_HEADER = 2;
+
+    /** The schema of the stored table.
+     */
+    private final String name;
+    private final String [] attribute;
+    private final Class [] domain;
+    private final String [] key;
+
+    /** The number of rows stored in the file.
+     */
+    private final int nRows;
+
+    /** The index of the first row on each data page.
+     */
+    private final int [] firstRow;
+
+    /** The open file and the buffer pool its pages are read through (with its id).
+     */
+    private final FileChannel ch;
+    private final BufferPool pool = BufferPool.shared ();
+    private final int fid;
+
+    /********************************************************************************
+     * Open the table file, reading its header (through the buffer pool) and page
+     * directory.
+     * @param file  the table file
+     */
+    private TableFile (File file)
+        throws IOException
+    {
+        ch = FileChannel.open (file.toPath (), StandardOpenOption.READ);
+        var id = -1;
+        BufferPool.Frame f = null;
+        try {
+            id = pool.register (ch);
+            f  = pool.pin (id, 0);
+            if (ch.size () < PAGE_SIZE) throw new IOException ("TableFile: not a table file: " + file);
+            var hdr = f.buffer ().duplicate ();
+            if (hdr.getInt () != MAGIC)     throw new IOException ("TableFile: not a table file: " + file);
+            if (hdr.getInt () != VERSION)   throw new IOException ("TableFile: unsupported version in " + file);
+            if (hdr.getInt () != PAGE_SIZE) throw new IOException ("TableFile: unsupported page size in " + file);
+            nRows          = hdr.getInt ();
+            var nDataPages = hdr.getInt ();
+            var dirOffset  = hdr.getLong ();
+            name      = getString (hdr);
+            attribute = new String [hdr.getShort ()];
+            domain    = new Class [attribute.length];
+            for (var j = 0; j < attribute.length; j++) {
+                attribute [j] = getString (hdr);
+                var dom       = getString (hdr);
+                try {
+                    domain [j] = dom.isEmpty () ? null : Class.forName (dom);
+                } catch (ClassNotFoundException ex) {
+                    throw new IOException ("TableFile: unknown domain " + dom, ex);
+                } // try
+            } // for
+            key = new String [hdr.getShort ()];
+            for (var j = 0; j < key.length; j++) key [j] = getString (hdr);
+
+            firstRow = new int [nDataPages];
+            var dir  = ByteBuffer.allocate (4 * nDataPages);
+            while (dir.hasRemaining ()) {
+                if (ch.read (dir, dirOffset + dir.position ()) < 0) throw new IOException ("TableFile: truncated file: " + file);
+            } // while
+            dir.flip ().asIntBuffer ().get (firstRow);
+        } catch (IOException | RuntimeException ex) {
+            if (f != null)  pool.unpin (f, false);
+            if (id >= 0)    pool.unregister (id, false);
+            try {
+                ch.close ();
+            } catch (IOException cx) {
+                ex.addSuppressed (cx);
+            } // try
+            throw ex;
+        } // try
+        pool.unpin (f, false);
+        fid = id;
+    } // constructor
+
+    /********************************************************************************
+     * Open the table file with the given path.
+     * @param file  the table file
+     * @return  the opened table file
+     * @throws UncheckedIOException  if the file cannot be read or is not a table file
+     */
+    public static TableFile open (File file)
+    {
+        try {
+            return new TableFile (file);
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("open: unable to open " + file, ex);
+        } // try
+    } // open
+
+    /********************************************************************************
+     * Write the table (schema and tuples) to the given file.  The file is written
+     * under a temporary name and then renamed, so an existing file is replaced
+     * atomically and is never left half written.
+     * @param file       the table file
+     * @param name       the name of the table
+     * @param attribute  the attribute names
+     * @param domain     the attribute domains
+     * @param key        the primary key
+     * @param tuples     the tuples of the table
+     * @throws UncheckedIOException  if the file cannot be written
+     * @throws IllegalArgumentException  if a tuple (or the schema) does not fit on a page
+     */
+    public static void write (File file, String name, String [] attribute, Class [] domain, String [] key,
+                              List <Comparable []> tuples)
+    {
+        var dir = file.getAbsoluteFile ().getParentFile ();
+        dir.mkdirs ();
+        File tmp = null;
+        try {
+            tmp = File.createTempFile (file.getName (), ".tmp", dir);
+            try (var ch = FileChannel.open (tmp.toPath (), StandardOpenOption.WRITE)) {
+                var page      = ByteBuffer.allocate (PAGE_SIZE);
+                var offsets   = new ArrayList <Integer> ();
+                var firstRows = new ArrayList <Integer> ();
+                var top       = PAGE_SIZE;                             // rows grow down from the end
+                ch.position (PAGE_SIZE);                              // header is written last
+
+                for (var i = 0; i < tuples.size (); i++) {
+                    var tup = tuples.get (i);
+                    var sz  = TupleCodec.size (tup);
+                    if (PAGE_HEADER + 2 + sz > PAGE_SIZE) {
+                        throw new IllegalArgumentException ("write: tuple " + i + " of " + name + " does not fit on a page");
+                    } // if
+                    if (PAGE_HEADER + 2 * (offsets.size () + 1) > top - sz) {   // page full
+                        writePage (ch, page, offsets);
+                        top = PAGE_SIZE;
+                    } // if
+                    if (offsets.isEmpty ()) firstRows.add (i);
+                    top -= sz;
+                    TupleCodec.encode (page.position (top), tup);
+                    offsets.add (top);
+                } // for
+                if (! offsets.isEmpty ()) writePage (ch, page, offsets);
+
+                var dirOffset = ch.position ();
+                var dirBuf    = ByteBuffer.allocate (4 * firstRows.size ());
+                for (var r : firstRows) dirBuf.putInt (r);
+                writeFully (ch, dirBuf.flip ());
+
+                var hdr = ByteBuffer.allocate (PAGE_SIZE);
+                try {
+                    hdr.putInt (MAGIC).putInt (VERSION).putInt (PAGE_SIZE).putInt (tuples.size ())
+                       .putInt (firstRows.size ()).putLong (dirOffset);
+                    putString (hdr, name);
+                    hdr.putShort ((short) attribute.length);
+                    for (var j = 0; j < attribute.length; j++) {
+                        putString (hdr, attribute [j]);
+                        putString (hdr, (domain [j] == null) ? "" : domain [j].getName ());
+                    } // for
+                    hdr.putShort ((short) key.length);
+                    for (var k : key) putString (hdr, k);
+                } catch (java.nio.BufferOverflowException ex) {
+                    throw new IllegalArgumentException ("write: schema of " + name + " does not fit on the header page");
+                } // try
+                ch.position (0);
+                writeFully (ch, hdr.clear ());
+                ch.force (false);
+            } // try
+            Files.move (tmp.toPath (), file.toPath (), StandardCopyOption.REPLACE_EXISTING,
+                                                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("write: unable to write " + file, ex);
+        } finally {
+            if (tmp != null) tmp.delete ();                           // no-op once renamed
+        } // try
+    } // write
+
+    /********************************************************************************
+     * Return the name of the stored table.
+     * @return  the table name
+     */
+    public String name ()
+    {
+        return name;
+    } // name
+
+    /********************************************************************************
+     * Return the attribute names of the stored table.
+     * @return  the attribute names
+     */
+    public String [] attribute ()
+    {
+        return attribute;
+    } // attribute
+
+    /********************************************************************************
+     * Return the attribute domains of the stored table.
+     * @return  the attribute domains
+     */
+    public Class [] domain ()
+    {
+        return domain;
+    } // domain
+
+    /********************************************************************************
+     * Return the primary key of the stored table.
+     * @return  the key attributes
+     */
+    public String [] key ()
+    {
+        return key;
+    } // key
+
+    /********************************************************************************
+     * Return the number of rows stored in the file.
+     * @return  the row count
+     */
+    public int size ()
+    {
+        return nRows;
+    } // size
+
+    /********************************************************************************
+     * Return the tuples of the file as a list whose stored rows are decoded lazily
+     * (on each access).  Tuples added to the list are kept in memory (until saved).
+     * @return  the tuples
+     */
+    public List <Comparable []> tuples ()
+    {
+        return new PagedTuples ();
+    } // tuples
+
+    /********************************************************************************
+     * Decode the i-th stored row.
+     * @param i  the row index (0 <= i < size ())
+     * @return  the row
+     */
+    public Comparable [] row (int i)
+    {
+        Objects.checkIndex (i, nRows);
+        var p   = Arrays.binarySearch (firstRow, i);
+        if (p < 0) p = -p - 2;                                  // page holding row i
+        var f   = pool.pin (fid, p + 1);
+        try {
+            var buf = f.buffer ().duplicate ();
+            var off = buf.getShort (PAGE_HEADER + 2 * (i - firstRow [p])) & 0xFFFF;
+            return TupleCodec.decode (buf.position (off));
+        } finally {
+            pool.unpin (f, false);
+        } // try
+    } // row
+
+    /********************************************************************************
+     * Close the table file, dropping its pages from the buffer pool.  Its rows can
+     * no longer be read.
+     */
+    public void close ()
+    {
+        pool.unregister (fid, false);
+        try {
+            ch.close ();
+        } catch (IOException ex) {
+            out.println ("close: IO Exception on close");
+        } // try
+    } // close
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * A list of the tuples in a table file (decoded lazily) followed by the tuples
+     * added since the file was opened (held in memory).
+     */
+    private class PagedTuples
+            extends AbstractList <Comparable []>
+            implements RandomAccess
+    {
+        private final List <Comparable []> tail = new ArrayList <> ();
+
+        public Comparable [] get (int i)
+        {
+            return (i < nRows) ? row (i) : tail.get (i - nRows);
+        } // get
+
+        public int size ()
+        {
+            return nRows + tail.size ();
+        } // size
+
+        public boolean add (Comparable [] tup)
+        {
+            return tail.add (tup);
+        } // add
+
+    } // PagedTuples class
+
+    /********************************************************************************
+     * Write a data page (header, row offsets and the rows already placed at the end
+     * of the page buffer) and clear the buffer for the next page.
+     * @param ch       the channel to write to
+     * @param page     the page buffer
+     * @param offsets  the offsets of the rows on the page
+     */
+    private static void writePage (FileChannel ch, ByteBuffer page, List <Integer> offsets)
+        throws IOException
+    {
+        page.position (0);
+        page.putShort ((short) offsets.size ());
+        for (var off : offsets) page.putShort ((short) (int) off);
+        writeFully (ch, page.clear ());
+        Arrays.fill (page.array (), (byte) 0);
+        offsets.clear ();
+    } // writePage
+
+    /********************************************************************************
+     * Write all the remaining bytes of the buffer to the channel.
+     */
+    private static void writeFully (FileChannel ch, ByteBuffer buf)
+        throws IOException
+    {
+        while (buf.hasRemaining ()) ch.write (buf);
+    } // writeFully
+
+    /********************************************************************************
+     * Put a string into the buffer (2 byte length + UTF-8 bytes).
+     */
+    private static void putString (ByteBuffer buf, String s)
+    {
+        var b = s.getBytes (StandardCharsets.UTF_8);
+        buf.putShort ((short) b.length).put (b);
+    } // putString
+
+    /********************************************************************************
+     * Get a string from the buffer (2 byte length + UTF-8 bytes).
+     */
+    private static String getString (ByteBuffer buf)
+    {
+        var b = new byte [buf.getShort () & 0xFFFF];
+        buf.get (b);
+        return new String (b, StandardCharsets.UTF_8);
+    } // getString
+
+    /********************************************************************************
+     * The main method used for testing: write a table file, open it and read it back.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+    {
+        var file   = new File ("store" + File.separator + "tablefile_test.dbf");
+        var tuples = new ArrayList <Comparable []> ();
+        for (var i = 0; i < 100_000; i++) tuples.add (new Comparable [] { i, "title_" + i, 2.5 * i, (i % 7 == 0) ? null : "G" });
+
+        var start = System.nanoTime ();
+        write (file, "film", new String [] { "film_id", "title", "rate", "rating" },
+               new Class [] { Integer.class, String.class, Double.class, String.class }, new String [] { "film_id" }, tuples);
+        out.println ("wrote " + file.length () + " bytes in " + (System.nanoTime () - start) / 1e6 + " ms");
+
+        start = System.nanoTime ();
+        var tf = open (file);
+        out.println ("opened " + tf.name () + Arrays.toString (tf.attribute ()) + " with " + tf.size ()
+                   + " rows in " + (System.nanoTime () - start) / 1e6 + " ms");
+        var rows = tf.tuples ();
+        for (var i = 0; i < tuples.size (); i++) {
+            if (! Arrays.equals (rows.get (i), tuples.get (i))) out.println ("mismatch at row " + i);
+        } // for
+        out.println ("row 99999 = " + Arrays.toString (rows.get (99_999)));
+        tf.close ();
+        file.delete ();
+    } // main
+
+} // TableFile class
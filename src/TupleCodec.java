@@ -0,0 +1,157 @@
+/************************************************************************************
+ * @file TupleCodec.java
+ *
+ * @author  John Miller
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static java.lang.System.out;
+
+/************************************************************************************
+ * This class provides a compact binary encoding of tuples (arrays of attribute
+ * values) for storing them in pages and log records.  A tuple is encoded as its arity
+ * (2 bytes) followed by each value as a one byte type tag and a typed payload:
+ * Integer (4 bytes), Long (8), Double (8), Float (4), Short (2), Byte (1), Character (2),
+ * Boolean (1) and String (4 byte length + UTF-8 bytes).  Nulls take just the tag.
+ */
+public class TupleCodec
+{
+    /** The type tags for the values.
+     */
+    private static final byte NULL = 0, INT = 1, LONG = 2, DOUBLE = 3, FLOAT = 4, SHORT = 5,
+                              BYTE = 6, CHAR = 7, BOOL = 8, STRING = 9;
+
+    /************************************************************************************
+     * Return the number of bytes needed to encode the given tuple.
+     *
+     * @param tup  the tuple to encode
+     * @return  the size of its encoding
+     */
+    public static int size (Comparable [] tup)
+    {
+        var n = 2;
+        for (var v : tup) {
+            n += 1;
+            if (v == null)                  continue;
+            else if (v instanceof Integer)  n += 4;
+            else if (v instanceof Long)     n += 8;
+            else if (v instanceof Double)   n += 8;
+            else if (v instanceof Float)    n += 4;
+            else if (v instanceof Short)    n += 2;
+            else if (v instanceof Byte)     n += 1;
+            else if (v instanceof Character) n += 2;
+            else if (v instanceof Boolean)  n += 1;
+            else if (v instanceof String s) n += 4 + utf8Length (s);
+            else throw new IllegalArgumentException ("TupleCodec: unsupported type " + v.getClass ());
+        } // for
+        return n;
+    } // size
+
+    /************************************************************************************
+     * Encode the tuple into the buffer at its current position (advancing it).
+     *
+     * @param buf  the buffer to write into (must have size (tup) bytes remaining)
+     * @param tup  the tuple to encode
+     */
+    public static void encode (ByteBuffer buf, Comparable [] tup)
+    {
+        buf.putShort ((short) tup.length);
+        for (var v : tup) {
+            if (v == null)                    buf.put (NULL);
+            else if (v instanceof Integer x)  buf.put (INT).putInt (x);
+            else if (v instanceof Long x)     buf.put (LONG).putLong (x);
+            else if (v instanceof Double x)   buf.put (DOUBLE).putDouble (x);
+            else if (v instanceof Float x)    buf.put (FLOAT).putFloat (x);
+            else if (v instanceof Short x)    buf.put (SHORT).putShort (x);
+            else if (v instanceof Byte x)     buf.put (BYTE).put (x);
+            else if (v instanceof Character x) buf.put (CHAR).putChar (x);
+            else if (v instanceof Boolean x)  buf.put (BOOL).put ((byte) (x ? 1 : 0));
+            else if (v instanceof String s) {
+                var b = s.getBytes (StandardCharsets.UTF_8);
+                buf.put (STRING).putInt (b.length).put (b);
+            } else {
+                throw new IllegalArgumentException ("TupleCodec: unsupported type " + v.getClass ());
+            } // if
+        } // for
+    } // encode
+
+    /************************************************************************************
+     * Encode the tuple into a new byte array.
+     *
+     * @param tup  the tuple to encode
+     * @return  the encoding
+     */
+    public static byte [] encode (Comparable [] tup)
+    {
+        var buf = ByteBuffer.allocate (size (tup));
+        encode (buf, tup);
+        return buf.array ();
+    } // encode
+
+    /************************************************************************************
+     * Decode a tuple from the buffer at its current position (advancing it).
+     *
+     * @param buf  the buffer to read from
+     * @return  the decoded tuple
+     */
+    public static Comparable [] decode (ByteBuffer buf)
+    {
+        var tup = new Comparable [buf.getShort ()];
+        for (var j = 0; j < tup.length; j++) {
+            var tag = buf.get ();
+            tup [j] = switch (tag) {
+                case NULL   -> null;
+                case INT    -> buf.getInt ();
+                case LONG   -> buf.getLong ();
+                case DOUBLE -> buf.getDouble ();
+                case FLOAT  -> buf.getFloat ();
+                case SHORT  -> buf.getShort ();
+                case BYTE   -> buf.get ();
+                case CHAR   -> buf.getChar ();
+                case BOOL   -> buf.get () != 0;
+                case STRING -> { var b = new byte [buf.getInt ()];
+                                 buf.get (b);
+                                 yield new String (b, StandardCharsets.UTF_8); }
+                default     -> throw new IllegalStateException ("TupleCodec: bad type tag " + tag);
+            }; // switch
+        } // for
+        return tup;
+    } // decode
+
+    /************************************************************************************
+     * Return the number of bytes in the UTF-8 encoding of s (without encoding it).
+     *
+     * @param s  the string
+     * @return  the length of its UTF-8 encoding
+     */
+    private static int utf8Length (String s)
+    {
+        var n = 0;
+        for (var i = 0; i < s.length (); i++) {
+            var c = s.charAt (i);
+            if (c < 0x80)                      n += 1;
+            else if (c < 0x800)                n += 2;
+            else if (Character.isHighSurrogate (c) && i + 1 < s.length () &&
+                     Character.isLowSurrogate (s.charAt (i + 1))) { n += 4; i++; }
+            else if (Character.isSurrogate (c)) n += 1;               // unpaired => '?'
+            else                               n += 3;
+        } // for
+        return n;
+    } // utf8Length
+
+    /************************************************************************************
+     * The main method used for testing.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+    {
+        Comparable [] tup = { 1977, "Star_Wars \u00e9\u20ac\ud83d\ude00", 124L, 12.5, 1.5f, null, 'M', true };
+        var bytes = encode (tup);
+        out.println ("size = " + size (tup) + ", encoded = " + bytes.length);
+        out.println ("decoded = " + Arrays.toString (decode (ByteBuffer.wrap (bytes))));
+    } // main
+
+} // TupleCodec class
@@ -0,0 +1,87 @@
+/************************************************************************************
+ * @file TupleKey.java
+ *
+ * @author  John Miller
+ */
+
+import java.util.Arrays;
+
+import static java.lang.System.out;
+
+/************************************************************************************
+ * The TupleKey class wraps a whole tuple so that it may be used as a key in hash-based
+ * collections: two tuples are equal when their values are equal (Arrays.equals, which
+ * allows nulls), unlike Comparable [] whose equals is identity.  The hash code is
+ * computed from the values once, when the key is made.
+ */
+public final class TupleKey
+{
+    /** The wrapped tuple.
+     */
+    private final Comparable [] tuple;
+
+    /** The hash code of the tuple's values.
+     */
+    private final int hash;
+
+    /*************************************************************************************
+     * Construct a key for the given tuple (which must not be modified afterwards).
+     * @param _tuple  the tuple
+     */
+    public TupleKey (Comparable [] _tuple)
+    {
+        tuple = _tuple;
+        hash  = Arrays.hashCode (_tuple);
+    } // constructor
+
+    /*************************************************************************************
+     * Return the wrapped tuple.
+     * @return  the tuple
+     */
+    public Comparable [] tuple ()
+    {
+        return tuple;
+    } // tuple
+
+    /*************************************************************************************
+     * Determine whether the two tuples have equal values.
+     * @param o  the other key
+     * @return  true if equal, false otherwise
+     */
+    public boolean equals (Object o)
+    {
+        return o instanceof TupleKey k && hash == k.hash && Arrays.equals (tuple, k.tuple);
+    } // equals
+
+    /*************************************************************************************
+     * Return the hash code of the tuple's values.
+     * @return  the hash code
+     */
+    public int hashCode ()
+    {
+        return hash;
+    } // hashCode
+
+    /*************************************************************************************
+     * Convert the key to a string.
+     * @return  the tuple's values as a string
+     */
+    public String toString ()
+    {
+        return "Tuple " + Arrays.toString (tuple);
+    } // toString
+
+    /*************************************************************************************
+     * The main method used for testing.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+    {
+        var t1 = new TupleKey (new Comparable [] { "Star_Wars", 1977, null });
+        var t2 = new TupleKey (new Comparable [] { "Star_Wars", 1977, null });
+        var t3 = new TupleKey (new Comparable [] { "Star_Wars", 1980, null });
+        out.println (t1 + " equals " + t2 + " = " + t1.equals (t2) + ", same hash = " + (t1.hashCode () == t2.hashCode ()));
+        out.println (t1 + " equals " + t3 + " = " + t1.equals (t3));
+    } // main
+
+} // TupleKey class
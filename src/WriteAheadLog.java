@@ -0,0 +1,362 @@
+/************************************************************************************
+ * @file WriteAheadLog.java
+ *
+ * @author  John Miller
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32C;
+
+import static java.lang.System.out;
+
+/************************************************************************************
+ * This class provides an append-only write-ahead log, so that changes to a table are
+ * durable without rewriting its table file.  The log is a binary file:
+ *
+ *   header        magic, version
+ *   records       length, CRC-32C checksum, type, TupleCodec encoded tuple
+ *
+ * A change is made durable in two steps: append adds its record to the log's buffer
+ * (returning the record's log sequence number, the end of the record in the log) and
+ * commit waits until the log is forced to disk up to that number.  Commits use group
+ * commit: the first waiting writer forces every record appended so far with a single
+ * fsync while the others wait for it, so concurrent writers share fsyncs.  Opening a
+ * log checks the checksums and truncates a torn or corrupt tail (left by a crash during
+ * a write); replay then reads the records back in order.  If a commit fails to write
+ * its batch, the log is marked failed and refuses later appends and commits until it
+ * is reset, so nothing is ever written past the hole the lost batch left.
+ *
+ * #usage var lsn = wal.append (WriteAheadLog.INSERT, tup); wal.commit (lsn);
+ */
+public class WriteAheadLog
+       implements Closeable
+{
+    /** The magic number identifying log files ("WAL1").
+     */
+    private static final int MAGIC = 0x57414C31;
+
+    /** The version of the file format.
+     */
+    private static final int VERSION = 1;
+
+    /** The size of the file header and of a record header (length, checksum, type).
+     */
+    private static final int FILE_HEADER = 8, RECORD_HEADER = 9;
+
+    /** The record types: the first record describes what the log is for (e.g., a
+     *  table's schema), the others are changes.
+     */
+    public static final byte HEADER = 0, INSERT = 1;
+
+    /** The metrics shared by all logs.
+     */
+    private static final Metrics.Counter   APPENDS = Metrics.counter ("wal.appends");
+    private static final Metrics.Counter   SYNCS   = Metrics.counter ("wal.syncs");
+    private static final Metrics.Histogram GROUP   = Metrics.histogram ("wal.groupSize");
+
+    /** The log file and its channel.
+     */
+    private final File file;
+    private final FileChannel ch;
+
+    /** The records appended but not yet written (and how many there are).
+     */
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream ();
+    private int nPending = 0;
+
+    /** The end of the records appended and of those forced to disk.
+     */
+    private long appended, durable;
+
+    /** Whether a writer is currently forcing the log (the others wait for it).
+     */
+    private boolean syncing = false;
+
+    /** The error that made a commit fail to write its batch (null if none).
+     */
+    private IOException failure;
+
+    /** The tuple of the log's first (HEADER) record, null if none.
+     */
+    private Comparable [] header;
+
+    /********************************************************************************
+     * Open the log in the given file, creating it if need be.  The records are
+     * checked and a torn or corrupt tail is truncated.
+     * @param _file  the log file
+     * @throws UncheckedIOException  if the file cannot be opened or is not a log
+     */
+    public WriteAheadLog (File _file)
+    {
+        file = _file;
+        try {
+            var parent = file.getAbsoluteFile ().getParentFile ();
+            if (parent != null) parent.mkdirs ();
+            ch = FileChannel.open (file.toPath (), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                   StandardOpenOption.WRITE);
+            if (ch.size () < FILE_HEADER) {
+                ch.truncate (0);
+                ch.write (ByteBuffer.allocate (FILE_HEADER).putInt (MAGIC).putInt (VERSION).flip (), 0);
+                ch.force (true);
+                appended = FILE_HEADER;
+            } else {
+                var hdr = ByteBuffer.allocate (FILE_HEADER);
+                ch.read (hdr, 0);
+                if (hdr.getInt (0) != MAGIC)   throw new IOException ("WriteAheadLog: not a log file: " + file);
+                if (hdr.getInt (4) != VERSION) throw new IOException ("WriteAheadLog: unsupported version in " + file);
+                appended = scan ((type, tup) -> { if (type == HEADER && header == null) header = tup; });
+                if (appended < ch.size ()) {
+                    Metrics.trace (Metrics.Level.INFO, () -> "WriteAheadLog: truncating torn tail of " + file);
+                    ch.truncate (appended);
+                } // if
+            } // if
+            durable = appended;
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("WriteAheadLog: unable to open " + file, ex);
+        } // try
+    } // constructor
+
+    /********************************************************************************
+     * Return the tuple of the log's first record if it is a HEADER record.
+     * @return  the header tuple, null if none
+     */
+    public Comparable [] header ()
+    {
+        return header;
+    } // header
+
+    /********************************************************************************
+     * Return whether the log has no records.
+     * @return  whether the log is empty
+     */
+    public synchronized boolean isEmpty ()
+    {
+        return appended == FILE_HEADER;
+    } // isEmpty
+
+    /********************************************************************************
+     * Append a record to the log (it is not durable until committed).
+     * @param type  the type of record
+     * @param tup   the tuple it holds
+     * @return  the log sequence number of the record (to commit)
+     * @throws IllegalArgumentException  if the tuple has a value TupleCodec cannot encode
+     * @throws UncheckedIOException      if the log has failed
+     */
+    public synchronized long append (byte type, Comparable [] tup)
+    {
+        checkFailed ();
+        var body = TupleCodec.encode (tup);
+        var crc  = new CRC32C ();
+        crc.update (type);
+        crc.update (body);
+        var rec  = ByteBuffer.allocate (RECORD_HEADER + body.length);
+        rec.putInt (body.length).putInt ((int) crc.getValue ()).put (type).put (body);
+        pending.write (rec.array (), 0, rec.capacity ());
+        if (type == HEADER && header == null && appended == FILE_HEADER) header = tup;
+        nPending++;
+        APPENDS.inc ();
+        return appended += rec.capacity ();
+    } // append
+
+    /********************************************************************************
+     * Wait until the log is durable up to the given log sequence number.  If no other
+     * writer is forcing the log, this one writes and forces every record appended so
+     * far (group commit); otherwise it waits for that writer.
+     * @param lsn  the log sequence number (from append)
+     * @throws UncheckedIOException  if the log cannot be written (or has failed)
+     */
+    public void commit (long lsn)
+    {
+        byte [] batch;
+        long    pos, end;
+        synchronized (this) {
+            while (durable < lsn && syncing) waitForSync ();
+            if (durable >= lsn) return;
+            checkFailed ();
+            syncing = true;
+            batch   = pending.toByteArray ();
+            pos     = appended - batch.length;
+            end     = appended;
+            GROUP.record (nPending);
+            pending.reset ();
+            nPending = 0;
+        } // synchronized
+
+        try {                                                                // others may append meanwhile
+            var buf = ByteBuffer.wrap (batch);
+            while (buf.hasRemaining ()) ch.write (buf, pos + buf.position ());
+            ch.force (false);
+            SYNCS.inc ();
+        } catch (IOException ex) {
+            synchronized (this) { failure = ex; }                            // the batch is lost
+            throw new UncheckedIOException ("commit: unable to write " + file, ex);
+        } finally {
+            synchronized (this) {
+                syncing = false;
+                if (failure == null && durable < end) durable = end;
+                notifyAll ();
+            } // synchronized
+        } // try
+    } // commit
+
+    /********************************************************************************
+     * Commit every record appended so far.
+     */
+    public void flush ()
+    {
+        long lsn;
+        synchronized (this) { lsn = appended; }
+        commit (lsn);
+    } // flush
+
+    /********************************************************************************
+     * Read the records of the log in order, passing each record's type and tuple to
+     * the given function (records appended but not committed are not read).
+     * @param redo  the function to apply to each record
+     * @throws UncheckedIOException  if the log cannot be read
+     */
+    public void replay (BiConsumer <Byte, Comparable []> redo)
+    {
+        try {
+            scan (redo);
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("replay: unable to read " + file, ex);
+        } // try
+    } // replay
+
+    /********************************************************************************
+     * Empty the log (e.g., once the changes are saved in a table file), keeping the
+     * file header, and clear a failure.  The next record appended becomes the log's
+     * header record.
+     * @throws UncheckedIOException  if the log cannot be truncated
+     */
+    public synchronized void reset ()
+    {
+        while (syncing) waitForSync ();
+        try {
+            ch.truncate (FILE_HEADER);
+            ch.force (true);
+        } catch (IOException ex) {
+            throw new UncheckedIOException ("reset: unable to truncate " + file, ex);
+        } // try
+        pending.reset ();
+        nPending = 0;
+        appended = durable = FILE_HEADER;
+        header   = null;
+        failure  = null;
+    } // reset
+
+    /********************************************************************************
+     * Commit the records appended so far and close the log.
+     */
+    public void close ()
+    {
+        try {
+            flush ();
+        } finally {
+            try {
+                ch.close ();
+            } catch (IOException ex) {
+                throw new UncheckedIOException ("close: unable to close " + file, ex);
+            } // try
+        } // try
+    } // close
+
+    //----------------------------------------------------------------------------------
+    // Private Methods
+    //----------------------------------------------------------------------------------
+
+    /********************************************************************************
+     * Read the records on disk, applying the function to each, and stop at the end of
+     * the file or at the first torn or corrupt record.
+     * @param redo  the function to apply to each record
+     * @return  the end of the last valid record
+     */
+    private long scan (BiConsumer <Byte, Comparable []> redo)
+        throws IOException
+    {
+        long end;
+        synchronized (this) { end = (appended == 0) ? ch.size () : durable; }
+        var in  = new DataInputStream (new BufferedInputStream (new FileInputStream (file), 1 << 16));
+        try (in) {
+            in.skipNBytes (FILE_HEADER);
+            var pos = (long) FILE_HEADER;
+            var crc = new CRC32C ();
+            while (pos + RECORD_HEADER <= end) {
+                var len  = in.readInt ();
+                var sum  = in.readInt ();
+                var type = in.readByte ();
+                if (len < 0 || pos + RECORD_HEADER + len > end) break;           // torn
+                var body = new byte [len];
+                in.readFully (body);
+                crc.reset ();
+                crc.update (type);
+                crc.update (body);
+                if ((int) crc.getValue () != sum) break;                          // corrupt
+                redo.accept (type, TupleCodec.decode (ByteBuffer.wrap (body)));
+                pos += RECORD_HEADER + len;
+            } // while
+            return pos;
+        } // try
+    } // scan
+
+    /********************************************************************************
+     * Throw if a commit has failed to write its batch (called holding the lock).
+     */
+    private void checkFailed ()
+    {
+        if (failure != null) throw new UncheckedIOException ("WriteAheadLog: an earlier write to " + file + " failed", failure);
+    } // checkFailed
+
+    /********************************************************************************
+     * Wait for the writer forcing the log to finish.
+     */
+    private void waitForSync ()
+    {
+        try {
+            wait ();
+        } catch (InterruptedException ex) {
+            Thread.currentThread ().interrupt ();
+            throw new IllegalStateException ("WriteAheadLog: interrupted waiting for commit", ex);
+        } // try
+    } // waitForSync
+
+    /********************************************************************************
+     * The main method used for testing: append from several threads, then replay.
+     * @param args  the command-line arguments (args [0] gives the number of threads)
+     */
+    public static void main (String [] args)
+        throws InterruptedException
+    {
+        var nThreads = (args.length == 1) ? Integer.parseInt (args [0]) : 8;
+        var file     = new File ("store" + File.separator + "test.wal");
+        file.delete ();
+        var wal      = new WriteAheadLog (file);
+        var threads  = new Thread [nThreads];
+        var start    = System.nanoTime ();
+        for (var t = 0; t < nThreads; t++) {
+            var id = t;
+            threads [t] = new Thread (() -> {
+                for (var i = 0; i < 1000; i++) wal.commit (wal.append (INSERT, new Comparable [] { id, i, "rental" + i }));
+            });
+            threads [t].start ();
+        } // for
+        for (var th : threads) th.join ();
+        wal.close ();
+        out.println (nThreads * 1000 + " commits in " + (System.nanoTime () - start) / 1e6 + " ms, "
+                   + Metrics.counter ("wal.syncs").get () + " fsyncs");
+
+        var n = new int [1];
+        try (var log = new WriteAheadLog (file)) {
+            log.replay ((type, tup) -> n [0]++);
+        } // try
+        out.println ("replayed " + n [0] + " records");
+        file.delete ();
+    } // main
+
+} // WriteAheadLog class
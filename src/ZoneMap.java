@@ -0,0 +1,126 @@
+/************************************************************************************
+ * @file ZoneMap.java
+ *
+ * @author  John Miller
+ */
+
+import java.util.*;
+
+import static java.lang.System.out;
+
+/************************************************************************************
+ * This class provides a zone map for one column of a table: the minimum and maximum
+ * (non-null) value of the column in each block of BLOCK consecutive rows.  A select
+ * with a range condition ("attr op value") need only scan the blocks whose range can
+ * hold a qualifying value, so on columns that are clustered (e.g., ids and dates that
+ * increase as rows are inserted) it touches a small fraction of the table.  Rows are
+ * only ever appended to tables, so the zone map is kept current by adding each
+ * inserted row to the last block.
+ */
+public class ZoneMap
+{
+    /** The number of rows in a block.
+     */
+    public static final int BLOCK = 1024;
+
+    /** The column summarized.
+     */
+    private final int col;
+
+    /** The minimum and maximum value in each block (null for a block of nulls).
+     */
+    private Comparable [] min = new Comparable [16];
+    private Comparable [] max = new Comparable [16];
+
+    /** The number of rows summarized.
+     */
+    private int rows = 0;
+
+    /********************************************************************************
+     * Construct a zone map for the given column of the given tuples.
+     * @param _col    the column
+     * @param tuples  the tuples already in the table
+     */
+    public ZoneMap (int _col, List <Comparable []> tuples)
+    {
+        col = _col;
+        for (var tup : tuples) add (tup);
+    } // constructor
+
+    /********************************************************************************
+     * Add the next row (appended to the table) to the zone map.
+     * @param tup  the row
+     */
+    @SuppressWarnings ("unchecked")
+    public void add (Comparable [] tup)
+    {
+        var b = rows++ / BLOCK;
+        if (b == min.length) {
+            min = Arrays.copyOf (min, 2 * b);
+            max = Arrays.copyOf (max, 2 * b);
+        } // if
+        var v = tup [col];
+        if (v == null) return;
+        if (min [b] == null || v.compareTo (min [b]) < 0) min [b] = v;
+        if (max [b] == null || v.compareTo (max [b]) > 0) max [b] = v;
+    } // add
+
+    /********************************************************************************
+     * Return the number of rows summarized.
+     * @return  the number of rows
+     */
+    public int rows ()
+    {
+        return rows;
+    } // rows
+
+    /********************************************************************************
+     * Return the number of blocks.
+     * @return  the number of blocks
+     */
+    public int blocks ()
+    {
+        return (rows + BLOCK - 1) / BLOCK;
+    } // blocks
+
+    /********************************************************************************
+     * Determine whether block b may hold a row whose value satisfies value op operand
+     * (a block of nulls may not, as null values satisfy no condition).
+     * @param b        the block
+     * @param op       the comparison operator (==, !=, <, <=, >, >=)
+     * @param operand  the operand (of the column's domain)
+     * @return  false if no row in the block can qualify
+     */
+    @SuppressWarnings ("unchecked")
+    public boolean mayMatch (int b, String op, Comparable operand)
+    {
+        if (min [b] == null) return false;
+        if (operand == null) return true;
+        var lo = min [b].compareTo (operand);
+        var hi = max [b].compareTo (operand);
+        return switch (op) {
+            case "==" -> lo <= 0 && hi >= 0;
+            case "!=" -> lo != 0 || hi != 0;
+            case "<"  -> lo < 0;
+            case "<=" -> lo <= 0;
+            case ">"  -> hi > 0;
+            case ">=" -> hi >= 0;
+            default   -> true;
+        }; // switch
+    } // mayMatch
+
+    /********************************************************************************
+     * The main method used for testing.
+     * @param args  the command-line arguments
+     */
+    public static void main (String [] args)
+    {
+        var tuples = new ArrayList <Comparable []> ();
+        for (var i = 0; i < 10 * BLOCK; i++) tuples.add (new Comparable [] { i, (i % 3 == 0) ? null : "x" + i % 7 });
+        var zm   = new ZoneMap (0, tuples);
+        var scan = 0;
+        for (var b = 0; b < zm.blocks (); b++) if (zm.mayMatch (b, ">=", 9000)) scan++;
+        out.println ("id >= 9000 scans " + scan + " of " + zm.blocks () + " blocks");
+    } // main
+
+} // ZoneMap class